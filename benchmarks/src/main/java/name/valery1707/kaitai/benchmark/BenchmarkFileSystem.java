@@ -0,0 +1,119 @@
+package name.valery1707.kaitai.benchmark;
+
+import com.github.marschall.memoryfilesystem.MemoryFileSystemBuilder;
+import name.valery1707.kaitai.KaitaiException;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static name.valery1707.kaitai.KaitaiUtils.delete;
+
+/**
+ * File systems which are used in benchmarks: same as in {@code KaitaiUtilsTest}.
+ */
+public enum BenchmarkFileSystem {
+	/**
+	 * In-memory file system: measures plugin code without disk.
+	 */
+	MEMORY {
+		@Override
+		Root create() throws IOException {
+			final FileSystem fs = MemoryFileSystemBuilder.newLinux().build();
+			return new Root(Files.createDirectories(fs.getPath("/tmp/kaitai-benchmark"))) {
+				@Override
+				public void close() throws IOException {
+					fs.close();
+				}
+			};
+		}
+	},
+	/**
+	 * Default temporary directory: measures plugin code together with real disk.
+	 */
+	TMP {
+		@Override
+		Root create() throws IOException {
+			return new Root(Files.createTempDirectory("kaitai-benchmark")) {
+				@Override
+				public void close() throws IOException {
+					try {
+						delete(getPath());
+					} catch (KaitaiException e) {
+						throw new IOException(e);
+					}
+				}
+			};
+		}
+	};
+
+	abstract Root create() throws IOException;
+
+	/**
+	 * Root directory of benchmark inside file system.
+	 */
+	public abstract static class Root implements AutoCloseable {
+		private final Path path;
+
+		Root(Path path) {
+			this.path = path;
+		}
+
+		public Path getPath() {
+			return path;
+		}
+
+		@Override
+		public abstract void close() throws IOException;
+	}
+
+	/**
+	 * Create synthetic tree of files: {@code width} directories on every of {@code depth} levels
+	 * with files distributed between leaf directories.
+	 *
+	 * @param root      Root directory
+	 * @param files     Count of files
+	 * @param extension Extension of files
+	 * @param size      Size of every file in bytes
+	 * @return Created files
+	 * @throws IOException If files can not be created
+	 */
+	static List<Path> tree(Path root, int files, String extension, int size) throws IOException {
+		List<Path> dirs = new ArrayList<>();
+		dirs.add(root);
+		for (int level = 0; level < 3; level++) {
+			List<Path> next = new ArrayList<>();
+			for (Path dir : dirs) {
+				for (int i = 0; i < 4; i++) {
+					next.add(Files.createDirectories(dir.resolve("dir_" + level + "_" + i)));
+				}
+			}
+			dirs = next;
+		}
+		byte[] content = content(size);
+		List<Path> created = new ArrayList<>(files);
+		for (int i = 0; i < files; i++) {
+			created.add(Files.write(dirs.get(i % dirs.size()).resolve("file_" + i + extension), content));
+		}
+		return created;
+	}
+
+	/**
+	 * Create content which looks like generated source: text with low entropy.
+	 *
+	 * @param size Size in bytes
+	 * @return Content
+	 */
+	static byte[] content(int size) {
+		Random random = new Random(size);
+		byte[] content = new byte[size];
+		for (int i = 0; i < size; i++) {
+			content[i] = (byte) (i % 64 == 63 ? '\n' : 'a' + random.nextInt(8));
+		}
+		return content;
+	}
+}
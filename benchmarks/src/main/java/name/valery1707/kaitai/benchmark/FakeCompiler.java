@@ -0,0 +1,136 @@
+package name.valery1707.kaitai.benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic replacement of Kaitai compiler with same command line.
+ *
+ * <p>
+ * Behaviour is configured by system properties:
+ * <ul>
+ * <li>{@code fake.classes}: count of Java classes generated for every specification (default {@code 1})</li>
+ * <li>{@code fake.delay}: delay in milliseconds before generation of every specification (default {@code 0})</li>
+ * <li>{@code fake.output}: count of bytes printed into standard output for every specification (default {@code 0})</li>
+ * </ul>
+ *
+ * @see #install(Path, int, long, int)
+ */
+public final class FakeCompiler {
+	private FakeCompiler() {
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int classes = Integer.getInteger("fake.classes", 1);
+		long delay = Long.getLong("fake.delay", 0);
+		int output = Integer.getInteger("fake.output", 0);
+
+		Path outdir = null;
+		String packageName = "";
+		List<Path> sources = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--version":
+					System.out.println("kaitai-struct-compiler 0.8 (fake)");
+					return;
+				case "--outdir":
+					outdir = Paths.get(args[++i]);
+					break;
+				case "--java-package":
+					packageName = args[++i];
+					break;
+				case "--target":
+				case "--java-from-file-class":
+				case "--opaque-types":
+					i++;
+					break;
+				default:
+					if (!args[i].startsWith("-")) {
+						sources.add(Paths.get(args[i]));
+					}
+			}
+		}
+		if (outdir == null) {
+			System.err.println("Error: --outdir is required");
+			System.exit(2);
+		}
+
+		Path pkg = outdir.resolve("src").resolve(packageName.replace('.', '/'));
+		Files.createDirectories(pkg);
+		PrintStream out = System.out;
+		for (Path source : sources) {
+			if (!Files.isRegularFile(source)) {
+				System.err.println(source + ": file not found");
+				System.exit(2);
+			}
+			if (delay > 0) {
+				Thread.sleep(delay);
+			}
+			String name = className(source);
+			for (int c = 0; c < classes; c++) {
+				String className = c == 0 ? name : name + "Part" + c;
+				String content = ""
+					+ (packageName.isEmpty() ? "" : "package " + packageName + ";\n\n")
+					+ "public class " + className + " {\n"
+					+ "    public static final String SOURCE = \"" + source.getFileName() + "\";\n"
+					+ "}\n";
+				Files.write(pkg.resolve(className + ".java"), content.getBytes(StandardCharsets.UTF_8));
+			}
+			for (int printed = 0; printed < output; ) {
+				String line = source.getFileName() + ": compiled " + printed;
+				out.println(line);
+				printed += line.length() + 1;
+			}
+		}
+		out.flush();
+	}
+
+	private static String className(Path source) {
+		String name = source.getFileName().toString().replaceFirst("\\.ksy$", "");
+		StringBuilder className = new StringBuilder(name.length());
+		for (String part : name.split("_")) {
+			if (!part.isEmpty()) {
+				className.append(Character.toUpperCase(part.charAt(0))).append(part.substring(1));
+			}
+		}
+		return className.toString();
+	}
+
+	/**
+	 * Install start scripts of fake compiler with same names as inside Kaitai distribution:
+	 * {@code kaitai-struct-compiler} for Unix and {@code kaitai-struct-compiler.bat} for Windows.
+	 *
+	 * @param bin     Directory for scripts
+	 * @param classes Count of Java classes generated for every specification
+	 * @param delay   Delay in milliseconds before generation of every specification
+	 * @param output  Count of bytes printed into standard output for every specification
+	 * @return Path to script for current OS
+	 * @throws IOException If scripts can not be written
+	 */
+	public static Path install(Path bin, int classes, long delay, int output) throws IOException {
+		Files.createDirectories(bin);
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		String options = "-Xshare:auto -XX:TieredStopAtLevel=1"
+			+ " -Dfake.classes=" + classes
+			+ " -Dfake.delay=" + delay
+			+ " -Dfake.output=" + output
+			+ " -cp \"" + System.getProperty("java.class.path") + "\" "
+			+ FakeCompiler.class.getName();
+
+		Path unix = bin.resolve("kaitai-struct-compiler");
+		Files.write(unix, ("#!/bin/sh\nexec \"" + java + "\" " + options + " \"$@\"\n").getBytes(StandardCharsets.UTF_8));
+		if (!unix.toFile().setExecutable(true)) {
+			throw new IOException("Fail to make executable: " + unix);
+		}
+		Path windows = bin.resolve("kaitai-struct-compiler.bat");
+		Files.write(windows, ("@\"" + java + ".exe\" " + options + " %*\r\n").getBytes(StandardCharsets.UTF_8));
+
+		return System.getProperty("os.name").startsWith("Windows") ? windows : unix;
+	}
+}
@@ -0,0 +1,61 @@
+package name.valery1707.kaitai.benchmark;
+
+import name.valery1707.kaitai.KaitaiException;
+import name.valery1707.kaitai.KaitaiUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link KaitaiUtils#move(Path, Collection, Path)} and {@link KaitaiUtils#delete(Path)}
+ * of tree which looks like output of compiler for large set of specifications.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(batchSize = 1, iterations = 5)
+@Measurement(batchSize = 1, iterations = 20)
+public class MoveDeleteBenchmark {
+	@Param({"MEMORY", "TMP"})
+	public BenchmarkFileSystem fs;
+
+	@Param({"1000"})
+	public int files;
+
+	@Param({"16384"})
+	public int size;
+
+	private BenchmarkFileSystem.Root root;
+	private Path source;
+	private Path target;
+	private List<Path> generated;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException {
+		root = fs.create();
+		source = root.getPath().resolve("source");
+		target = root.getPath().resolve("target");
+		generated = BenchmarkFileSystem.tree(source, files, ".java", size);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		root.close();
+	}
+
+	@Benchmark
+	public Path move() throws KaitaiException {
+		KaitaiUtils.move(source, generated, target);
+		return target;
+	}
+
+	@Benchmark
+	public Path delete() throws KaitaiException {
+		KaitaiUtils.delete(source);
+		return source;
+	}
+}
@@ -0,0 +1,99 @@
+package name.valery1707.kaitai.benchmark;
+
+import name.valery1707.kaitai.KaitaiProcess;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.helpers.MarkerIgnoringBase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pumping of multi-megabyte output of compiler by {@link KaitaiProcess}: capturing, splitting into lines and logging.
+ *
+ * <p>
+ * Compiler is replaced by {@link FakeCompiler} which prints {@code size} bytes for single specification,
+ * so difference between {@code size=0} and other sizes is the cost of pumping without start of JVM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProcessOutputBenchmark {
+	@Param({"0", "4194304"})
+	public int size;
+
+	private BenchmarkFileSystem.Root root;
+	private Path compiler;
+	private Path spec;
+	private Path outdir;
+	private CountingLogger logger;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		root = BenchmarkFileSystem.TMP.create();
+		compiler = FakeCompiler.install(root.getPath().resolve("bin"), 0, 0, size);
+		spec = Files.write(root.getPath().resolve("spec.ksy"), "meta:\n  id: spec\n".getBytes(StandardCharsets.UTF_8));
+		outdir = root.getPath().resolve("out");
+		logger = new CountingLogger();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		root.close();
+	}
+
+	@Benchmark
+	public long run() throws IOException {
+		KaitaiProcess.Result result = KaitaiProcess
+			.process(compiler.toString())
+			.withArgs("--outdir", outdir.toString(), spec.toString())
+			.run(logger);
+		return result.getOutputSize() + logger.chars;
+	}
+
+	/**
+	 * Logger which only consumes messages, so benchmark is not dominated by logging backend.
+	 */
+	private static final class CountingLogger extends MarkerIgnoringBase {
+		private long chars;
+
+		private void log(String msg) {
+			chars += msg.length();
+		}
+
+		// @formatter:off
+		@Override public boolean isTraceEnabled() { return true; }
+		@Override public void trace(String msg) { log(msg); }
+		@Override public void trace(String format, Object arg) { log(format); }
+		@Override public void trace(String format, Object arg1, Object arg2) { log(format); }
+		@Override public void trace(String format, Object... arguments) { log(format); }
+		@Override public void trace(String msg, Throwable t) { log(msg); }
+		@Override public boolean isDebugEnabled() { return true; }
+		@Override public void debug(String msg) { log(msg); }
+		@Override public void debug(String format, Object arg) { log(format); }
+		@Override public void debug(String format, Object arg1, Object arg2) { log(format); }
+		@Override public void debug(String format, Object... arguments) { log(format); }
+		@Override public void debug(String msg, Throwable t) { log(msg); }
+		@Override public boolean isInfoEnabled() { return true; }
+		@Override public void info(String msg) { log(msg); }
+		@Override public void info(String format, Object arg) { log(format); }
+		@Override public void info(String format, Object arg1, Object arg2) { log(format); }
+		@Override public void info(String format, Object... arguments) { log(format); }
+		@Override public void info(String msg, Throwable t) { log(msg); }
+		@Override public boolean isWarnEnabled() { return true; }
+		@Override public void warn(String msg) { log(msg); }
+		@Override public void warn(String format, Object arg) { log(format); }
+		@Override public void warn(String format, Object... arguments) { log(format); }
+		@Override public void warn(String format, Object arg1, Object arg2) { log(format); }
+		@Override public void warn(String msg, Throwable t) { log(msg); }
+		@Override public boolean isErrorEnabled() { return true; }
+		@Override public void error(String msg) { log(msg); }
+		@Override public void error(String format, Object arg) { log(format); }
+		@Override public void error(String format, Object arg1, Object arg2) { log(format); }
+		@Override public void error(String format, Object... arguments) { log(format); }
+		@Override public void error(String msg, Throwable t) { log(msg); }
+		// @formatter:on
+	}
+}
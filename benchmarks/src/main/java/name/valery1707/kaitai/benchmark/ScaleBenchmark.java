@@ -0,0 +1,187 @@
+package name.valery1707.kaitai.benchmark;
+
+import name.valery1707.kaitai.KaitaiException;
+import name.valery1707.kaitai.KaitaiGenerator;
+import name.valery1707.kaitai.KaitaiMojo;
+import name.valery1707.kaitai.KaitaiUtils;
+import org.apache.maven.model.Build;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.helpers.NOPLogger;
+import org.sonatype.plexus.build.incremental.DefaultBuildContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end generation with {@link FakeCompiler} over growing count of synthetic specifications:
+ * shows scaling problems of scanning, building of command line, capturing of output and relocation of generated files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(batchSize = 1, iterations = 1)
+@Measurement(batchSize = 1, iterations = 5)
+@Fork(1)
+public class ScaleBenchmark {
+	private static final String PACKAGE = "name.valery1707.kaitai.benchmark.generated";
+
+	@Param({"10", "100", "1000", "10000"})
+	public int specs;
+
+	@Param({"false", "true"})
+	public boolean exactOutput;
+
+	@Param({"1"})
+	public int classes;
+
+	@Param({"0"})
+	public long delay;
+
+	@Param({"256"})
+	public int output;
+
+	private BenchmarkFileSystem.Root root;
+	private Path cache;
+	private Path kaitai;
+	private Path sources;
+	private List<Path> specFiles;
+	private Path target;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		root = BenchmarkFileSystem.TMP.create();
+		//Pre-populated cache: download and unpack are skipped, start script of distribution is replaced by fake compiler
+		cache = root.getPath().resolve("cache");
+		Files.createDirectories(cache);
+		Files.createFile(cache.resolve("kaitai-struct-compiler-0.8.zip"));
+		kaitai = FakeCompiler.install(cache.resolve("kaitai-struct-compiler-0.8").resolve("bin"), classes, delay, output);
+		sources = root.getPath().resolve("src/main/resources/kaitai");
+		specFiles = SpecGenerator.generate(sources, specs);
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpIteration() throws IOException {
+		target = Files.createTempDirectory(root.getPath(), "target");
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDownIteration() throws KaitaiException {
+		KaitaiUtils.delete(target);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		root.close();
+	}
+
+	@Benchmark
+	public Path generator() throws KaitaiException {
+		Path output = KaitaiUtils.mkdirs(target.resolve("generated-sources/kaitai"));
+		return KaitaiGenerator
+			.generator(kaitai, output, PACKAGE)
+			.withSource(specFiles)
+			.exactOutput(exactOutput)
+			.executionTimeout(-1)
+			.generate(NOPLogger.NOP_LOGGER);
+	}
+
+	@Benchmark
+	public MavenProject mojo() throws ReflectiveOperationException, MojoExecutionException {
+		MavenProject project = new MavenProject();
+		//Base directory of project is parent of its POM
+		project.setFile(root.getPath().resolve("pom.xml").toFile());
+		Build build = new Build();
+		build.setDirectory(target.toString());
+		project.setBuild(build);
+
+		KaitaiMojo mojo = new KaitaiMojo();
+		mojo.setLog(new QuietLog());
+		set(mojo, "skip", false);
+		set(mojo, "version", "0.8");
+		set(mojo, "cacheDir", cache.toFile());
+		set(mojo, "cacheMaxSize", -1L);
+		set(mojo, "cacheMaxAge", -1L);
+		set(mojo, "executionTimeout", -1L);
+		set(mojo, "noVersionCheck", false);
+		set(mojo, "project", project);
+		set(mojo, "buildContext", new DefaultBuildContext());
+		set(mojo, "sourceDirectory", sources.toFile());
+		set(mojo, "includes", new String[]{"*.ksy"});
+		set(mojo, "excludes", new String[0]);
+		set(mojo, "output", target.resolve("generated-sources/kaitai").toFile());
+		set(mojo, "exactOutput", exactOutput);
+		set(mojo, "stagingDirectory", target.resolve("kaitai").toFile());
+		set(mojo, "packageName", PACKAGE);
+		set(mojo, "overwrite", false);
+		set(mojo, "noAutoRead", false);
+		set(mojo, "validate", true);
+		set(mojo, "addCompileSourceRoot", true);
+		set(mojo, "profileTop", 10);
+		mojo.execute();
+		return project;
+	}
+
+	/**
+	 * Inject parameter of mojo as Maven does.
+	 */
+	private static void set(Object mojo, String name, Object value) throws ReflectiveOperationException {
+		for (Class<?> type = mojo.getClass(); type != null; type = type.getSuperclass()) {
+			try {
+				Field field = type.getDeclaredField(name);
+				field.setAccessible(true);
+				field.set(mojo, value);
+				return;
+			} catch (NoSuchFieldException e) {
+				//Try in super class
+			}
+		}
+		throw new NoSuchFieldException(name);
+	}
+
+	/**
+	 * Maven log which prints only warnings and errors.
+	 */
+	private static final class QuietLog extends SystemStreamLog {
+		@Override
+		public boolean isDebugEnabled() {
+			return false;
+		}
+
+		@Override
+		public void debug(CharSequence content) {
+		}
+
+		@Override
+		public void debug(CharSequence content, Throwable error) {
+		}
+
+		@Override
+		public void debug(Throwable error) {
+		}
+
+		@Override
+		public boolean isInfoEnabled() {
+			return false;
+		}
+
+		@Override
+		public void info(CharSequence content) {
+		}
+
+		@Override
+		public void info(CharSequence content, Throwable error) {
+		}
+
+		@Override
+		public void info(Throwable error) {
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package name.valery1707.kaitai.benchmark;
+
+import name.valery1707.kaitai.KaitaiException;
+import name.valery1707.kaitai.KaitaiUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link KaitaiUtils#scanFiles(Path, String[], String[])} over synthetic tree with specifications and other files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScanFilesBenchmark {
+	@Param({"MEMORY", "TMP"})
+	public BenchmarkFileSystem fs;
+
+	@Param({"100", "10000"})
+	public int files;
+
+	private BenchmarkFileSystem.Root root;
+
+	@Setup
+	public void setUp() throws IOException {
+		root = fs.create();
+		BenchmarkFileSystem.tree(root.getPath().resolve("kaitai"), files / 2, ".ksy", 16);
+		BenchmarkFileSystem.tree(root.getPath().resolve("kaitai"), files / 2, ".txt", 16);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		root.close();
+	}
+
+	@Benchmark
+	public List<Path> scanFiles() throws KaitaiException {
+		return KaitaiUtils.scanFiles(root.getPath(), new String[]{"*.ksy", "*.yaml"}, new String[]{"dir_2_3"});
+	}
+}
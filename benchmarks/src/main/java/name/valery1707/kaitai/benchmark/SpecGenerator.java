@@ -0,0 +1,68 @@
+package name.valery1707.kaitai.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generator of synthetic valid Kaitai specifications.
+ */
+public final class SpecGenerator {
+	private static final int FILES_PER_DIRECTORY = 100;
+
+	private SpecGenerator() {
+	}
+
+	/**
+	 * Generate {@code count} specifications inside nested directories, every one with unique {@code meta/id}.
+	 *
+	 * @param root  Root directory
+	 * @param count Count of specifications
+	 * @return Paths to generated specifications
+	 * @throws IOException If files can not be written
+	 */
+	public static List<Path> generate(Path root, int count) throws IOException {
+		List<Path> specs = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Path dir = Files.createDirectories(root.resolve(String.format("group_%03d", i / FILES_PER_DIRECTORY)));
+			String id = String.format("spec_%05d", i);
+			specs.add(Files.write(dir.resolve(id + ".ksy"), spec(id, i).getBytes(StandardCharsets.UTF_8)));
+		}
+		return specs;
+	}
+
+	static String spec(String id, int seed) {
+		return ""
+			+ "meta:\n"
+			+ "  id: " + id + "\n"
+			+ "  endian: " + (seed % 2 == 0 ? "le" : "be") + "\n"
+			+ "seq:\n"
+			+ "  - id: magic\n"
+			+ "    contents: [0x4b, 0x53, 0x59]\n"
+			+ "  - id: header\n"
+			+ "    type: header\n"
+			+ "  - id: records\n"
+			+ "    type: record\n"
+			+ "    repeat: expr\n"
+			+ "    repeat-expr: header.count\n"
+			+ "types:\n"
+			+ "  header:\n"
+			+ "    seq:\n"
+			+ "      - id: version\n"
+			+ "        type: u2\n"
+			+ "      - id: count\n"
+			+ "        type: u4\n"
+			+ "  record:\n"
+			+ "    seq:\n"
+			+ "      - id: kind\n"
+			+ "        type: u1\n"
+			+ "      - id: body\n"
+			+ "        size: " + (seed % 16 + 1) + "\n"
+			+ "instances:\n"
+			+ "  is_empty:\n"
+			+ "    value: header.count == 0\n";
+	}
+}
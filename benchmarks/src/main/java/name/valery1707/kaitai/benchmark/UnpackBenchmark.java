@@ -0,0 +1,67 @@
+package name.valery1707.kaitai.benchmark;
+
+import name.valery1707.kaitai.KaitaiException;
+import name.valery1707.kaitai.KaitaiUtils;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * {@link KaitaiUtils#unpack(Path, org.slf4j.Logger)} of archive with size and structure of Kaitai distribution:
+ * about hundred of libraries with total size about 15 megabytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(batchSize = 1, iterations = 3)
+@Measurement(batchSize = 1, iterations = 10)
+public class UnpackBenchmark {
+	/**
+	 * Only real file system: {@code unpack} logs paths through {@link Path#toFile()}.
+	 */
+	@Param({"TMP"})
+	public BenchmarkFileSystem fs;
+
+	@Param({"100"})
+	public int entries;
+
+	@Param({"153600"})
+	public int size;
+
+	private BenchmarkFileSystem.Root root;
+	private Path zip;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException {
+		root = fs.create();
+		zip = root.getPath().resolve("kaitai-struct-compiler-0.8.zip");
+		byte[] content = BenchmarkFileSystem.content(size);
+		try (
+			OutputStream os = Files.newOutputStream(zip);
+			ZipOutputStream zos = new ZipOutputStream(os)
+		) {
+			for (int i = 0; i < entries; i++) {
+				zos.putNextEntry(new ZipEntry("kaitai-struct-compiler-0.8/lib/library-" + i + ".jar"));
+				zos.write(content);
+				zos.closeEntry();
+			}
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		root.close();
+	}
+
+	@Benchmark
+	public Path unpack() throws KaitaiException {
+		return KaitaiUtils.unpack(zip, NOPLogger.NOP_LOGGER);
+	}
+}
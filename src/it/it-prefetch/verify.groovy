@@ -0,0 +1,13 @@
+String log = new File(basedir, "build.log").text
+File target = new File(basedir, "target");
+File kaitaiCache = target.toPath().parent.parent.parent.resolve("local-repo/.cache/kaitai").toFile()
+File generated = new File(target, "generated-sources");
+
+assert log.contains("KaiTai distribution: Prepare cache directory")
+assert log.contains("KaiTai distribution: Downloading")
+assert log.contains("KaiTai distribution: Extracting")
+assert log.contains("Kaitai: check version")
+assert log.contains("KaiTai distribution: Prefetched")
+assert log.contains("[INFO] BUILD SUCCESS")
+assert kaitaiCache.exists() && kaitaiCache.renameTo(kaitaiCache.toPath().resolveSibling(target.parentFile.name).toFile())
+assert !generated.exists()
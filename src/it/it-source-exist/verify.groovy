@@ -4,14 +4,19 @@ File kaitaiCache = target.toPath().parent.parent.parent.resolve("local-repo/.cac
 File targetTemplate = target.toPath().resolve("classes/kaitai/ico.ksy").toFile()
 File generated = new File(target, "generated-sources");
 File generatedParser = generated.toPath().resolve("kaitai/src/name/valery1707/kaitai/it/Ico.java").toFile()
+File metrics = target.toPath().resolve("kaitai/metrics.json").toFile()
+File inputDigest = target.toPath().resolve("kaitai/inputs.sha256").toFile()
 
 assert log.contains("KaiTai distribution: Prepare cache directory")
 assert log.contains("KaiTai distribution: Downloading")
 assert log.contains("KaiTai distribution: Extracting")
 assert log.contains("kaitai-struct-compiler")
+assert log.contains("[INFO] Kaitai: metrics: total ")
 assert log.contains("[INFO] BUILD SUCCESS")
 assert kaitaiCache.exists() && kaitaiCache.renameTo(kaitaiCache.toPath().resolveSibling(target.parentFile.name).toFile())
 assert target.exists()
 assert targetTemplate.exists()
 assert generated.exists()
 assert generatedParser.exists() && generatedParser.isFile()
+assert metrics.exists() && metrics.text.contains("\"name\": \"compile\"")
+assert inputDigest.exists() && inputDigest.text.trim() ==~ /[0-9a-f]{64}/
@@ -0,0 +1,192 @@
+package name.valery1707.kaitai;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.settings.Settings;
+import org.slf4j.Logger;
+import org.slf4j.impl.StaticLoggerBinder;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static name.valery1707.kaitai.KaitaiUtils.downloadKaitai;
+import static name.valery1707.kaitai.KaitaiUtils.prepareCache;
+
+/**
+ * Common parameters of all goals: Kaitai distribution, its cache and execution of compiler.
+ */
+public abstract class AbstractKaitaiMojo extends AbstractMojo {
+	static final String KAITAI_VERSION = "0.8";
+
+	/**
+	 * Version of <a href="http://kaitai.io/#download">KaiTai</a> library.
+	 *
+	 * @since 0.1.0
+	 */
+	@Parameter(property = "kaitai.version", defaultValue = KAITAI_VERSION)
+	protected String version;
+
+	/**
+	 * Direct link onto <a href="http://kaitai.io/#download">KaiTai universal zip archive</a>.
+	 *
+	 * @since 0.1.0
+	 */
+	@Parameter(property = "kaitai.url")
+	protected URL url;
+
+	/**
+	 * Cache directory for download KaiTai library.
+	 *
+	 * @see AbstractKaitaiMojo#version
+	 * @see AbstractKaitaiMojo#url
+	 * @since 0.1.0
+	 */
+	@Parameter(property = "kaitai.cache")
+	protected File cacheDir;
+
+	/**
+	 * Maximum total size of {@link #cacheDir cache directory} in megabytes.
+	 * Least recently used distributions are evicted from cache while it is bigger.
+	 *
+	 * <p>
+	 * Distributions which are used by other builds at this moment are never evicted.
+	 * For disabling limit use any negative value.
+	 *
+	 * @see AbstractKaitaiMojo#cacheDir
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.cache.maxSize", defaultValue = "-1")
+	protected long cacheMaxSize;
+
+	/**
+	 * Maximum age in days of last usage of distributions inside {@link #cacheDir cache directory}.
+	 * Distributions which were not used longer are evicted from cache.
+	 *
+	 * <p>
+	 * Distributions which are used by other builds at this moment are never evicted.
+	 * For disabling limit use any negative value.
+	 *
+	 * @see AbstractKaitaiMojo#cacheDir
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.cache.maxAge", defaultValue = "-1")
+	protected long cacheMaxAge;
+
+	/**
+	 * Skip plugin execution (don't read/validate any files, don't generate any java types).
+	 *
+	 * @since 0.1.0
+	 */
+	@Parameter(property = "kaitai.skip", defaultValue = "false")
+	protected boolean skip = false;
+
+	/**
+	 * Specify a timeout in millis for the execution operations.
+	 * If not specified the default is 5 seconds.
+	 *
+	 * <p>
+	 * For disabling timeout use any negative value.
+	 *
+	 * @since 0.1.3
+	 */
+	@Parameter(property = "kaitai.execution.timeout", defaultValue = "5000")
+	protected long executionTimeout;
+
+	/**
+	 * Allow to disable Java version check.
+	 *
+	 * @since 0.1.6
+	 */
+	@Parameter(property = "kaitai.noVersionCheck", defaultValue = "false")
+	protected boolean noVersionCheck;
+
+	/**
+	 * Maximum count of concurrently running compiler processes inside whole Maven JVM,
+	 * shared between all modules of parallel build ({@code mvn -T ...}).
+	 * If not specified then one process per core but not more then one process per gigabyte of physical memory.
+	 *
+	 * <p>
+	 * Limit is JVM-wide: last configured value is used by all modules.
+	 *
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.maxProcesses")
+	protected Integer maxProcesses;
+
+	@Parameter(defaultValue = "${settings}", readonly = true)
+	protected Settings settings;
+
+	@Parameter(defaultValue = "${session}", readonly = true)
+	protected MavenSession session;
+
+	@Parameter(defaultValue = "${project}", readonly = true)
+	protected MavenProject project;
+
+	/**
+	 * Create SLF4J logger which writes into Maven's log of current goal.
+	 *
+	 * @return Logger for messages
+	 */
+	protected Logger createLogger() {
+		StaticLoggerBinder.getSingleton().setMavenLog(getLog());
+		return StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger(getClass().getName());
+	}
+
+	/**
+	 * Apply configured limit of concurrently running compiler processes.
+	 */
+	protected void configureProcessLimit() {
+		if (maxProcesses != null) {
+			KaitaiProcessLimit.setLimit(maxProcesses);
+		}
+	}
+
+	/**
+	 * Mark distribution as used by current build: it will not be evicted from cache until returned lease will be closed.
+	 *
+	 * @param url URL of distribution
+	 * @return Lease for distribution
+	 * @throws KaitaiException If cache directory can not be used
+	 */
+	protected KaitaiCache.Lease leaseDistribution(URL url) throws KaitaiException {
+		return KaitaiCache.cache(detectCacheDir()).lease(url);
+	}
+
+	/**
+	 * Download Kaitai distribution into cache and unzip it.
+	 *
+	 * @param url     URL of distribution
+	 * @param logger  Logger for messages
+	 * @param metrics Metrics for measuring of steps
+	 * @return Path into kaitai compiler executable
+	 * @throws KaitaiException If any io-exception was occurs
+	 */
+	protected Path prepareDistribution(URL url, Logger logger, KaitaiMetrics metrics) throws KaitaiException {
+		Path cacheDir;
+		try (KaitaiMetrics.Phase ignored = metrics.start("cache")) {
+			cacheDir = prepareCache(detectCacheDir(), toBytes(cacheMaxSize), toMillis(cacheMaxAge), logger);
+		}
+		return downloadKaitai(url, cacheDir, logger, metrics);
+	}
+
+	private static long toBytes(long megabytes) {
+		return megabytes < 0 ? -1 : megabytes * 1024 * 1024;
+	}
+
+	private static long toMillis(long days) {
+		return days < 0 ? -1 : TimeUnit.DAYS.toMillis(days);
+	}
+
+	protected Path detectCacheDir() {
+		if (cacheDir != null) {
+			return cacheDir.toPath();
+		} else {
+			Path repository = new File(session.getLocalRepository().getBasedir()).toPath();
+			return repository.resolve(".cache").resolve("kaitai").normalize();
+		}
+	}
+}
@@ -0,0 +1,473 @@
+package name.valery1707.kaitai;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+import static java.lang.String.format;
+import static name.valery1707.kaitai.KaitaiUtils.mkdirs;
+import static org.apache.commons.io.FilenameUtils.getName;
+import static org.apache.commons.lang3.StringUtils.removeEnd;
+
+/**
+ * Cache of Kaitai distributions with limits by total size and by age of last access.
+ *
+ * <p>
+ * Every distribution occupies several sibling items inside cache directory:
+ * downloaded archive, unpacked directory, leftovers of interrupted download/unpack ({@code .tmp}/{@code -tmp})
+ * and lock file ({@code .lock}).
+ * Last modification time of lock file is used as time of last access.
+ *
+ * <p>
+ * Distribution which is used by any build at this moment (see {@link #lease(URL)}) is never evicted.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiCache {
+	private static final String LOCK_SUFFIX = ".lock";
+	private static final String[] TEMP_SUFFIXES = {".tmp", "-tmp"};
+	private static final String ARCHIVE_SUFFIX = ".zip";
+
+	/**
+	 * Leases which are held by current JVM: {@link FileLock} can not be acquired twice inside one JVM.
+	 */
+	private static final Map<Path, Lease> LEASES = new HashMap<>();
+
+	/**
+	 * Lock files which are locked by some thread of current JVM right now: other threads wait for them on monitor of {@link #LEASES}.
+	 */
+	private static final Set<Path> LOCKING = new HashSet<>();
+
+	private final Path root;
+	private long maxSize = -1;
+	private long maxAge = -1;
+
+	/**
+	 * Build {@code KaitaiCache} over directory.
+	 *
+	 * @param root Path for cache directory
+	 * @return New {@code KaitaiCache}
+	 * @throws KaitaiException If directory can not be created
+	 */
+	public static KaitaiCache cache(Path root) throws KaitaiException {
+		return new KaitaiCache(mkdirs(root));
+	}
+
+	private KaitaiCache(Path root) {
+		this.root = root;
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+
+	/**
+	 * Get maximum total size of cache in bytes.
+	 *
+	 * @return Maximum size, negative value means unlimited
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Set maximum total size of cache in bytes.
+	 *
+	 * @param maxSize Maximum size, negative value means unlimited
+	 */
+	public void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Set maximum total size of cache in bytes.
+	 *
+	 * @param maxSize Maximum size, negative value means unlimited
+	 * @return self
+	 */
+	public KaitaiCache maxSize(long maxSize) {
+		setMaxSize(maxSize);
+		return this;
+	}
+
+	/**
+	 * Get maximum age of last access to cache entry in millis.
+	 *
+	 * @return Maximum age, negative value means unlimited
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * Set maximum age of last access to cache entry in millis.
+	 *
+	 * @param maxAge Maximum age, negative value means unlimited
+	 */
+	public void setMaxAge(long maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Set maximum age of last access to cache entry in millis.
+	 *
+	 * @param maxAge Maximum age, negative value means unlimited
+	 * @return self
+	 */
+	public KaitaiCache maxAge(long maxAge) {
+		setMaxAge(maxAge);
+		return this;
+	}
+
+	/**
+	 * Detect name of cache entry which owns item with specified file name.
+	 *
+	 * @param fileName Name of item inside cache directory
+	 * @return Name of cache entry
+	 */
+	public static String entryName(String fileName) {
+		String name = removeEnd(fileName, LOCK_SUFFIX);
+		for (String suffix : TEMP_SUFFIXES) {
+			name = removeEnd(name, suffix);
+		}
+		return removeEnd(name, ARCHIVE_SUFFIX);
+	}
+
+	/**
+	 * Mark distribution from {@code url} as used until returned lease will be closed.
+	 *
+	 * @param url URL of distribution
+	 * @return Lease for distribution
+	 * @throws KaitaiException If lock file can not be created or locked
+	 * @see #lease(String)
+	 */
+	public Lease lease(URL url) throws KaitaiException {
+		return lease(entryName(getName(url.getFile())));
+	}
+
+	/**
+	 * Mark cache entry as used until returned lease will be closed and update time of last access to it.
+	 *
+	 * <p>
+	 * Lease is shared: any count of builds can use same entry, but entry can not be evicted while it is used.
+	 *
+	 * @param entry Name of cache entry
+	 * @return Lease for cache entry
+	 * @throws KaitaiException If lock file can not be created or locked
+	 */
+	public Lease lease(String entry) throws KaitaiException {
+		Path lockFile = root.resolve(entry + LOCK_SUFFIX).toAbsolutePath().normalize();
+		Lease lease;
+		synchronized (LEASES) {
+			awaitLocking(lockFile);
+			lease = LEASES.get(lockFile);
+			if (lease != null) {
+				lease.counter++;
+			} else {
+				LOCKING.add(lockFile);
+			}
+		}
+		if (lease == null) {
+			//Waiting for lock of another process must not block threads which use other entries
+			FileChannel channel = null;
+			try {
+				channel = lockShared(lockFile);
+			} finally {
+				synchronized (LEASES) {
+					LOCKING.remove(lockFile);
+					if (channel != null) {
+						lease = new Lease(lockFile, channel);
+						lease.counter++;
+						LEASES.put(lockFile, lease);
+					}
+					LEASES.notifyAll();
+				}
+			}
+		}
+		try {
+			Files.setLastModifiedTime(lockFile, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			lease.close();
+			throw new KaitaiException(format(
+				"Fail to update last access time of cache entry: %s"
+				, lockFile.toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+		return lease;
+	}
+
+	/**
+	 * Wait while lock file is locked by another thread of current JVM. Must be called inside monitor of {@link #LEASES}.
+	 *
+	 * @param lockFile Path to lock file
+	 * @throws KaitaiException If current thread was interrupted
+	 */
+	private static void awaitLocking(Path lockFile) throws KaitaiException {
+		while (LOCKING.contains(lockFile)) {
+			try {
+				LEASES.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new KaitaiException("Interrupted while waiting for lock of cache entry: " + lockFile.toFile().getAbsolutePath(), e);
+			}
+		}
+	}
+
+	/**
+	 * Acquire shared lock of cache entry.
+	 * Lock file can be removed by eviction in another process while current one waits for lock: then lock is acquired again over new file.
+	 *
+	 * @param lockFile Path to lock file
+	 * @return Channel with acquired lock
+	 * @throws KaitaiException If any io-exception was occurs
+	 */
+	private static FileChannel lockShared(Path lockFile) throws KaitaiException {
+		while (true) {
+			FileChannel channel = lock(lockFile, true, true);
+			if (channel == null) {
+				throw new KaitaiException(format(
+					"Fail to lock cache entry: %s"
+					, lockFile.toFile().getAbsolutePath()
+				));
+			}
+			if (Files.exists(lockFile)) {
+				return channel;
+			}
+			release(channel);
+		}
+	}
+
+	/**
+	 * Evict cache entries which was not accessed longer than {@link #getMaxAge() maxAge}
+	 * and least recently used entries while total size of cache is greater than {@link #getMaxSize() maxSize}.
+	 *
+	 * <p>
+	 * Entries which are used by some build at this moment are skipped.
+	 *
+	 * @param log Logger for messages
+	 * @return Names of evicted entries
+	 * @throws KaitaiException If any io-exception was occurs
+	 */
+	public List<String> evict(Logger log) throws KaitaiException {
+		List<String> evicted = new ArrayList<>();
+		if (maxSize < 0 && maxAge < 0) {
+			return evicted;
+		}
+		List<Entry> entries = scan();
+		Collections.sort(entries);
+		long total = 0;
+		for (Entry entry : entries) {
+			total += entry.size;
+		}
+		long now = System.currentTimeMillis();
+		for (Entry entry : entries) {
+			boolean expired = maxAge >= 0 && now - entry.access > maxAge;
+			boolean overflow = maxSize >= 0 && total > maxSize;
+			if (!expired && !overflow) {
+				break;
+			}
+			if (evict(entry, log)) {
+				total -= entry.size;
+				evicted.add(entry.name);
+			}
+		}
+		return evicted;
+	}
+
+	private boolean evict(Entry entry, Logger log) throws KaitaiException {
+		Path lockFile = root.resolve(entry.name + LOCK_SUFFIX).toAbsolutePath().normalize();
+		synchronized (LEASES) {
+			if (LEASES.containsKey(lockFile) || LOCKING.contains(lockFile)) {
+				log.debug(format("KaiTai distribution: Skip eviction of used cache entry: %s", entry.name));
+				return false;
+			}
+			LOCKING.add(lockFile);
+		}
+		FileChannel channel = null;
+		try {
+			channel = lock(lockFile, false, false);
+			if (channel == null) {
+				log.debug(format("KaiTai distribution: Skip eviction of used cache entry: %s", entry.name));
+				return false;
+			}
+			log.info(format(
+				"KaiTai distribution: Evict from cache: %s (%d bytes)"
+				, entry.name
+				, entry.size
+			));
+			for (Path item : entry.items) {
+				KaitaiTrash.deleteLater(item);
+			}
+			//Remove lock file while it is still locked: waiting builds will lock new file
+			try {
+				Files.deleteIfExists(lockFile);
+			} catch (IOException e) {
+				log.debug("KaiTai distribution: Fail to remove lock file of evicted entry: " + lockFile.toFile().getAbsolutePath(), e);
+			}
+			return true;
+		} finally {
+			release(channel);
+			synchronized (LEASES) {
+				LOCKING.remove(lockFile);
+				LEASES.notifyAll();
+			}
+		}
+	}
+
+	private List<Entry> scan() throws KaitaiException {
+		Map<String, Entry> entries = new HashMap<>();
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(root)) {
+			for (Path child : children) {
+				String fileName = child.getFileName().toString();
+				if (fileName.equals(KaitaiTrash.TRASH_DIR)) {
+					continue;
+				}
+				String name = entryName(fileName);
+				Entry entry = entries.get(name);
+				if (entry == null) {
+					entry = new Entry(name);
+					entries.put(name, entry);
+				}
+				long modified = Files.getLastModifiedTime(child).toMillis();
+				if (fileName.endsWith(LOCK_SUFFIX)) {
+					entry.lockAccess = modified;
+				} else {
+					entry.items.add(child);
+					entry.size += sizeOf(child);
+					entry.access = Math.max(entry.access, modified);
+				}
+			}
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to scan cache directory: %s"
+				, root.normalize().toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+		List<Entry> result = new ArrayList<>(entries.size());
+		for (Entry entry : entries.values()) {
+			if (entry.items.isEmpty()) {
+				continue;
+			}
+			if (entry.lockAccess >= 0) {
+				entry.access = entry.lockAccess;
+			}
+			result.add(entry);
+		}
+		return result;
+	}
+
+	private static long sizeOf(Path path) throws IOException {
+		final long[] size = {0};
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				size[0] += attrs.size();
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return size[0];
+	}
+
+	/**
+	 * Lock file.
+	 *
+	 * @param lockFile Path to lock file
+	 * @param shared   Shared or exclusive lock
+	 * @param wait     Wait for lock or return {@code null} if it is held by another process
+	 * @return Channel with acquired lock or {@code null} if lock is held by another process
+	 * @throws KaitaiException If any io-exception was occurs
+	 */
+	private static FileChannel lock(Path lockFile, boolean shared, boolean wait) throws KaitaiException {
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			FileLock lock = wait
+				? channel.lock(0, Long.MAX_VALUE, shared)
+				: channel.tryLock(0, Long.MAX_VALUE, shared);
+			if (lock == null) {
+				channel.close();
+				return null;
+			}
+			return channel;
+		} catch (OverlappingFileLockException e) {
+			release(channel);
+			return null;
+		} catch (IOException e) {
+			release(channel);
+			throw new KaitaiException(format(
+				"Fail to lock cache entry: %s"
+				, lockFile.toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+	}
+
+	private static void release(FileChannel channel) {
+		if (channel == null) {
+			return;
+		}
+		try {
+			//Closing of channel also releases all its locks
+			channel.close();
+		} catch (IOException ignored) {
+			//Nothing to do: lock file will be released by OS in any case
+		}
+	}
+
+	private static final class Entry implements Comparable<Entry> {
+		private final String name;
+		private final List<Path> items = new ArrayList<>();
+		private long size = 0;
+		private long access = 0;
+		private long lockAccess = -1;
+
+		private Entry(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			return Long.compare(access, o.access);
+		}
+	}
+
+	/**
+	 * Usage mark of cache entry: while it is not closed cache entry will not be evicted.
+	 */
+	public static final class Lease implements AutoCloseable {
+		private final Path lockFile;
+		private final FileChannel channel;
+		private int counter = 0;
+
+		private Lease(Path lockFile, FileChannel channel) {
+			this.lockFile = lockFile;
+			this.channel = channel;
+		}
+
+		@Override
+		public void close() {
+			synchronized (LEASES) {
+				if (counter <= 0) {
+					return;
+				}
+				counter--;
+				if (counter == 0) {
+					LEASES.remove(lockFile);
+					release(channel);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package name.valery1707.kaitai;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static java.lang.String.format;
+import static name.valery1707.kaitai.KaitaiUtils.*;
+
+/**
+ * Cache of Kaitai specifications which are extracted from dependency artifacts.
+ *
+ * <p>
+ * Every artifact is extracted into directory which name contains coordinates and checksum of artifact,
+ * so artifact is extracted again only after change of its content. Structure of directories inside artifact is kept:
+ * relative imports between specifications of the same artifact are resolved as usual.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiDependencies {
+	/**
+	 * Checksums of artifacts which was calculated inside current JVM by {@code path|size|modified}.
+	 */
+	private static final ConcurrentMap<String, String> CHECKSUMS = new ConcurrentHashMap<>();
+	private static final Pattern CHECKSUM = Pattern.compile("^[0-9a-f]{16}$");
+
+	private final Path root;
+
+	private KaitaiDependencies(Path root) {
+		this.root = root;
+	}
+
+	/**
+	 * Build {@code KaitaiDependencies} with preconfigured state.
+	 *
+	 * @param root Root directory of cache
+	 * @return New {@code KaitaiDependencies}
+	 * @throws KaitaiException If directory can not be created
+	 */
+	public static KaitaiDependencies dependencies(Path root) throws KaitaiException {
+		return new KaitaiDependencies(mkdirs(root));
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+
+	/**
+	 * Check that artifact matches with pattern.
+	 *
+	 * @param pattern    Pattern in format {@code groupId:artifactId}, any part can contain wildcards {@code *} and {@code ?}
+	 * @param groupId    Group of artifact
+	 * @param artifactId Id of artifact
+	 * @return {@code true} if artifact matches
+	 */
+	public static boolean matches(String pattern, String groupId, String artifactId) {
+		String[] parts = pattern.trim().split(":", -1);
+		return parts.length == 2
+			&& FilenameUtils.wildcardMatch(groupId, parts[0])
+			&& FilenameUtils.wildcardMatch(artifactId, parts[1]);
+	}
+
+	/**
+	 * Extract specifications from artifact or get them from cache.
+	 * Directory artifact (output of module from the same reactor build) is used as is.
+	 *
+	 * @param coordinates Coordinates of artifact, used as part of name of cache entry
+	 * @param artifact    Path to artifact: archive or directory
+	 * @param includes    Include wildcard mask of file names
+	 * @param excludes    Exclude wildcard mask of file names
+	 * @param log         Logger for messages
+	 * @return Directory with specifications
+	 * @throws KaitaiException If artifact can not be read or extracted
+	 */
+	public Path extract(String coordinates, Path artifact, String[] includes, String[] excludes, Logger log) throws KaitaiException {
+		if (Files.isDirectory(artifact)) {
+			return artifact;
+		}
+		checkFileIsReadable(artifact);
+		String prefix = coordinates.replaceAll("[^A-Za-z0-9._-]", "_") + "-";
+		Path dir = root.resolve(prefix + checksum(artifact).substring(0, 16));
+		if (Files.isDirectory(dir)) {
+			return dir;
+		}
+		evict(prefix, log);
+		log.info(format(
+			"Kaitai: extract specifications of %s"
+			, coordinates
+		));
+		Path temp = createTempDirectory(root, "." + prefix).toAbsolutePath().normalize();
+		FilenameFilter filter = fileFilter(includes, excludes);
+		try (
+			KaitaiEvents.FileEvent event = KaitaiEvents.file("unpack", dir);
+			InputStream is = Files.newInputStream(artifact);
+			ZipInputStream zis = new ZipInputStream(is)
+		) {
+			ZipEntry entry;
+			long files = 0;
+			long bytes = 0;
+			while ((entry = zis.getNextEntry()) != null) {
+				if (entry.isDirectory() || !filter.accept(null, FilenameUtils.getName(entry.getName()))) {
+					continue;
+				}
+				Path current = temp.resolve(entry.getName().replaceFirst("^/+", "")).normalize();
+				if (!current.startsWith(temp)) {
+					throw new KaitaiException(format(
+						"Entry '%s' of '%s' is outside of target directory"
+						, entry.getName()
+						, artifact.normalize().toFile().getAbsolutePath()
+					));
+				}
+				Files.createDirectories(current.getParent());
+				bytes += Files.copy(zis, current, StandardCopyOption.REPLACE_EXISTING);
+				files++;
+			}
+			event.files(files).bytes(bytes);
+		} catch (IOException e) {
+			KaitaiTrash.deleteLater(temp);
+			throw new KaitaiException(format(
+				"Fail to extract specifications of '%s'"
+				, artifact.normalize().toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+		try {
+			Files.move(temp, dir, StandardCopyOption.ATOMIC_MOVE);
+		} catch (FileAlreadyExistsException e) {
+			//Extracted by concurrent build
+			KaitaiTrash.deleteLater(temp);
+		} catch (IOException e) {
+			if (!Files.isDirectory(dir)) {
+				KaitaiTrash.deleteLater(temp);
+				throw new KaitaiException(format(
+					"Fail to move '%s' into '%s'"
+					, temp.toFile().getAbsolutePath()
+					, dir.toFile().getAbsolutePath()
+				)
+					, e
+				);
+			}
+			KaitaiTrash.deleteLater(temp);
+		}
+		return dir;
+	}
+
+	/**
+	 * Remove previous versions of the same artifact.
+	 *
+	 * @param prefix Prefix of cache entries of artifact
+	 * @param log    Logger for messages
+	 */
+	private void evict(String prefix, Logger log) {
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(root, prefix + "*")) {
+			for (Path child : children) {
+				if (CHECKSUM.matcher(child.getFileName().toString().substring(prefix.length())).matches()) {
+					KaitaiTrash.deleteLater(child);
+				}
+			}
+		} catch (IOException | KaitaiException e) {
+			log.debug("Kaitai: fail to remove previous versions of " + prefix, e);
+		}
+	}
+
+	private static String checksum(Path artifact) throws KaitaiException {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(artifact, BasicFileAttributes.class);
+			String key = attributes.size() + "|" + attributes.lastModifiedTime().toMillis() + "|" + artifact.toAbsolutePath().normalize();
+			String checksum = CHECKSUMS.get(key);
+			if (checksum == null) {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				byte[] buffer = new byte[64 * 1024];
+				try (InputStream is = Files.newInputStream(artifact)) {
+					int read;
+					while ((read = is.read(buffer)) >= 0) {
+						digest.update(buffer, 0, read);
+					}
+				}
+				StringBuilder hex = new StringBuilder();
+				for (byte b : digest.digest()) {
+					hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+				}
+				checksum = hex.toString();
+				CHECKSUMS.put(key, checksum);
+			}
+			return checksum;
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to read file: %s"
+				, artifact.normalize().toFile().getAbsolutePath()
+			)
+				, e
+			);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not supported", e);
+		}
+	}
+}
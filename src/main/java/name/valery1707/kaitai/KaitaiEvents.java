@@ -0,0 +1,316 @@
+package name.valery1707.kaitai;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Custom <a href="https://docs.oracle.com/en/java/javase/11/docs/api/jdk.jfr/jdk/jfr/package-summary.html">Java Flight Recorder</a>
+ * events of plugin: file operations and executions of compiler.
+ *
+ * <p>
+ * Plugin is built for Java 7, so event types are created by {@code jdk.jfr.EventFactory} through reflection.
+ * Events are created only while recording of corresponding type is enabled,
+ * on JVM without JFR or without recording all methods are no-op.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiEvents {
+	private static final String CATEGORY = "Kaitai";
+
+	private static final Type FILE = Type.create(
+		"name.valery1707.kaitai.File", "Kaitai File Operation"
+		, "operation", String.class, "Operation"
+		, "path", String.class, "Path"
+		, "files", long.class, "Files"
+		, "bytes", long.class, "Bytes"
+	);
+	private static final int FILE_OPERATION = 0;
+	private static final int FILE_PATH = 1;
+	private static final int FILE_FILES = 2;
+	private static final int FILE_BYTES = 3;
+
+	private static final Type PROCESS = Type.create(
+		"name.valery1707.kaitai.Process", "Kaitai Compiler Execution"
+		, "operation", String.class, "Operation"
+		, "command", String.class, "Command"
+		, "exitCode", int.class, "Exit Code"
+		, "timedOut", boolean.class, "Timed Out"
+		, "stdoutBytes", long.class, "Stdout"
+		, "stderrBytes", long.class, "Stderr"
+	);
+	private static final int PROCESS_OPERATION = 0;
+	private static final int PROCESS_COMMAND = 1;
+	private static final int PROCESS_EXIT_CODE = 2;
+	private static final int PROCESS_TIMED_OUT = 3;
+	private static final int PROCESS_STDOUT = 4;
+	private static final int PROCESS_STDERR = 5;
+
+	private KaitaiEvents() {
+	}
+
+	/**
+	 * Begin event of file operation. Event is committed on close.
+	 *
+	 * @param operation Name of operation
+	 * @param path      Target of operation
+	 * @return Started event
+	 */
+	public static FileEvent file(String operation, Path path) {
+		Object event = FILE.begin();
+		if (event != null) {
+			FILE.set(event, FILE_OPERATION, operation);
+			FILE.set(event, FILE_PATH, path.normalize().toAbsolutePath().toString());
+		}
+		return new FileEvent(event);
+	}
+
+	/**
+	 * Begin event of compiler execution. Event is committed on close.
+	 *
+	 * @param operation Name of operation
+	 * @param command   Path to compiler
+	 * @return Started event
+	 */
+	public static ProcessEvent process(String operation, Path command) {
+		Object event = PROCESS.begin();
+		if (event != null) {
+			PROCESS.set(event, PROCESS_OPERATION, operation);
+			PROCESS.set(event, PROCESS_COMMAND, command.normalize().toAbsolutePath().toString());
+			PROCESS.set(event, PROCESS_EXIT_CODE, -1);
+		}
+		return new ProcessEvent(event);
+	}
+
+	/**
+	 * Check that JFR is available in current JVM.
+	 *
+	 * @return {@code true} if event types were registered
+	 */
+	public static boolean isAvailable() {
+		return FILE.factory != null && PROCESS.factory != null;
+	}
+
+	/**
+	 * Event of file operation.
+	 */
+	public static final class FileEvent implements AutoCloseable {
+		private final Object event;
+
+		private FileEvent(Object event) {
+			this.event = event;
+		}
+
+		/**
+		 * Set count of processed files.
+		 *
+		 * @param files Count of files
+		 * @return self
+		 */
+		public FileEvent files(long files) {
+			if (event != null) {
+				FILE.set(event, FILE_FILES, files);
+			}
+			return this;
+		}
+
+		/**
+		 * Set count of processed bytes.
+		 *
+		 * @param bytes Count of bytes
+		 * @return self
+		 */
+		public FileEvent bytes(long bytes) {
+			if (event != null) {
+				FILE.set(event, FILE_BYTES, bytes);
+			}
+			return this;
+		}
+
+		@Override
+		public void close() {
+			FILE.commit(event);
+		}
+	}
+
+	/**
+	 * Event of compiler execution: from start of process until its exit.
+	 */
+	public static final class ProcessEvent implements AutoCloseable {
+		private final Object event;
+
+		private ProcessEvent(Object event) {
+			this.event = event;
+		}
+
+		/**
+		 * Set exit code of process.
+		 *
+		 * @param exitCode Exit code
+		 * @return self
+		 */
+		public ProcessEvent exitCode(int exitCode) {
+			if (event != null) {
+				PROCESS.set(event, PROCESS_EXIT_CODE, exitCode);
+			}
+			return this;
+		}
+
+		/**
+		 * Mark process as killed by timeout.
+		 *
+		 * @return self
+		 */
+		public ProcessEvent timedOut() {
+			if (event != null) {
+				PROCESS.set(event, PROCESS_TIMED_OUT, true);
+			}
+			return this;
+		}
+
+		/**
+		 * Set size of process output.
+		 *
+		 * @param stdout Size of standard output in bytes
+		 * @param stderr Size of error output in bytes
+		 * @return self
+		 */
+		public ProcessEvent output(long stdout, long stderr) {
+			if (event != null) {
+				PROCESS.set(event, PROCESS_STDOUT, stdout);
+				PROCESS.set(event, PROCESS_STDERR, stderr);
+			}
+			return this;
+		}
+
+		@Override
+		public void close() {
+			PROCESS.commit(event);
+		}
+	}
+
+	/**
+	 * Event type registered through {@code jdk.jfr.EventFactory}.
+	 */
+	private static final class Type {
+		private final Object factory;
+		private final Method isEnabled;
+		private final Object eventType;
+		private final Method newEvent;
+		private final Method begin;
+		private final Method set;
+		private final Method shouldCommit;
+		private final Method commit;
+
+		private Type(Object factory, Object eventType, Method isEnabled, Method newEvent, Method begin, Method set, Method shouldCommit, Method commit) {
+			this.factory = factory;
+			this.eventType = eventType;
+			this.isEnabled = isEnabled;
+			this.newEvent = newEvent;
+			this.begin = begin;
+			this.set = set;
+			this.shouldCommit = shouldCommit;
+			this.commit = commit;
+		}
+
+		/**
+		 * Register event type.
+		 *
+		 * @param name   Name of event type
+		 * @param label  Human readable label of event type
+		 * @param fields Triples of field name, field type and field label
+		 * @return Registered type or no-op type if JFR is not available
+		 */
+		private static Type create(String name, String label, Object... fields) {
+			try {
+				Class<?> annotationClass = Class.forName("jdk.jfr.AnnotationElement");
+				Constructor<?> annotation = annotationClass.getConstructor(Class.class, Object.class);
+				Class<?> nameClass = Class.forName("jdk.jfr.Name");
+				Class<?> labelClass = Class.forName("jdk.jfr.Label");
+				Class<?> categoryClass = Class.forName("jdk.jfr.Category");
+				Class<?> dataAmountClass = Class.forName("jdk.jfr.DataAmount");
+
+				List<Object> annotations = Arrays.asList(
+					annotation.newInstance(nameClass, name)
+					, annotation.newInstance(labelClass, label)
+					, annotation.newInstance(categoryClass, new String[]{CATEGORY})
+				);
+
+				Class<?> valueClass = Class.forName("jdk.jfr.ValueDescriptor");
+				Constructor<?> value = valueClass.getConstructor(Class.class, String.class, List.class);
+				List<Object> values = new ArrayList<>();
+				for (int i = 0; i < fields.length; i += 3) {
+					String fieldName = (String) fields[i];
+					List<Object> fieldAnnotations = new ArrayList<>();
+					fieldAnnotations.add(annotation.newInstance(labelClass, fields[i + 2]));
+					if (fieldName.toLowerCase().endsWith("bytes")) {
+						fieldAnnotations.add(annotation.newInstance(dataAmountClass, "BYTES"));
+					}
+					values.add(value.newInstance(fields[i + 1], fieldName, Collections.unmodifiableList(fieldAnnotations)));
+				}
+
+				Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+				Object factory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, values);
+				Object eventType = factoryClass.getMethod("getEventType").invoke(factory);
+				Class<?> eventClass = Class.forName("jdk.jfr.Event");
+				return new Type(
+					factory
+					, eventType
+					, Class.forName("jdk.jfr.EventType").getMethod("isEnabled")
+					, factoryClass.getMethod("newEvent")
+					, eventClass.getMethod("begin")
+					, eventClass.getMethod("set", int.class, Object.class)
+					, eventClass.getMethod("shouldCommit")
+					, eventClass.getMethod("commit")
+				);
+			} catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+				return new Type(null, null, null, null, null, null, null, null);
+			}
+		}
+
+		/**
+		 * Create and begin new event.
+		 *
+		 * @return New event or {@code null} if event type is not recorded now
+		 */
+		private Object begin() {
+			if (factory == null) {
+				return null;
+			}
+			try {
+				if (!(Boolean) isEnabled.invoke(eventType)) {
+					return null;
+				}
+				Object event = newEvent.invoke(factory);
+				begin.invoke(event);
+				return event;
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				return null;
+			}
+		}
+
+		private void set(Object event, int index, Object value) {
+			try {
+				set.invoke(event, index, value);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				//Event is only diagnostic: never fail main flow because of it
+			}
+		}
+
+		private void commit(Object event) {
+			if (event == null) {
+				return;
+			}
+			try {
+				if ((Boolean) shouldCommit.invoke(event)) {
+					commit.invoke(event);
+				}
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				//Event is only diagnostic: never fail main flow because of it
+			}
+		}
+	}
+}
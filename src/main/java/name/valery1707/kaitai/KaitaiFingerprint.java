@@ -0,0 +1,352 @@
+package name.valery1707.kaitai;
+
+import org.slf4j.Logger;
+import org.yaml.snakeyaml.nodes.MappingNode;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.SequenceNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static name.valery1707.kaitai.KaitaiSpec.scalar;
+import static name.valery1707.kaitai.KaitaiUtils.mkdirs;
+import static name.valery1707.kaitai.KaitaiUtils.move;
+
+/**
+ * Canonical fingerprint of Kaitai specification: hash of its YAML tree without documentation.
+ *
+ * <p>
+ * Fingerprint does not depend on comments, formatting, quoting of strings, order of keys inside maps
+ * and on documentation-only keys ({@code doc}, {@code doc-ref} and keys which start with {@code -}),
+ * so edits which do not change generated parsers do not trigger generation.
+ *
+ * <p>
+ * Fingerprints are cached by path, size and modification time of file together with imports of specification,
+ * so unchanged files are not parsed again even for searching of imported specifications.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiFingerprint {
+	private static final Set<String> DOCUMENTATION = new HashSet<>(Arrays.asList("doc", "doc-ref"));
+
+	/**
+	 * Keys of maps which contain user-defined names: documentation keys inside them are names, not documentation.
+	 */
+	private static final Set<String> NAMED = new HashSet<>(Arrays.asList("types", "instances", "enums"));
+
+	/**
+	 * Maximum depth of YAML tree: protection from recursive aliases.
+	 */
+	private static final int MAX_DEPTH = 256;
+
+	/**
+	 * Separator of fingerprint and imports inside cached entry: {@code fingerprint|import|import}.
+	 */
+	private static final char SEPARATOR = '|';
+
+	/**
+	 * Fingerprints with imports which was calculated inside current JVM by {@code size|modified|path}.
+	 */
+	private static final ConcurrentMap<String, String> FINGERPRINTS = new ConcurrentHashMap<>();
+
+	private Path cacheFile;
+
+	/**
+	 * Build {@code KaitaiFingerprint} with default state.
+	 *
+	 * @return New {@code KaitaiFingerprint}
+	 */
+	public static KaitaiFingerprint fingerprints() {
+		return new KaitaiFingerprint();
+	}
+
+	private KaitaiFingerprint() {
+	}
+
+	/**
+	 * Get file for storing of fingerprints between builds.
+	 *
+	 * @return Cache file or {@code null} if cache is stored only in memory
+	 */
+	public Path getCacheFile() {
+		return cacheFile;
+	}
+
+	/**
+	 * Set file for storing of fingerprints between builds.
+	 *
+	 * @param cacheFile Cache file or {@code null} if cache is stored only in memory
+	 */
+	public void setCacheFile(Path cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * Set file for storing of fingerprints between builds.
+	 *
+	 * @param cacheFile Cache file or {@code null} if cache is stored only in memory
+	 * @return self
+	 */
+	public KaitaiFingerprint cacheFile(Path cacheFile) {
+		setCacheFile(cacheFile);
+		return this;
+	}
+
+	/**
+	 * Calculate fingerprints of specifications or get them from cache.
+	 *
+	 * @param sources Paths to specifications
+	 * @param log     Logger for messages
+	 * @return Fingerprints in order of {@code sources}
+	 * @throws KaitaiException If any specification can not be read
+	 */
+	public Map<Path, String> fingerprint(Collection<Path> sources, Logger log) throws KaitaiException {
+		return fingerprint(sources, null, log);
+	}
+
+	/**
+	 * Calculate fingerprints of specifications and of specifications which are imported by them directly or transitively, or get them from cache.
+	 * Imports are resolved as compiler does: relative ones inside directory of importing specification,
+	 * absolute ones inside {@code importPaths} in their order. Imports which can not be resolved are skipped: compiler will report about them.
+	 *
+	 * @param sources     Paths to specifications
+	 * @param importPaths Directories for absolute imports or {@code null} if imports must not be followed
+	 * @param log         Logger for messages
+	 * @return Fingerprints in order of {@code sources}, then fingerprints of imported specifications which are not inside {@code sources}
+	 * @throws KaitaiException If any specification can not be read
+	 */
+	public Map<Path, String> fingerprint(Collection<Path> sources, Collection<Path> importPaths, Logger log) throws KaitaiException {
+		Map<String, String> cached = loadCache();
+		Map<String, String> actual = new TreeMap<>();
+		Map<Path, String> result = new LinkedHashMap<>();
+		Set<Path> seen = new HashSet<>();
+		Deque<Path> queue = new ArrayDeque<>(sources);
+		while (!queue.isEmpty()) {
+			Path source = queue.poll();
+			if (!seen.add(source.toAbsolutePath().normalize())) {
+				continue;
+			}
+			String key = key(source);
+			String entry = FINGERPRINTS.get(key);
+			if (entry == null) {
+				entry = cached.get(key);
+			}
+			if (entry == null || entry.indexOf(SEPARATOR) < 0) {
+				entry = entry(source);
+			}
+			FINGERPRINTS.put(key, entry);
+			actual.put(key, entry);
+			String[] parts = entry.split("\\" + SEPARATOR, -1);
+			result.put(source, parts[0]);
+			if (importPaths != null) {
+				for (int i = 1; i < parts.length; i++) {
+					Path imported = resolveImport(source, parts[i], importPaths);
+					if (imported != null) {
+						queue.add(imported);
+					}
+				}
+			}
+		}
+		if (!actual.equals(cached)) {
+			storeCache(actual, log);
+		}
+		return result;
+	}
+
+	/**
+	 * Calculate fingerprint of specification.
+	 * Content which is not valid YAML document is fingerprinted as is: compiler will report about it.
+	 *
+	 * @param source Path to specification
+	 * @return Fingerprint
+	 * @throws KaitaiException If specification can not be read
+	 */
+	public static String fingerprint(Path source) throws KaitaiException {
+		String entry = entry(source);
+		return entry.substring(0, entry.indexOf(SEPARATOR));
+	}
+
+	/**
+	 * Calculate fingerprint of parsed specification.
+	 *
+	 * @param spec Parsed specification
+	 * @return Fingerprint
+	 */
+	public static String fingerprint(KaitaiSpec spec) {
+		StringBuilder canonical = new StringBuilder();
+		canonical(spec.getRoot(), false, 0, canonical);
+		return KaitaiValidator.sha256(canonical.toString().getBytes(UTF_8));
+	}
+
+	/**
+	 * Calculate fingerprint of specification together with its imports.
+	 *
+	 * @param source Path to specification
+	 * @return Entry of cache in format {@code fingerprint|import|import}
+	 * @throws KaitaiException If specification can not be read
+	 */
+	private static String entry(Path source) throws KaitaiException {
+		byte[] content;
+		try {
+			content = Files.readAllBytes(source);
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to read file: %s"
+				, source.normalize().toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+		KaitaiSpec spec;
+		try {
+			spec = KaitaiSpec.parse(source, new String(content, UTF_8));
+		} catch (KaitaiException e) {
+			return "raw:" + KaitaiValidator.sha256(content) + SEPARATOR;
+		}
+		StringBuilder entry = new StringBuilder(fingerprint(spec)).append(SEPARATOR);
+		String delimiter = "";
+		for (String imported : spec.getImports()) {
+			//Cache is stored as lines of values separated by space
+			if (imported.indexOf(SEPARATOR) < 0 && imported.indexOf(' ') < 0) {
+				entry.append(delimiter).append(imported);
+				delimiter = String.valueOf(SEPARATOR);
+			}
+		}
+		return entry.toString();
+	}
+
+	private static Path resolveImport(Path source, String name, Collection<Path> importPaths) {
+		if (name.isEmpty()) {
+			return null;
+		}
+		if (name.startsWith("/")) {
+			for (Path importPath : importPaths) {
+				Path path = importPath.resolve(name.substring(1) + ".ksy").normalize();
+				if (Files.isRegularFile(path)) {
+					return path;
+				}
+			}
+			return null;
+		}
+		Path path = source.toAbsolutePath().normalize().getParent().resolve(name + ".ksy").normalize();
+		return Files.isRegularFile(path) ? path : null;
+	}
+
+	/**
+	 * Write canonical form of YAML node: scalars with their resolved tags, maps with sorted keys and without documentation.
+	 * Every string is prefixed by its length, so different trees can not have the same form.
+	 *
+	 * @param node  YAML node
+	 * @param named Node is map of user-defined names
+	 * @param depth Depth of node
+	 * @param out   Target of canonical form
+	 */
+	private static void canonical(Node node, boolean named, int depth, StringBuilder out) {
+		if (node == null || depth > MAX_DEPTH) {
+			out.append('~');
+		} else if (node instanceof ScalarNode) {
+			string(node.getTag().getValue(), out);
+			string(((ScalarNode) node).getValue(), out);
+		} else if (node instanceof SequenceNode) {
+			List<Node> items = ((SequenceNode) node).getValue();
+			out.append('[').append(items.size());
+			for (Node item : items) {
+				canonical(item, false, depth + 1, out);
+			}
+			out.append(']');
+		} else if (node instanceof MappingNode) {
+			Map<String, Node> entries = new TreeMap<>();
+			for (NodeTuple tuple : ((MappingNode) node).getValue()) {
+				String key = scalar(tuple.getKeyNode());
+				if (key == null) {
+					StringBuilder complex = new StringBuilder();
+					canonical(tuple.getKeyNode(), false, depth + 1, complex);
+					key = complex.toString();
+				} else if (!named && (DOCUMENTATION.contains(key) || key.startsWith("-"))) {
+					continue;
+				}
+				entries.put(key, tuple.getValueNode());
+			}
+			out.append('{').append(entries.size());
+			for (Map.Entry<String, Node> entry : entries.entrySet()) {
+				string(entry.getKey(), out);
+				canonical(entry.getValue(), !named && NAMED.contains(entry.getKey()), depth + 1, out);
+			}
+			out.append('}');
+		} else {
+			out.append('?');
+		}
+	}
+
+	private static void string(String value, StringBuilder out) {
+		out.append(value.length()).append(':').append(value);
+	}
+
+	private static String key(Path source) throws KaitaiException {
+		Path path = source.toAbsolutePath().normalize();
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			return attributes.size() + "|" + attributes.lastModifiedTime().toMillis() + "|" + path;
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to read file: %s"
+				, path.toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+	}
+
+	private Map<String, String> loadCache() {
+		Map<String, String> cached = new TreeMap<>();
+		if (cacheFile != null && Files.isRegularFile(cacheFile)) {
+			try {
+				for (String line : Files.readAllLines(cacheFile, UTF_8)) {
+					int separator = line.indexOf(' ');
+					if (separator > 0) {
+						cached.put(line.substring(separator + 1), line.substring(0, separator));
+					}
+				}
+			} catch (IOException ignored) {
+				//Broken cache is same as absent cache
+			}
+		}
+		return cached;
+	}
+
+	private void storeCache(Map<String, String> actual, Logger log) {
+		if (cacheFile == null) {
+			return;
+		}
+		List<String> lines = new ArrayList<>(actual.size());
+		for (Map.Entry<String, String> entry : actual.entrySet()) {
+			lines.add(entry.getValue() + " " + entry.getKey());
+		}
+		Path temp = cacheFile.resolveSibling(cacheFile.getFileName().toString() + ".tmp");
+		try {
+			mkdirs(cacheFile.getParent());
+			Files.write(temp, lines, UTF_8);
+			move(temp, cacheFile);
+		} catch (IOException | KaitaiException e) {
+			log.debug("Kaitai: fail to store fingerprint cache: " + cacheFile.toAbsolutePath(), e);
+		}
+	}
+}
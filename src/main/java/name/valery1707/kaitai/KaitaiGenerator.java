@@ -1,21 +1,30 @@
 package name.valery1707.kaitai;
 
-import org.apache.commons.io.output.ByteArrayOutputStream;
-import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.SystemUtils;
-import org.buildobjects.process.ExternalProcessFailureException;
-import org.buildobjects.process.ProcBuilder;
-import org.buildobjects.process.StartupException;
-import org.buildobjects.process.TimeoutException;
 import org.slf4j.Logger;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
+import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableSet;
 import static name.valery1707.kaitai.KaitaiUtils.*;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
@@ -23,19 +32,29 @@ import static org.apache.commons.lang3.StringUtils.trimToNull;
 
 @SuppressWarnings("WeakerAccess")
 public class KaitaiGenerator {
+	private static final String VERSION_PROBE_SUFFIX = ".version";
+	/**
+	 * Command line of {@code cmd.exe} (which runs {@code .bat} script of compiler) is limited by 8191 chars.
+	 * Other systems are limited by {@code ARG_MAX} which is shared with environment variables, so use safe part of its common value.
+	 */
+	public static final int DEFAULT_MAX_COMMAND_LENGTH = SystemUtils.IS_OS_WINDOWS ? 8_000 : 128 * 1024;
+
 	private final Path kaitai;
 	private final Path output;
 	private final String packageName;
 	private final Set<Path> sources = new LinkedHashSet<>();
+	private final List<Path> importPaths = new ArrayList<>();
 	private boolean overwrite = false;
 	private boolean exactOutput = false;
-	private final ByteArrayOutputStream streamError = new ByteArrayOutputStream(256);
-	private final ByteArrayOutputStream streamOutput = new ByteArrayOutputStream(256);
+	private Path stagingDirectory;
 	private long executionTimeout = 5_000;
 	private String fromFileClass;
 	private Boolean opaqueTypes;
 	private boolean noVersionCheck;
 	private boolean noAutoRead;
+	private int maxCommandLength = DEFAULT_MAX_COMMAND_LENGTH;
+	private KaitaiMetrics metrics = KaitaiMetrics.metrics();
+	private KaitaiProfile profile;
 
 	/**
 	 * Build {@code KaitaiGenerator} with preconfigured state.
@@ -105,6 +124,25 @@ public class KaitaiGenerator {
 		return withSource(Arrays.asList(sources));
 	}
 
+	public List<Path> getImportPaths() {
+		return unmodifiableList(importPaths);
+	}
+
+	/**
+	 * Add directories for searching of absolute imports of specifications ({@code --import-path} of compiler).
+	 *
+	 * @param importPaths Directories with specifications
+	 * @return self
+	 * @throws KaitaiException If any directory is not readable
+	 */
+	public KaitaiGenerator withImportPath(Iterable<Path> importPaths) throws KaitaiException {
+		for (Path importPath : importPaths) {
+			checkDirectoryIsReadable(importPath);
+			this.importPaths.add(importPath);
+		}
+		return this;
+	}
+
 	public boolean isOverwrite() {
 		return overwrite;
 	}
@@ -131,6 +169,37 @@ public class KaitaiGenerator {
 		return this;
 	}
 
+	/**
+	 * Get parent directory for staging of generation in {@link #isExactOutput() exactOutput} mode.
+	 *
+	 * @return Parent directory for staging or {@code null} for parent of output directory
+	 */
+	public Path getStagingDirectory() {
+		return stagingDirectory;
+	}
+
+	/**
+	 * Set parent directory for staging of generation in {@link #isExactOutput() exactOutput} mode.
+	 * It must be on the same filesystem as output directory: otherwise staging is created near output directory,
+	 * so generated files are renamed instead of copying.
+	 *
+	 * @param stagingDirectory Parent directory for staging or {@code null} for parent of output directory
+	 */
+	public void setStagingDirectory(Path stagingDirectory) {
+		this.stagingDirectory = stagingDirectory;
+	}
+
+	/**
+	 * Set parent directory for staging of generation in {@link #isExactOutput() exactOutput} mode.
+	 *
+	 * @param stagingDirectory Parent directory for staging or {@code null} for parent of output directory
+	 * @return self
+	 */
+	public KaitaiGenerator stagingDirectory(Path stagingDirectory) {
+		setStagingDirectory(stagingDirectory);
+		return this;
+	}
+
 	/**
 	 * Get configured execution timeout value.
 	 *
@@ -274,42 +343,225 @@ public class KaitaiGenerator {
 		return this;
 	}
 
+	/**
+	 * Get maximum length of command line for single execution of compiler.
+	 *
+	 * @return Maximum length of command line
+	 */
+	public int getMaxCommandLength() {
+		return maxCommandLength;
+	}
 
-	private ProcBuilder process(Logger log) {
-		ProcBuilder builder = new ProcBuilder(getKaitai().normalize().toAbsolutePath().toString())
-			.withErrorStream(new TeeOutputStream(LogWriter.logError(log), streamError))
-			.withOutputStream(new TeeOutputStream(LogWriter.logInfo(log), streamOutput))
-			.withExpectedExitStatuses(0);
+	/**
+	 * Set maximum length of command line for single execution of compiler.
+	 * Sources which do not fit into it are generated by several executions into the same output.
+	 *
+	 * @param maxCommandLength Maximum length of command line
+	 */
+	public void setMaxCommandLength(int maxCommandLength) {
+		this.maxCommandLength = maxCommandLength;
+	}
 
-		if (getExecutionTimeout() < 0) {
-			builder.withNoTimeout();
-		} else {
-			builder.withTimeoutMillis(getExecutionTimeout());
-		}
+	/**
+	 * Set maximum length of command line for single execution of compiler.
+	 *
+	 * @param maxCommandLength Maximum length of command line
+	 * @return self
+	 */
+	public KaitaiGenerator maxCommandLength(int maxCommandLength) {
+		setMaxCommandLength(maxCommandLength);
+		return this;
+	}
+
+	/**
+	 * Get metrics for measuring of generation phases.
+	 *
+	 * @return Metrics
+	 */
+	public KaitaiMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Set metrics for measuring of generation phases.
+	 *
+	 * @param metrics Metrics
+	 */
+	public void setMetrics(KaitaiMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Set metrics for measuring of generation phases.
+	 *
+	 * @param metrics Metrics
+	 * @return self
+	 */
+	public KaitaiGenerator metrics(KaitaiMetrics metrics) {
+		setMetrics(metrics);
+		return this;
+	}
+
+	/**
+	 * Get profile for recording of compilation costs of single specifications.
+	 *
+	 * @return Profile or {@code null} if profiling is disabled
+	 */
+	public KaitaiProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Set profile for recording of compilation costs of single specifications.
+	 * With profile every specification is compiled by separate execution of compiler, so generation is much slower.
+	 *
+	 * @param profile Profile or {@code null} for disable profiling
+	 */
+	public void setProfile(KaitaiProfile profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * Set profile for recording of compilation costs of single specifications.
+	 *
+	 * @param profile Profile or {@code null} for disable profiling
+	 * @return self
+	 */
+	public KaitaiGenerator profile(KaitaiProfile profile) {
+		setProfile(profile);
+		return this;
+	}
+
+	/**
+	 * Take immutable snapshot of current configuration.
+	 * Snapshot is not affected by further changes of this generator and can be shared between threads.
+	 *
+	 * @return Immutable configuration
+	 * @see Config#generateAsync(Executor, Logger)
+	 */
+	public Config toConfig() {
+		return new Config(this);
+	}
+
+	private KaitaiProcess process(Logger log) {
+		KaitaiProcess process = KaitaiProcess
+			.process(getKaitai().normalize().toAbsolutePath().toString())
+			.timeoutMillis(getExecutionTimeout());
 
 		if (isNoVersionCheck()) {
 			if (SystemUtils.IS_OS_WINDOWS) {
 				log.info("Option `noVersionCheck` is ignored on Windows");
 			} else {
-				builder.withArgs("-no-version-check");
+				process.withArgs("-no-version-check");
 			}
 		}
 
-		return builder;
+		return process;
 	}
 
-	private void execute(ProcBuilder builder) throws KaitaiException {
+	private KaitaiProcess.Result execute(List<String> args, Logger log, KaitaiMetrics.Phase phase) throws KaitaiException {
+		KaitaiProcess process = process(log).withArgs(args);
+		long queued = KaitaiProcessLimit.acquire();
+		long start = System.nanoTime();
+		long cpu = KaitaiMetrics.childrenCpuMillis();
+		KaitaiEvents.ProcessEvent event = KaitaiEvents.process(phase.getName(), getKaitai());
+		KaitaiProcess.Result result = null;
 		try {
-			streamError.reset();
-			streamOutput.reset();
-			builder.run();
-		} catch (StartupException | TimeoutException | ExternalProcessFailureException e) {
+			result = process.run(log);
+			event.exitCode(result.getExitValue());
+			return result;
+		} catch (KaitaiProcess.TimeoutException | KaitaiProcess.ExternalFailureException e) {
+			if (e instanceof KaitaiProcess.TimeoutException) {
+				result = ((KaitaiProcess.TimeoutException) e).getResult();
+				event.timedOut();
+			} else {
+				result = ((KaitaiProcess.ExternalFailureException) e).getResult();
+				event.exitCode(result.getExitValue());
+			}
 			throw new KaitaiException(
 				"Fail to execute kaitai command: "
-					+ new String(streamError.toByteArray(), UTF_8)
-					+ new String(streamOutput.toByteArray(), UTF_8)
+					+ result.getError()
+					+ result.getOutput()
 				, e
 			);
+		} catch (IOException e) {
+			throw new KaitaiException("Fail to execute kaitai command: " + e.getMessage(), e);
+		} finally {
+			event.output(
+				result == null ? 0 : result.getOutputSize()
+				, result == null ? 0 : result.getErrorSize()
+			).close();
+			KaitaiProcessLimit.release();
+			if (cpu >= 0) {
+				phase.cpu(KaitaiMetrics.childrenCpuMillis() - cpu);
+			}
+			log.info(format(
+				"Kaitai: executed in %d ms, queued for %d ms (limit of concurrent executions: %d)"
+				, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+				, queued
+				, KaitaiProcessLimit.getLimit()
+			));
+		}
+	}
+
+	/**
+	 * Check that compiler can be started and detect its version.
+	 *
+	 * <p>
+	 * Result of successful check is stored into probe file near compiler executable
+	 * and reused while Java environment of compiler ({@code JAVA_HOME} and {@code PATH}) stays the same.
+	 *
+	 * @param log Logger for messages
+	 * @return Version of compiler
+	 * @throws KaitaiException If compiler can not be started
+	 */
+	public String checkVersion(Logger log) throws KaitaiException {
+		Path probe = getKaitai().resolveSibling(getKaitai().getFileName().toString() + VERSION_PROBE_SUFFIX);
+		String key = versionProbeKey();
+		String version = readVersionProbe(probe, key);
+		if (version != null) {
+			log.info("Kaitai: version (cached): " + version);
+			return version;
+		}
+
+		log.info("Kaitai: check version");
+		try (KaitaiMetrics.Phase phase = getMetrics().start("version-check")) {
+			version = execute(Collections.singletonList("--version"), log, phase).getOutput().trim();
+		}
+		writeVersionProbe(probe, key, version, log);
+		return version;
+	}
+
+	private String versionProbeKey() {
+		return "JAVA_HOME=" + System.getenv("JAVA_HOME")
+			+ "|PATH=" + System.getenv("PATH")
+			+ "|noVersionCheck=" + isNoVersionCheck();
+	}
+
+	private static String readVersionProbe(Path probe, String key) {
+		if (!Files.isRegularFile(probe)) {
+			return null;
+		}
+		try {
+			List<String> lines = Files.readAllLines(probe, UTF_8);
+			if (lines.size() == 2 && lines.get(0).equals(key)) {
+				return lines.get(1);
+			} else {
+				return null;
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static void writeVersionProbe(Path probe, String key, String version, Logger log) {
+		try {
+			//Unique temporary file: concurrent generations can store the same probe simultaneously
+			Path temp = Files.createTempFile(probe.getParent(), probe.getFileName().toString(), ".tmp");
+			Files.write(temp, Arrays.asList(key, version.replaceAll("[\\r\\n]+", " ")), UTF_8);
+			move(temp, probe);
+		} catch (IOException | KaitaiException e) {
+			log.debug("Kaitai: fail to store version probe: " + probe.toAbsolutePath(), e);
 		}
 	}
 
@@ -321,50 +573,489 @@ public class KaitaiGenerator {
 	 * @throws KaitaiException If any exception occurs on compile step
 	 */
 	public Path generate(Logger log) throws KaitaiException {
+		return generate(log, new ArrayList<String>());
+	}
+
+	/**
+	 * Start generation process.
+	 *
+	 * @param log         Logger for messages
+	 * @param diagnostics Collector of messages of compiler
+	 * @return Root directory with generated files
+	 * @throws KaitaiException If any exception occurs on compile step
+	 */
+	private Path generate(Logger log, List<String> diagnostics) throws KaitaiException {
 		if (!isOverwrite()) {
 			//todo Remove exists file from source
 		}
 
-		log.info("Kaitai: check version");
-		execute(this
-			.process(log)
-			.withArg("--version")
-		);
+		checkVersion(log);
 
 		Path output = getOutput().normalize();
 		if (isExactOutput()) {
-			output = createTempDirectory("kaitai-" + getPackageName());
+			output = staging(log);
 		}
 
-		ProcBuilder builder = process(log)
-			.withArgs("--target", "java")
-			.withArgs("--outdir", output.toFile().getAbsolutePath())
-			.withArgs("--java-package", getPackageName());
+		List<String> args = new ArrayList<>();
+		args.add("--target");
+		args.add("java");
+		args.add("--outdir");
+		args.add(output.toFile().getAbsolutePath());
+		args.add("--java-package");
+		args.add(getPackageName());
 		if (isNoAutoRead()) {
-			builder.withArgs("--no-auto-read");
+			args.add("--no-auto-read");
 		}
 		if (isNotBlank(getFromFileClass())) {
-			builder.withArgs("--java-from-file-class", getFromFileClass());
+			args.add("--java-from-file-class");
+			args.add(getFromFileClass());
 		}
 		if (getOpaqueTypes() != null) {
-			builder.withArgs("--opaque-types", getOpaqueTypes().toString());
+			args.add("--opaque-types");
+			args.add(getOpaqueTypes().toString());
+		}
+		if (!getImportPaths().isEmpty()) {
+			StringBuilder importPath = new StringBuilder();
+			for (Path path : getImportPaths()) {
+				if (importPath.length() > 0) {
+					importPath.append(File.pathSeparatorChar);
+				}
+				importPath.append(path.normalize().toFile().getAbsolutePath());
+			}
+			args.add("--import-path");
+			args.add(importPath.toString());
 		}
 
+		List<String> sources = new ArrayList<>(getSources().size());
 		for (Path source : getSources()) {
-			builder.withArg(source.normalize().toFile().getAbsolutePath());
+			sources.add(source.normalize().toFile().getAbsolutePath());
 		}
 
-		log.info("Kaitai: generate");
-		execute(builder);
+		if (getProfile() != null) {
+			generateWithProfile(args, output, log, diagnostics);
+		} else {
+			List<List<String>> batches = batches(args, sources);
+			try (KaitaiMetrics.Phase phase = getMetrics().start("compile")) {
+				phase.files(sources.size()).bytes(size(getSources()));
+				for (int i = 0; i < batches.size(); i++) {
+					if (batches.size() == 1) {
+						log.info("Kaitai: generate");
+					} else {
+						log.info(format(
+							"Kaitai: generate (batch %d of %d, %d sources)"
+							, i + 1
+							, batches.size()
+							, batches.get(i).size()
+						));
+					}
+					List<String> command = new ArrayList<>(args);
+					command.addAll(batches.get(i));
+					diagnostics.addAll(lines(execute(command, log, phase)));
+				}
+			}
+		}
 		output = output.resolve("src");
 		if (isExactOutput()) {
 			Path root = getOutput();
-			List<Path> generated = scanFiles(output, new String[]{"*"}, new String[0]);
-			move(output, generated, root);
-			delete(output);
+			try (KaitaiMetrics.Phase phase = getMetrics().start("move")) {
+				List<Path> generated = scanFiles(output, new String[]{"*"}, new String[0]);
+				if (!relocate(output, root)) {
+					move(output, generated, root);
+				}
+				KaitaiTrash.deleteLater(output.getParent());
+				phase.files(generated.size());
+			}
 			return root;
 		} else {
 			return output;
 		}
 	}
+
+	/**
+	 * Compile every source by separate execution of compiler and record its cost into {@link #getProfile() profile}.
+	 *
+	 * <p>
+	 * Every execution writes into own empty directory, so count of generated classes includes classes of imported specifications
+	 * even if they were already generated for previous source. Generated files are moved into output directory after execution.
+	 *
+	 * @param args        Common arguments of every execution
+	 * @param output      Output directory of compiler
+	 * @param log         Logger for messages
+	 * @param diagnostics Collector of messages of compiler
+	 * @throws KaitaiException If any exception occurs on compile step
+	 */
+	private void generateWithProfile(List<String> args, Path output, Logger log, List<String> diagnostics) throws KaitaiException {
+		List<Path> sources = new ArrayList<>(getSources());
+		int outdir = args.indexOf("--outdir") + 1;
+		Path target = mkdirs(output).resolve("src");
+		try (KaitaiMetrics.Phase phase = getMetrics().start("compile")) {
+			phase.files(sources.size()).bytes(size(sources));
+			for (int i = 0; i < sources.size(); i++) {
+				Path source = sources.get(i);
+				log.info(format(
+					"Kaitai: generate with profiling (%d of %d): %s"
+					, i + 1
+					, sources.size()
+					, source.getFileName()
+				));
+				Path single = createTempDirectory(output, ".kaitai-profile-");
+				try {
+					List<String> command = new ArrayList<>(args);
+					command.set(outdir, single.toFile().getAbsolutePath());
+					command.add(source.normalize().toFile().getAbsolutePath());
+					KaitaiProcess.Result result = execute(command, log, phase);
+					diagnostics.addAll(lines(result));
+					Path generated = single.resolve("src");
+					int classes = 0;
+					if (Files.isDirectory(generated)) {
+						classes = scanFiles(generated, new String[]{"*.java"}, new String[0]).size();
+						move(generated, scanFiles(generated, new String[]{"*"}, new String[0]), target);
+					}
+					getProfile().record(source, result.getMillis(), classes);
+				} finally {
+					delete(single);
+				}
+			}
+		} finally {
+			getProfile().store(log);
+		}
+	}
+
+	/**
+	 * Create staging directory for {@link #isExactOutput() exactOutput} mode.
+	 *
+	 * <p>
+	 * By default it is created near output directory: so generated files are moved into output by cheap rename, not by copying.
+	 *
+	 * @param log Logger for messages
+	 * @return Staging directory
+	 * @throws KaitaiException If directory can not be created
+	 */
+	private Path staging(Logger log) throws KaitaiException {
+		Path output = getOutput().toAbsolutePath().normalize();
+		Path parent = output.getParent();
+		if (getStagingDirectory() != null) {
+			Path configured = mkdirs(getStagingDirectory());
+			if (isSameFileStore(configured, parent)) {
+				parent = configured;
+			} else {
+				log.debug(format(
+					"Kaitai: staging directory '%s' is not on the same filesystem as output '%s': stage near output"
+					, configured.toAbsolutePath()
+					, output.toFile().getAbsolutePath()
+				));
+			}
+		}
+		Path staging = createTempDirectory(parent, ".kaitai-" + getPackageName() + "-");
+		if (!isSameFileStore(staging, output)) {
+			log.warn(format(
+				"Kaitai: staging directory '%s' is not on the same filesystem as output '%s': generated files will be copied"
+				, staging.toFile().getAbsolutePath()
+				, output.toFile().getAbsolutePath()
+			));
+		}
+		return staging;
+	}
+
+	private static boolean isSameFileStore(Path first, Path second) {
+		try {
+			return Files.getFileStore(first).equals(Files.getFileStore(second));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Replace empty output directory with generated directory by single rename.
+	 *
+	 * @param generated Generated directory
+	 * @param root      Output directory
+	 * @return {@code true} if generated directory was renamed, {@code false} if its files must be moved one by one
+	 */
+	private static boolean relocate(Path generated, Path root) {
+		try {
+			if (!isEmptyDirectory(root) || !isSameFileStore(generated, root)) {
+				return false;
+			}
+			Files.delete(root);
+		} catch (IOException e) {
+			return false;
+		}
+		try (KaitaiEvents.FileEvent ignored = KaitaiEvents.file("move", root)) {
+			Files.move(generated, root, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		} catch (IOException e) {
+			//Restore output directory for moving of files one by one
+			try {
+				Files.createDirectories(root);
+			} catch (IOException ex) {
+				//Moving of files will report about problem with output directory
+			}
+			return false;
+		}
+	}
+
+	private static boolean isEmptyDirectory(Path dir) throws IOException {
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+			return !children.iterator().hasNext();
+		}
+	}
+
+	/**
+	 * Split sources into batches, so command line of every execution fits into {@link #getMaxCommandLength()}.
+	 * Source which does not fit even alone is executed in separate batch.
+	 *
+	 * @param args    Common arguments of every execution
+	 * @param sources Paths to sources
+	 * @return Batches of sources
+	 */
+	private List<List<String>> batches(List<String> args, List<String> sources) {
+		int common = commandLength(getKaitai().normalize().toAbsolutePath().toString()) + commandLength("-no-version-check");
+		for (String arg : args) {
+			common += commandLength(arg);
+		}
+
+		List<List<String>> batches = new ArrayList<>();
+		List<String> batch = new ArrayList<>();
+		int length = common;
+		for (String source : sources) {
+			int sourceLength = commandLength(source);
+			if (!batch.isEmpty() && length + sourceLength > getMaxCommandLength()) {
+				batches.add(batch);
+				batch = new ArrayList<>();
+				length = common;
+			}
+			batch.add(source);
+			length += sourceLength;
+		}
+		if (!batch.isEmpty() || batches.isEmpty()) {
+			batches.add(batch);
+		}
+		return batches;
+	}
+
+	/**
+	 * Estimate length of argument inside command line.
+	 *
+	 * @param arg Argument of command line
+	 * @return Length of argument inside command line: with separator and possible quotes
+	 */
+	private static int commandLength(String arg) {
+		return arg.length() + 3;
+	}
+
+	/**
+	 * Collect messages of compiler.
+	 *
+	 * @param result Captured output of compiler
+	 * @return Non-blank lines of error and standard output
+	 */
+	private static List<String> lines(KaitaiProcess.Result result) {
+		List<String> lines = new ArrayList<>();
+		for (String line : (result.getError() + "\n" + result.getOutput()).split("\\r?\\n")) {
+			if (isNotBlank(line)) {
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Immutable configuration of {@link KaitaiGenerator}.
+	 *
+	 * <p>
+	 * Every generation creates its own generator, so single configuration can be used for concurrent generations without locks.
+	 * Concurrent generations must use different outputs: see {@link #withOutput(Path)}.
+	 */
+	public static final class Config {
+		private final Path kaitai;
+		private final Path output;
+		private final String packageName;
+		private final List<Path> sources;
+		private final List<Path> importPaths;
+		private final boolean overwrite;
+		private final boolean exactOutput;
+		private final Path stagingDirectory;
+		private final long executionTimeout;
+		private final String fromFileClass;
+		private final Boolean opaqueTypes;
+		private final boolean noVersionCheck;
+		private final boolean noAutoRead;
+		private final int maxCommandLength;
+		private final KaitaiMetrics metrics;
+		private final KaitaiProfile profile;
+
+		private Config(KaitaiGenerator generator) {
+			this(generator, generator.getOutput(), generator.getSources());
+		}
+
+		private Config(Config config, Path output, Collection<Path> sources) {
+			this(config.generator(), output, sources);
+		}
+
+		private Config(KaitaiGenerator generator, Path output, Collection<Path> sources) {
+			this.kaitai = generator.getKaitai();
+			this.output = output;
+			this.packageName = generator.getPackageName();
+			this.sources = unmodifiableList(new ArrayList<>(sources));
+			this.importPaths = unmodifiableList(new ArrayList<>(generator.getImportPaths()));
+			this.overwrite = generator.isOverwrite();
+			this.exactOutput = generator.isExactOutput();
+			this.stagingDirectory = generator.getStagingDirectory();
+			this.executionTimeout = generator.getExecutionTimeout();
+			this.fromFileClass = generator.getFromFileClass();
+			this.opaqueTypes = generator.getOpaqueTypes();
+			this.noVersionCheck = generator.isNoVersionCheck();
+			this.noAutoRead = generator.isNoAutoRead();
+			this.maxCommandLength = generator.getMaxCommandLength();
+			this.metrics = generator.getMetrics();
+			this.profile = generator.getProfile();
+		}
+
+		public Path getKaitai() {
+			return kaitai;
+		}
+
+		public Path getOutput() {
+			return output;
+		}
+
+		public String getPackageName() {
+			return packageName;
+		}
+
+		public List<Path> getSources() {
+			return sources;
+		}
+
+		/**
+		 * Get metrics which are shared by all generations of this configuration.
+		 *
+		 * @return Metrics
+		 */
+		public KaitaiMetrics getMetrics() {
+			return metrics;
+		}
+
+		/**
+		 * Build copy of configuration with another output directory.
+		 *
+		 * @param output Path to output directory
+		 * @return New configuration
+		 */
+		public Config withOutput(Path output) {
+			return new Config(this, output, sources);
+		}
+
+		/**
+		 * Build copy of configuration with another paths to kaitai specifications.
+		 *
+		 * @param sources Paths to kaitai specifications
+		 * @return New configuration
+		 */
+		public Config withSources(Collection<Path> sources) {
+			return new Config(this, output, sources);
+		}
+
+		/**
+		 * Build new mutable generator with this configuration.
+		 * Metrics and profile are shared with all generators of this configuration.
+		 *
+		 * @return New {@code KaitaiGenerator}
+		 */
+		public KaitaiGenerator generator() {
+			KaitaiGenerator generator = new KaitaiGenerator(kaitai, output, packageName);
+			generator.sources.addAll(sources);
+			generator.importPaths.addAll(importPaths);
+			return generator
+				.overwrite(overwrite)
+				.exactOutput(exactOutput)
+				.stagingDirectory(stagingDirectory)
+				.executionTimeout(executionTimeout)
+				.fromFileClass(fromFileClass)
+				.opaqueTypes(opaqueTypes)
+				.noVersionCheck(noVersionCheck)
+				.noAutoRead(noAutoRead)
+				.maxCommandLength(maxCommandLength)
+				.metrics(metrics)
+				.profile(profile);
+		}
+
+		/**
+		 * Start generation process in current thread.
+		 *
+		 * @param log Logger for messages
+		 * @return Root directory with generated files and messages of compiler
+		 * @throws KaitaiException If compiler is not executable, output is not writable, source is not readable
+		 *                         or any exception occurs on compile step
+		 */
+		public Result generate(Logger log) throws KaitaiException {
+			checkFileIsExecutable(kaitai);
+			checkDirectoryIsWritable(output);
+			for (Path source : sources) {
+				checkFileIsReadable(source);
+			}
+			long start = System.nanoTime();
+			List<String> diagnostics = new ArrayList<>();
+			Path root = generator().generate(log, diagnostics);
+			return new Result(root, diagnostics, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		}
+
+		/**
+		 * Start generation process with executor.
+		 * Failure of generation is reported by {@link Future#get()} as {@link java.util.concurrent.ExecutionException}
+		 * with {@link KaitaiException} as cause.
+		 *
+		 * @param executor Executor for generation process
+		 * @param log      Logger for messages, it must be thread-safe
+		 * @return Future of root directory with generated files and messages of compiler
+		 */
+		public Future<Result> generateAsync(Executor executor, final Logger log) {
+			FutureTask<Result> task = new FutureTask<>(new Callable<Result>() {
+				@Override
+				public Result call() throws KaitaiException {
+					return generate(log);
+				}
+			});
+			executor.execute(task);
+			return task;
+		}
+	}
+
+	/**
+	 * Result of generation process.
+	 */
+	public static final class Result {
+		private final Path output;
+		private final List<String> diagnostics;
+		private final long millis;
+
+		private Result(Path output, List<String> diagnostics, long millis) {
+			this.output = output;
+			this.diagnostics = unmodifiableList(diagnostics);
+			this.millis = millis;
+		}
+
+		/**
+		 * Get root directory with generated files.
+		 *
+		 * @return Root directory with generated files
+		 */
+		public Path getOutput() {
+			return output;
+		}
+
+		/**
+		 * Get messages (warnings and so on) which were printed by compiler while generation.
+		 *
+		 * @return Non-blank lines of error and standard output of compiler
+		 */
+		public List<String> getDiagnostics() {
+			return diagnostics;
+		}
+
+		public long getMillis() {
+			return millis;
+		}
+	}
 }
@@ -0,0 +1,308 @@
+package name.valery1707.kaitai;
+
+import org.slf4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager.Location;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableSet;
+import static name.valery1707.kaitai.KaitaiUtils.checkDirectoryIsWritable;
+import static name.valery1707.kaitai.KaitaiUtils.checkFileIsReadable;
+import static name.valery1707.kaitai.KaitaiUtils.mkdirs;
+
+/**
+ * Compiler of generated Java sources inside Maven JVM through {@link ToolProvider#getSystemJavaCompiler() system Java compiler}.
+ *
+ * <p>
+ * Class files are collected in memory and written into output directory only if all sources were compiled successfully,
+ * so broken generation never leaves part of classes inside output.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiJavaCompiler {
+	private final Path output;
+	private final Set<Path> sources = new LinkedHashSet<>();
+	private List<String> classpath = new ArrayList<>();
+	private List<String> options = new ArrayList<>();
+	private KaitaiMetrics metrics = KaitaiMetrics.metrics();
+
+	private KaitaiJavaCompiler(Path output) {
+		this.output = output;
+	}
+
+	/**
+	 * Build {@code KaitaiJavaCompiler} with preconfigured state.
+	 *
+	 * @param output Path to output directory for class files
+	 * @return New {@code KaitaiJavaCompiler}
+	 * @throws KaitaiException If output is not writable
+	 */
+	public static KaitaiJavaCompiler compiler(Path output) throws KaitaiException {
+		checkDirectoryIsWritable(output);
+		return new KaitaiJavaCompiler(output);
+	}
+
+	/**
+	 * Build {@code KaitaiJavaCompiler} without output directory: only {@link #compileToMemory(Logger)} can be used.
+	 *
+	 * @return New {@code KaitaiJavaCompiler}
+	 */
+	public static KaitaiJavaCompiler compiler() {
+		return new KaitaiJavaCompiler(null);
+	}
+
+	public Path getOutput() {
+		return output;
+	}
+
+	public Set<Path> getSources() {
+		return unmodifiableSet(sources);
+	}
+
+	/**
+	 * Add paths to Java sources.
+	 *
+	 * @param sources Iterable with paths to Java sources
+	 * @return self
+	 * @throws KaitaiException If any path is not readable
+	 */
+	public KaitaiJavaCompiler withSource(Iterable<Path> sources) throws KaitaiException {
+		for (Path source : sources) {
+			checkFileIsReadable(source);
+			this.sources.add(source);
+		}
+		return this;
+	}
+
+	public List<String> getClasspath() {
+		return unmodifiableList(classpath);
+	}
+
+	public void setClasspath(List<String> classpath) {
+		this.classpath = new ArrayList<>(classpath);
+	}
+
+	public KaitaiJavaCompiler classpath(List<String> classpath) {
+		setClasspath(classpath);
+		return this;
+	}
+
+	public List<String> getOptions() {
+		return unmodifiableList(options);
+	}
+
+	/**
+	 * Set additional options of Java compiler, for example {@code -source} and {@code -target}.
+	 *
+	 * @param options Options of Java compiler
+	 */
+	public void setOptions(List<String> options) {
+		this.options = new ArrayList<>(options);
+	}
+
+	public KaitaiJavaCompiler options(List<String> options) {
+		setOptions(options);
+		return this;
+	}
+
+	public KaitaiJavaCompiler options(String... options) {
+		return options(Arrays.asList(options));
+	}
+
+	public KaitaiMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(KaitaiMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public KaitaiJavaCompiler metrics(KaitaiMetrics metrics) {
+		setMetrics(metrics);
+		return this;
+	}
+
+	/**
+	 * Compile sources and write class files into output directory.
+	 *
+	 * @param log Logger for messages
+	 * @return Written class files
+	 * @throws KaitaiException If Java compiler is not available, any source can not be compiled or class file can not be written
+	 */
+	public List<Path> compile(Logger log) throws KaitaiException {
+		if (output == null) {
+			throw new KaitaiException("Fail to compile generated sources: output directory is not configured");
+		}
+		Map<String, byte[]> classes = compileToMemory(log);
+		List<Path> written = new ArrayList<>(classes.size());
+		for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+			written.add(write(entry.getKey(), entry.getValue()));
+		}
+		return written;
+	}
+
+	/**
+	 * Compile sources without writing of class files.
+	 *
+	 * @param log Logger for messages
+	 * @return Content of class files by binary names of classes
+	 * @throws KaitaiException If Java compiler is not available or any source can not be compiled
+	 */
+	public Map<String, byte[]> compileToMemory(Logger log) throws KaitaiException {
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		if (javac == null) {
+			throw new KaitaiException("Fail to find Java compiler: Maven must be started with JDK, not JRE");
+		}
+		try (KaitaiMetrics.Phase phase = getMetrics().start("javac")) {
+			phase.files(sources.size());
+			log.info(format("Kaitai: compile %d generated sources", sources.size()));
+			Map<String, byte[]> classes = new LinkedHashMap<>();
+			long bytes = 0;
+			for (Map.Entry<String, MemoryClassFile> entry : run(javac, log).entrySet()) {
+				byte[] content = entry.getValue().content.toByteArray();
+				classes.put(entry.getKey(), content);
+				bytes += content.length;
+			}
+			phase.bytes(bytes);
+			return classes;
+		}
+	}
+
+	private Map<String, MemoryClassFile> run(JavaCompiler javac, Logger log) throws KaitaiException {
+		List<File> files = new ArrayList<>(sources.size());
+		for (Path source : sources) {
+			files.add(source.normalize().toFile());
+		}
+		List<String> arguments = new ArrayList<>();
+		arguments.add("-encoding");
+		arguments.add(UTF_8.name());
+		arguments.add("-proc:none");
+		if (!classpath.isEmpty()) {
+			arguments.add("-classpath");
+			arguments.add(join(classpath));
+		}
+		arguments.addAll(options);
+
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		StandardJavaFileManager standard = javac.getStandardFileManager(diagnostics, Locale.ROOT, UTF_8);
+		try (MemoryFileManager fileManager = new MemoryFileManager(standard)) {
+			Boolean success = javac
+				.getTask(null, fileManager, diagnostics, arguments, null, standard.getJavaFileObjectsFromFiles(files))
+				.call();
+			StringBuilder errors = new StringBuilder();
+			for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+				if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+					errors.append('\n').append(describe(diagnostic));
+				} else {
+					log.debug("Kaitai: javac: " + describe(diagnostic));
+				}
+			}
+			if (!Boolean.TRUE.equals(success)) {
+				throw new KaitaiException("Fail to compile generated sources:" + errors);
+			}
+			return fileManager.classes;
+		} catch (IOException e) {
+			throw new KaitaiException("Fail to compile generated sources", e);
+		}
+	}
+
+	private static String describe(Diagnostic<? extends JavaFileObject> diagnostic) {
+		if (diagnostic.getSource() == null) {
+			return diagnostic.getMessage(Locale.ROOT);
+		}
+		return format(
+			"%s:%d:%d: %s"
+			, diagnostic.getSource().getName()
+			, diagnostic.getLineNumber()
+			, diagnostic.getColumnNumber()
+			, diagnostic.getMessage(Locale.ROOT)
+		);
+	}
+
+	private static String join(List<String> classpath) {
+		StringBuilder joined = new StringBuilder();
+		for (String element : classpath) {
+			if (joined.length() > 0) {
+				joined.append(File.pathSeparatorChar);
+			}
+			joined.append(element);
+		}
+		return joined.toString();
+	}
+
+	private Path write(String className, byte[] content) throws KaitaiException {
+		Path target = output.resolve(className.replace('.', File.separatorChar) + JavaFileObject.Kind.CLASS.extension);
+		mkdirs(target.getParent());
+		try {
+			return Files.write(target, content);
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to write class file: %s"
+				, target.normalize().toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+	}
+
+	/**
+	 * File manager which reads sources and classpath from disk but keeps produced class files in memory.
+	 */
+	private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+		private final Map<String, MemoryClassFile> classes = new LinkedHashMap<>();
+
+		private MemoryFileManager(StandardJavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+			if (location == StandardLocation.CLASS_OUTPUT && kind == JavaFileObject.Kind.CLASS) {
+				MemoryClassFile file = new MemoryClassFile(className);
+				classes.put(className, file);
+				return file;
+			}
+			return super.getJavaFileForOutput(location, className, kind, sibling);
+		}
+	}
+
+	private static final class MemoryClassFile extends SimpleJavaFileObject {
+		private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+		private MemoryClassFile(String className) {
+			super(URI.create("memory:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+		}
+
+		@Override
+		public OutputStream openOutputStream() {
+			content.reset();
+			return content;
+		}
+	}
+}
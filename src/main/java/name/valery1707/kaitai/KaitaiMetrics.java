@@ -0,0 +1,277 @@
+package name.valery1707.kaitai;
+
+import org.apache.commons.lang3.SystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static name.valery1707.kaitai.KaitaiUtils.mkdirs;
+import static name.valery1707.kaitai.KaitaiUtils.move;
+
+/**
+ * Timings and resource usage of phases of single plugin execution.
+ *
+ * <p>
+ * Phases can be measured from different threads.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiMetrics {
+	private final long start = System.nanoTime();
+	private final List<Phase> phases = new ArrayList<>();
+
+	private KaitaiMetrics() {
+	}
+
+	/**
+	 * Build new empty metrics, started at current moment.
+	 *
+	 * @return New {@code KaitaiMetrics}
+	 */
+	public static KaitaiMetrics metrics() {
+		return new KaitaiMetrics();
+	}
+
+	/**
+	 * Start measuring of new phase. Phase is measured until it will be closed.
+	 *
+	 * @param name Name of phase
+	 * @return Started phase
+	 */
+	public Phase start(String name) {
+		Phase phase = new Phase(name, Thread.currentThread().getName(), System.nanoTime());
+		synchronized (phases) {
+			phases.add(phase);
+		}
+		return phase;
+	}
+
+	/**
+	 * Get all started phases in order of their start.
+	 *
+	 * @return Copy of phases
+	 */
+	public List<Phase> getPhases() {
+		synchronized (phases) {
+			return new ArrayList<>(phases);
+		}
+	}
+
+	/**
+	 * Get time from creation of metrics.
+	 *
+	 * @return Time in milliseconds
+	 */
+	public long getTotalMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	/**
+	 * Format one-line summary of all phases.
+	 *
+	 * @return Human readable summary
+	 */
+	public String summary() {
+		StringBuilder summary = new StringBuilder("Kaitai: metrics: total ").append(getTotalMillis()).append(" ms");
+		for (Phase phase : getPhases()) {
+			summary.append("; ").append(phase.getName()).append(' ').append(phase.getMillis()).append(" ms");
+			if (phase.getFiles() >= 0) {
+				summary.append(", ").append(phase.getFiles()).append(" files");
+			}
+			if (phase.getBytes() >= 0) {
+				summary.append(", ").append(phase.getBytes()).append(" bytes");
+			}
+			if (phase.getCpuMillis() >= 0) {
+				summary.append(", cpu ").append(phase.getCpuMillis()).append(" ms");
+			}
+		}
+		return summary.toString();
+	}
+
+	/**
+	 * Format all phases as JSON document.
+	 *
+	 * @return JSON document
+	 */
+	public String toJson() {
+		StringBuilder json = new StringBuilder("{\n")
+			.append("  \"totalMillis\": ").append(getTotalMillis()).append(",\n")
+			.append("  \"phases\": [");
+		List<Phase> phases = getPhases();
+		for (int i = 0; i < phases.size(); i++) {
+			Phase phase = phases.get(i);
+			json
+				.append(i == 0 ? "\n" : ",\n")
+				.append("    {")
+				.append("\"name\": \"").append(escape(phase.getName())).append('"')
+				.append(", \"thread\": \"").append(escape(phase.getThread())).append('"')
+				.append(", \"startMillis\": ").append(TimeUnit.NANOSECONDS.toMillis(phase.start - start))
+				.append(", \"millis\": ").append(phase.getMillis())
+				.append(", \"files\": ").append(phase.getFiles())
+				.append(", \"bytes\": ").append(phase.getBytes())
+				.append(", \"cpuMillis\": ").append(phase.getCpuMillis())
+				.append('}');
+		}
+		return json.append(phases.isEmpty() ? "]\n" : "\n  ]\n").append("}\n").toString();
+	}
+
+	private static String escape(String value) {
+		StringBuilder escaped = new StringBuilder(value.length());
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				escaped.append('\\').append(c);
+			} else if (c < ' ') {
+				escaped.append(format("\\u%04x", (int) c));
+			} else {
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	/**
+	 * Write metrics as JSON document into file.
+	 *
+	 * @param target Path to file
+	 * @throws KaitaiException If file can not be written
+	 */
+	public void write(Path target) throws KaitaiException {
+		mkdirs(target.toAbsolutePath().getParent());
+		Path temp = target.resolveSibling(target.getFileName().toString() + ".tmp");
+		try {
+			Files.write(temp, toJson().getBytes(UTF_8));
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to write metrics: %s"
+				, target.normalize().toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+		move(temp, target);
+	}
+
+	/**
+	 * Total CPU time of all finished child processes of current JVM.
+	 *
+	 * <p>
+	 * Available only on Linux, where it is read from {@code /proc/self/stat}.
+	 * Child processes of other threads (for example other modules of parallel build) are also counted.
+	 *
+	 * @return CPU time in milliseconds or {@code -1} if it is unavailable
+	 */
+	public static long childrenCpuMillis() {
+		if (!SystemUtils.IS_OS_LINUX) {
+			return -1;
+		}
+		try {
+			String stat = new String(Files.readAllBytes(Paths.get("/proc/self/stat")), UTF_8);
+			//Fields after command name in parentheses, starting from 3rd field (state); cutime and cstime are 16th and 17th fields
+			String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+			long ticks = Long.parseLong(fields[13]) + Long.parseLong(fields[14]);
+			//USER_HZ is 100 on all supported architectures
+			return ticks * 10;
+		} catch (IOException | RuntimeException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Single measured phase.
+	 */
+	public static final class Phase implements AutoCloseable {
+		private final String name;
+		private final String thread;
+		private final long start;
+		private volatile long millis = -1;
+		private volatile long files = -1;
+		private volatile long bytes = -1;
+		private volatile long cpuMillis = -1;
+
+		private Phase(String name, String thread, long start) {
+			this.name = name;
+			this.thread = thread;
+			this.start = start;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getThread() {
+			return thread;
+		}
+
+		/**
+		 * Get duration of phase.
+		 *
+		 * @return Duration in milliseconds or time from start if phase is not finished yet
+		 */
+		public long getMillis() {
+			return millis >= 0 ? millis : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		}
+
+		public long getFiles() {
+			return files;
+		}
+
+		/**
+		 * Set count of files processed by phase.
+		 *
+		 * @param files Count of files
+		 * @return self
+		 */
+		public Phase files(long files) {
+			this.files = files;
+			return this;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Set count of bytes processed by phase.
+		 *
+		 * @param bytes Count of bytes
+		 * @return self
+		 */
+		public Phase bytes(long bytes) {
+			this.bytes = bytes;
+			return this;
+		}
+
+		public long getCpuMillis() {
+			return cpuMillis;
+		}
+
+		/**
+		 * Add CPU time used by child processes of phase.
+		 *
+		 * @param cpuMillis CPU time in milliseconds, negative values are ignored
+		 * @return self
+		 */
+		public synchronized Phase cpu(long cpuMillis) {
+			if (cpuMillis >= 0) {
+				this.cpuMillis = Math.max(this.cpuMillis, 0) + cpuMillis;
+			}
+			return this;
+		}
+
+		/**
+		 * Finish phase.
+		 */
+		@Override
+		public void close() {
+			if (millis < 0) {
+				millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			}
+		}
+	}
+}
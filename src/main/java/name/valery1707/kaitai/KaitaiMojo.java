@@ -1,28 +1,54 @@
 package name.valery1707.kaitai;
 
-import org.apache.maven.execution.MavenSession;
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.project.MavenProject;
-import org.apache.maven.settings.Settings;
+import org.apache.maven.project.DefaultDependencyResolutionRequest;
+import org.apache.maven.project.DependencyResolutionException;
+import org.apache.maven.project.DependencyResolutionRequest;
+import org.apache.maven.project.ProjectDependenciesResolver;
+import org.codehaus.plexus.util.Scanner;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyFilter;
+import org.eclipse.aether.graph.DependencyNode;
 import org.slf4j.Logger;
-import org.slf4j.impl.StaticLoggerBinder;
+import org.sonatype.plexus.build.incremental.BuildContext;
 
 import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.*;
 
 import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static name.valery1707.kaitai.KaitaiUtils.*;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 
 /**
  * Building Kaitai specifications into Java-classes.
  *
+ * <p>
+ * Goal does not require resolution of dependencies by Maven: they are resolved only if they are really used
+ * by {@link #compileClasses compileClasses}, {@link #dependencySources dependencySources} or {@link #dependencyImports dependencyImports}.
+ *
  * @see <a href="http://maven.apache.org/developers/mojo-api-specification.html">Mojo API Specification</a>
  * @see <a href="http://doc.kaitai.io/user_guide.html#_invocation">Kaitai compiler documentation</a>
  */
@@ -30,34 +56,16 @@ import static name.valery1707.kaitai.KaitaiUtils.*;
 	name = "generate"
 	, defaultPhase = LifecyclePhase.GENERATE_SOURCES
 )
-public class KaitaiMojo extends AbstractMojo {
-	static final String KAITAI_VERSION = "0.8";
-
+public class KaitaiMojo extends AbstractKaitaiMojo {
 	/**
-	 * Version of <a href="http://kaitai.io/#download">KaiTai</a> library.
-	 *
-	 * @since 0.1.0
+	 * Scopes of dependencies inside compile classpath of project.
 	 */
-	@Parameter(property = "kaitai.version", defaultValue = KAITAI_VERSION)
-	private String version;
+	private static final List<String> COMPILE_SCOPES = Arrays.asList("compile", "provided", "system");
 
 	/**
-	 * Direct link onto <a href="http://kaitai.io/#download">KaiTai universal zip archive</a>.
-	 *
-	 * @since 0.1.0
+	 * Prefix of lines of stamp with paths of generated files.
 	 */
-	@Parameter(property = "kaitai.url")
-	private URL url;
-
-	/**
-	 * Cache directory for download KaiTai library.
-	 *
-	 * @see KaitaiMojo#version
-	 * @see KaitaiMojo#url
-	 * @since 0.1.0
-	 */
-	@Parameter(property = "kaitai.cache")
-	private File cacheDir;
+	private static final String GENERATED = "generated=";
 
 	/**
 	 * Source directory with <a href="http://formats.kaitai.io/">Kaitai Struct language</a> files.
@@ -65,7 +73,7 @@ public class KaitaiMojo extends AbstractMojo {
 	 * @since 0.1.0
 	 */
 	@Parameter(property = "kaitai.source", defaultValue = "${project.build.sourceDirectory}/../resources/kaitai")
-	private File sourceDirectory;
+	protected File sourceDirectory;
 
 	/**
 	 * Include wildcard pattern list.
@@ -73,7 +81,7 @@ public class KaitaiMojo extends AbstractMojo {
 	 * @since 0.1.0
 	 */
 	@Parameter(property = "kaitai.includes", defaultValue = "*.ksy")
-	private String[] includes;
+	protected String[] includes;
 
 	/**
 	 * Exclude wildcard pattern list.
@@ -81,7 +89,7 @@ public class KaitaiMojo extends AbstractMojo {
 	 * @since 0.1.0
 	 */
 	@Parameter(property = "kaitai.excludes")
-	private String[] excludes;
+	protected String[] excludes;
 
 	/**
 	 * Target directory for generated Java source files.
@@ -105,20 +113,21 @@ public class KaitaiMojo extends AbstractMojo {
 	private boolean exactOutput;
 
 	/**
-	 * Target package for generated Java source files.
+	 * Parent directory for staging of generation in {@link #exactOutput exactOutput} mode.
+	 * If it is not on the same filesystem as {@link #output output} then staging is created near output.
 	 *
-	 * @since 0.1.0
+	 * @since 0.1.7
 	 */
-	@Parameter(property = "kaitai.package", defaultValue = "${project.groupId}")
-	private String packageName;
+	@Parameter(property = "kaitai.stagingDirectory", defaultValue = "${project.build.directory}/kaitai")
+	private File stagingDirectory;
 
 	/**
-	 * Skip plugin execution (don't read/validate any files, don't generate any java types).
+	 * Target package for generated Java source files.
 	 *
 	 * @since 0.1.0
 	 */
-	@Parameter(property = "kaitai.skip", defaultValue = "false")
-	private boolean skip = false;
+	@Parameter(property = "kaitai.package", defaultValue = "${project.groupId}")
+	private String packageName;
 
 	/**
 	 * Overwrite exists files in target directory.
@@ -128,18 +137,6 @@ public class KaitaiMojo extends AbstractMojo {
 	@Parameter(property = "kaitai.overwrite", defaultValue = "false")
 	private boolean overwrite = false;
 
-	/**
-	 * Specify a timeout in millis for the execution operations.
-	 * If not specified the default is 5 seconds.
-	 *
-	 * <p>
-	 * For disabling timeout use any negative value.
-	 *
-	 * @since 0.1.3
-	 */
-	@Parameter(property = "kaitai.execution.timeout", defaultValue = "5000")
-	private long executionTimeout;
-
 	/**
 	 * Classname of custom KaitaiStream implementation which will be used in static builder {@code fromFile(...)}.
 	 *
@@ -164,21 +161,145 @@ public class KaitaiMojo extends AbstractMojo {
 	private Boolean noAutoRead;
 
 	/**
-	 * Allow to disable Java version check.
+	 * Validate specifications inside plugin before start of compiler: broken specifications are rejected
+	 * without spending time on start of compiler and with precise position of problem.
+	 *
+	 * <p>
+	 * Only problems which compiler definitely rejects are reported, all other checks are still done by compiler.
+	 *
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.validate", defaultValue = "true")
+	private boolean validate;
+
+	/**
+	 * Maximum length of command line for single execution of compiler.
+	 * Large source sets are generated by several executions of compiler into the same output.
+	 * If not specified then safe limit of current OS is used.
+	 *
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.maxCommandLength")
+	private Integer maxCommandLength;
+
+	/**
+	 * Simple name of registry class which is generated beside parsers (inside {@link #packageName package}).
+	 * Registry allows to find parser at runtime by {@code meta/id}, by file extension or by leading magic bytes without reflection.
+	 * If not specified then registry is not generated.
+	 *
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.registryClass")
+	private String registryClass;
+
+	/**
+	 * Compile generated Java sources inside Maven process directly into {@code project.build.outputDirectory}.
+	 * Sources are compiled with compile classpath of project and with its {@code maven.compiler.release},
+	 * {@code maven.compiler.source} and {@code maven.compiler.target} properties.
+	 *
+	 * @see #addCompileSourceRoot
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.compileClasses", defaultValue = "false")
+	private boolean compileClasses;
+
+	/**
+	 * Add directory with generated Java sources into compile source roots of project.
+	 * Can be disabled together with {@link #compileClasses compileClasses} if generated sources are only intermediate artifact
+	 * and must not be compiled again by {@code maven-compiler-plugin}.
+	 *
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.addCompileSourceRoot", defaultValue = "true")
+	private boolean addCompileSourceRoot;
+
+	/**
+	 * Generate even if specifications and configuration are not changed since previous generation.
+	 * Specifications are compared by canonical fingerprint, so changes of comments, formatting and documentation are ignored.
+	 *
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.force", defaultValue = "false")
+	private boolean force;
+
+	/**
+	 * Dependencies of project ({@code groupId:artifactId}, wildcards {@code *} and {@code ?} are allowed)
+	 * which specifications (matched by {@link #includes includes}/{@link #excludes excludes}) are generated together with local ones.
+	 * Specifications of them are also available for absolute imports.
+	 *
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.dependencySources")
+	private List<String> dependencySources;
+
+	/**
+	 * Dependencies of project ({@code groupId:artifactId}, wildcards {@code *} and {@code ?} are allowed)
+	 * which specifications are only available for absolute imports, but are not generated.
+	 *
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.dependencyImports")
+	private List<String> dependencyImports;
+
+	/**
+	 * Make generated files reproducible: specifications are generated in stable order, line endings of generated files are converted into {@code \n},
+	 * modification time of them is set into {@link #outputTimestamp outputTimestamp} and digest of generated files is written
+	 * into file {@code target/kaitai/generated.sha256}.
+	 * Only files written by current generation are touched, so {@link #exactOutput exactOutput} can point into directory with other sources.
 	 *
-	 * @since 0.1.6
+	 * @since 0.1.7
 	 */
-	@Parameter(property = "kaitai.noVersionCheck", defaultValue = "false")
-	private boolean noVersionCheck;
+	@Parameter(property = "kaitai.reproducible", defaultValue = "false")
+	private boolean reproducible;
 
-	@Parameter(defaultValue = "${settings}", readonly = true)
-	private Settings settings;
+	/**
+	 * Modification time of generated files in {@link #reproducible reproducible} mode:
+	 * ISO-8601 date-time with offset or count of seconds since epoch. Modification time is not changed if it is not configured.
+	 *
+	 * @since 0.1.7
+	 */
+	@Parameter(defaultValue = "${project.build.outputTimestamp}")
+	private String outputTimestamp;
+
+	/**
+	 * Compile every specification by separate execution of compiler and report the slowest of them.
+	 * Time of execution and count of generated classes of every specification are accumulated in {@code target/kaitai/profile.history}.
+	 * Generation is not skipped while profiling, even if specifications are not changed.
+	 *
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.profile", defaultValue = "false")
+	private boolean profile;
+
+	/**
+	 * Count of the slowest specifications in report of {@link #profile profiling}.
+	 *
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.profileTop", defaultValue = "10")
+	private int profileTop = 10;
+
+	/**
+	 * Directories with specifications of dependencies for searching of imports.
+	 */
+	private final List<Path> importPaths = new ArrayList<>();
+
+	/**
+	 * Build context of IDE for incremental builds, on command line all sources are always treated as changed.
+	 */
+	@Component
+	protected BuildContext buildContext;
 
-	@Parameter(defaultValue = "${session}", readonly = true)
-	private MavenSession session;
+	/**
+	 * Resolver of dependencies of project for lazy resolution of compile classpath.
+	 */
+	@Component
+	protected ProjectDependenciesResolver dependenciesResolver;
 
-	@Parameter(defaultValue = "${project}", readonly = true)
-	private MavenProject project;
+	/**
+	 * Resolved dependencies of compile classpath of project or {@code null} if they are not resolved yet.
+	 */
+	private List<Dependency> compileDependencies;
 
 	/**
 	 * Executes the plugin, to read the given source and behavioural properties and generate POJOs.
@@ -197,16 +318,47 @@ public class KaitaiMojo extends AbstractMojo {
 			return;
 		}
 
-		//Scan source files
+		final KaitaiMetrics metrics = KaitaiMetrics.metrics();
+		try {
+			executeInt(metrics);
+		} finally {
+			if (!metrics.getPhases().isEmpty()) {
+				writeMetrics(metrics);
+			}
+		}
+	}
+
+	private void executeInt(final KaitaiMetrics metrics) throws KaitaiException {
 		sourceDirectory = sourceDirectory.toPath().normalize().toFile();
-		if (!sourceDirectory.exists()) {
+		if (!sourceDirectory.exists() && isEmpty(dependencySources)) {
 			getLog().warn(format(
 				"Skip KaiTai generation: Source directory does not exists: %s"
 				, sourceDirectory.toPath().normalize().toFile().getAbsolutePath()
 			));
 			return;
 		}
-		List<Path> source = scanFiles(sourceDirectory.toPath(), includes, excludes);
+		final Logger logger = createLogger();
+		configureProcessLimit();
+
+		//Scan source files
+		List<Path> source = new ArrayList<>();
+		try (KaitaiMetrics.Phase phase = metrics.start("scan")) {
+			if (sourceDirectory.exists()) {
+				source.addAll(scanFiles(sourceDirectory.toPath(), includes, excludes));
+			}
+			source.addAll(resolveDependencies(logger));
+			phase.files(source.size());
+		}
+		final Long timestamp = reproducible ? KaitaiReproducible.parseTimestamp(outputTimestamp) : null;
+		if (reproducible) {
+			//Order of walking of file system depends on file system
+			Collections.sort(source, new Comparator<Path>() {
+				@Override
+				public int compare(Path o1, Path o2) {
+					return relative(o1).compareTo(relative(o2));
+				}
+			});
+		}
 		if (source.isEmpty()) {
 			getLog().warn(format(
 				"Skip KaiTai generation: Source directory does not contain KaiTai templates (include: %s; exclude: %s): %s"
@@ -217,38 +369,574 @@ public class KaitaiMojo extends AbstractMojo {
 			return;
 		}
 
-		StaticLoggerBinder.getSingleton().setMavenLog(getLog());
-		Logger logger = StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger(getClass().getName());
+		//Inside IDE generate only after change of specifications
+		if (buildContext.isIncremental() && !hasDelta(source) && Files.isDirectory(generatedRoot())) {
+			getLog().info("Skip KaiTai generation: Specifications are not changed since previous build");
+			addCompileSourceRoot(generatedRoot());
+			return;
+		}
+
+		//Generate only after semantic change of specifications or configuration
+		Path stampFile = kaitaiTarget().resolve("generate.stamp");
+		List<String> stamp;
+		try (KaitaiMetrics.Phase phase = metrics.start("fingerprint")) {
+			phase.files(source.size());
+			stamp = stamp(source, logger);
+		}
+		writeInputDigest(stamp, logger);
+		if (!force && !profile && isUpToDate(stampFile, stamp)) {
+			getLog().info("Skip KaiTai generation: Specifications and configuration are not changed since previous generation");
+			addCompileSourceRoot(generatedRoot());
+			return;
+		}
+		delete(stampFile);
+
+		//Distribution is prepared only after all skip checks: skipped generation must not touch cache of distributions
+		//Download Kaitai distribution into cache, unzip it and warm up compiler while sources are validated
+		final URL url;
+		try (KaitaiMetrics.Phase ignored = metrics.start("resolve-url")) {
+			url = prepareUrl(this.url, version);
+		}
+		ExecutorService executor = Executors.newSingleThreadExecutor(daemonThreadFactory("kaitai-distribution"));
+		try (KaitaiCache.Lease ignored = leaseDistribution(url)) {
+			Future<Path> distribution = executor.submit(new Callable<Path>() {
+				@Override
+				public Path call() throws KaitaiException {
+					Path kaitai = prepareDistribution(url, logger, metrics);
+					KaitaiGenerator
+						.generator(kaitai, kaitai.getParent(), packageName)
+						.executionTimeout(executionTimeout)
+						.noVersionCheck(noVersionCheck)
+						.metrics(metrics)
+						.checkVersion(logger);
+					return kaitai;
+				}
+			});
+
+			//Prepare sources and output
+			for (Path path : source) {
+				checkFileIsReadable(path);
+			}
+			validate(source, logger, metrics);
+			Path output = mkdirs(this.output.toPath());
+
+			//Generate Java sources
+			Path kaitai;
+			try (KaitaiMetrics.Phase ignored2 = metrics.start("await-distribution")) {
+				kaitai = await(distribution);
+			}
+			long started = System.currentTimeMillis();
+			KaitaiGenerator generator = generator(kaitai, output, source, metrics);
+			Path generatedRoot = generator.generate(logger);
+			if (generator.getProfile() != null) {
+				generator.getProfile().retain(source);
+				generator.getProfile().store(logger);
+				for (String line : generator.getProfile().report(profileTop)) {
+					logger.info(line);
+				}
+			}
+			List<Path> generated = refresh(generatedRoot, started);
+			Path registry = writeRegistry(generatedRoot, source, logger);
+			if (registry != null) {
+				generated.add(registry);
+			}
+			if (reproducible) {
+				normalize(generatedRoot, generated, timestamp, logger, metrics);
+			}
+			if (compileClasses) {
+				generated.addAll(compileClasses(generatedRoot, logger, metrics));
+			}
+			writeStamp(stampFile, stamp, generated, logger);
+
+			//Add generated directory into Maven's build scope
+			addCompileSourceRoot(generatedRoot);
+		} finally {
+			//Cancel preparing of distribution if any other stage was failed
+			shutdown(executor);
+		}
+	}
+
+	/**
+	 * Check that any specification was changed, created or deleted since previous build of IDE.
+	 *
+	 * @param source Existing specifications
+	 * @return {@code true} if specifications must be generated again
+	 */
+	private boolean hasDelta(List<Path> source) {
+		for (Path path : source) {
+			if (buildContext.hasDelta(path.toFile())) {
+				return true;
+			}
+		}
+		if (!sourceDirectory.exists()) {
+			return false;
+		}
+		Scanner deleted = buildContext.newDeleteScanner(sourceDirectory);
+		deleted.scan();
+		FilenameFilter filter = fileFilter(includes, excludes);
+		for (String path : deleted.getIncludedFiles()) {
+			if (filter.accept(null, new File(path).getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Extract specifications of {@link #dependencySources dependencySources} and {@link #dependencyImports dependencyImports}
+	 * into cache and remember directories with them as import paths.
+	 * Dependencies are resolved by goal itself, so every goal which uses them does not depend on resolution of dependencies by Maven.
+	 *
+	 * @param logger Logger for messages
+	 * @return Specifications of {@link #dependencySources dependencySources}
+	 * @throws KaitaiException If any artifact can not be extracted or any pattern does not match resolved dependency of project
+	 */
+	protected List<Path> resolveDependencies(Logger logger) throws KaitaiException {
+		importPaths.clear();
+		List<Path> source = new ArrayList<>();
+		if (isEmpty(dependencySources) && isEmpty(dependencyImports)) {
+			return source;
+		}
+		KaitaiDependencies dependencies = KaitaiDependencies.dependencies(kaitaiTarget().resolve("dependencies"));
+		Set<String> unmatched = new TreeSet<>();
+		unmatched.addAll(dependencySources != null ? dependencySources : Collections.<String>emptyList());
+		unmatched.addAll(dependencyImports != null ? dependencyImports : Collections.<String>emptyList());
+		for (Dependency dependency : resolveCompileDependencies()) {
+			Artifact artifact = dependency.getArtifact();
+			boolean sources = matches(dependencySources, artifact);
+			if (artifact.getFile() == null || !sources && !matches(dependencyImports, artifact)) {
+				continue;
+			}
+			for (Iterator<String> iterator = unmatched.iterator(); iterator.hasNext(); ) {
+				if (KaitaiDependencies.matches(iterator.next(), artifact.getGroupId(), artifact.getArtifactId())) {
+					iterator.remove();
+				}
+			}
+			Path dir = dependencies.extract(
+				artifact.getGroupId() + ":" + artifact.getArtifactId()
+				, artifact.getFile().toPath()
+				, includes
+				, excludes
+				, logger
+			);
+			importPaths.add(dir);
+			if (sources) {
+				source.addAll(scanFiles(dir, includes, excludes));
+			}
+		}
+		if (!unmatched.isEmpty()) {
+			throw new KaitaiException(format(
+				"Patterns of dependencySources/dependencyImports do not match any dependency of project with scope compile, provided or system: %s"
+				, unmatched
+			));
+		}
+		return source;
+	}
+
+	/**
+	 * Resolve dependencies of compile classpath of project: dependencies with scopes {@code compile}, {@code provided} and {@code system}.
+	 * Dependencies are resolved only once per execution.
+	 *
+	 * @return Resolved dependencies
+	 * @throws KaitaiException If any dependency can not be resolved
+	 */
+	private List<Dependency> resolveCompileDependencies() throws KaitaiException {
+		if (compileDependencies == null) {
+			DependencyResolutionRequest request = new DefaultDependencyResolutionRequest(project, session.getRepositorySession());
+			request.setResolutionFilter(new DependencyFilter() {
+				@Override
+				public boolean accept(DependencyNode node, List<DependencyNode> parents) {
+					Dependency dependency = node.getDependency();
+					return dependency == null || COMPILE_SCOPES.contains(dependency.getScope());
+				}
+			});
+			try {
+				compileDependencies = dependenciesResolver.resolve(request).getDependencies();
+			} catch (DependencyResolutionException e) {
+				throw new KaitaiException("Fail to resolve dependencies of project: " + e.getMessage(), e);
+			}
+		}
+		return compileDependencies;
+	}
+
+	private static boolean isEmpty(List<String> patterns) {
+		return patterns == null || patterns.isEmpty();
+	}
+
+	private static boolean matches(List<String> patterns, Artifact artifact) {
+		if (patterns != null) {
+			for (String pattern : patterns) {
+				if (KaitaiDependencies.matches(pattern, artifact.getGroupId(), artifact.getArtifactId())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Build stamp of generation: configuration which affects generated files and fingerprints of specifications.
+	 *
+	 * @param source Existing specifications
+	 * @param logger Logger for messages
+	 * @return Lines of stamp
+	 * @throws KaitaiException If any specification can not be read
+	 */
+	private List<String> stamp(List<Path> source, Logger logger) throws KaitaiException {
+		List<String> stamp = new ArrayList<>(Arrays.asList(
+			"version=" + version
+			, "url=" + url
+			, "output=" + relative(output.toPath())
+			, "exactOutput=" + exactOutput
+			, "packageName=" + packageName
+			, "fromFileClass=" + fromFileClass
+			, "opaqueTypes=" + opaqueTypes
+			, "noAutoRead=" + noAutoRead
+			, "registryClass=" + registryClass
+			, "compileClasses=" + compileClasses
+			, "reproducible=" + reproducible
+			, "outputTimestamp=" + (reproducible ? outputTimestamp : null)
+		));
+		for (Path importPath : importPaths) {
+			stamp.add("importPath=" + relative(importPath));
+		}
+		//Imported specifications which are not generated (excluded local ones and ones of dependencyImports) also affect generated files
+		Map<Path, String> fingerprints = KaitaiFingerprint
+			.fingerprints()
+			.cacheFile(kaitaiTarget().resolve("fingerprint.cache"))
+			.fingerprint(source, importPaths, logger);
+		Set<Path> generated = new HashSet<>(source);
+		List<String> specifications = new ArrayList<>(fingerprints.size());
+		for (Map.Entry<Path, String> entry : fingerprints.entrySet()) {
+			specifications.add((generated.contains(entry.getKey()) ? "" : "imported=") + entry.getValue() + " " + relative(entry.getKey()));
+		}
+		Collections.sort(specifications);
+		stamp.addAll(specifications);
+		return stamp;
+	}
+
+	/**
+	 * Path inside project in form which does not depend on location of project: relative to its base directory with {@code /} as separator.
+	 *
+	 * @param path Path
+	 * @return Relative path for paths inside project, absolute path for other ones
+	 */
+	private String relative(Path path) {
+		Path basedir = project.getBasedir().toPath().toAbsolutePath().normalize();
+		path = path.toAbsolutePath().normalize();
+		if (path.startsWith(basedir)) {
+			return basedir.relativize(path).toString().replace(File.separatorChar, '/');
+		} else {
+			return path.toFile().getAbsolutePath();
+		}
+	}
+
+	/**
+	 * Publish digest of stamp of generation: it is stable between machines and locations of project,
+	 * so external build caches can use it as key of generated sources.
+	 *
+	 * @param stamp  Lines of stamp
+	 * @param logger Logger for messages
+	 */
+	private void writeInputDigest(List<String> stamp, Logger logger) {
+		StringBuilder content = new StringBuilder();
+		for (String line : stamp) {
+			content.append(line).append('\n');
+		}
+		String digest = KaitaiValidator.sha256(content.toString().getBytes(UTF_8));
+		project.getProperties().setProperty("kaitai.inputDigest", digest);
+		Path digestFile = kaitaiTarget().resolve("inputs.sha256");
+		try {
+			if (!Files.isRegularFile(digestFile) || !Files.readAllLines(digestFile, UTF_8).equals(Collections.singletonList(digest))) {
+				Files.write(mkdirs(digestFile.getParent()).resolve(digestFile.getFileName()), Collections.singletonList(digest), UTF_8);
+			}
+		} catch (IOException | KaitaiException e) {
+			logger.debug("Kaitai: fail to store digest of inputs: " + digestFile.toAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Check that stamp of previous generation is the same as current one and all files of previous generation still exist.
+	 *
+	 * @param stampFile File with stamp of previous generation
+	 * @param stamp     Lines of current stamp
+	 * @return {@code true} if generation can be skipped
+	 */
+	private boolean isUpToDate(Path stampFile, List<String> stamp) {
+		if (!Files.isRegularFile(stampFile)) {
+			return false;
+		}
+		List<String> previous = new ArrayList<>();
+		List<Path> generated = new ArrayList<>();
+		try {
+			for (String line : Files.readAllLines(stampFile, UTF_8)) {
+				if (line.startsWith(GENERATED)) {
+					generated.add(project.getBasedir().toPath().resolve(line.substring(GENERATED.length())));
+				} else {
+					previous.add(line);
+				}
+			}
+		} catch (IOException e) {
+			return false;
+		}
+		if (!previous.equals(stamp) || generated.isEmpty()) {
+			return false;
+		}
+		for (Path path : generated) {
+			if (!Files.isRegularFile(path)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Write stamp of generation together with list of generated files.
+	 *
+	 * @param stampFile File for stamp
+	 * @param stamp     Lines of stamp
+	 * @param generated Files which were written by generation
+	 * @param logger    Logger for messages
+	 */
+	private void writeStamp(Path stampFile, List<String> stamp, List<Path> generated, Logger logger) {
+		List<String> lines = new ArrayList<>(stamp);
+		List<String> files = new ArrayList<>(generated.size());
+		for (Path path : generated) {
+			files.add(GENERATED + relative(path));
+		}
+		Collections.sort(files);
+		lines.addAll(files);
+		try {
+			Files.write(mkdirs(stampFile.getParent()).resolve(stampFile.getFileName()), lines, UTF_8);
+		} catch (IOException | KaitaiException e) {
+			logger.debug("Kaitai: fail to store generation stamp: " + stampFile.toAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Notify IDE about generated files: only files which were written by current generation.
+	 *
+	 * @param generatedRoot Root directory with generated files
+	 * @param started       Time of start of generation
+	 * @return Files which were written by current generation
+	 * @throws KaitaiException If generated files can not be scanned
+	 */
+	private List<Path> refresh(Path generatedRoot, long started) throws KaitaiException {
+		//File systems with precision of modification time in seconds
+		long threshold = started - started % 1000;
+		List<Path> generated = new ArrayList<>();
+		for (Path path : scanFiles(generatedRoot, new String[]{"*"}, new String[0])) {
+			if (path.toFile().lastModified() >= threshold) {
+				buildContext.refresh(path.toFile());
+				generated.add(path);
+			}
+		}
+		return generated;
+	}
+
+	/**
+	 * Write registry class if {@link #registryClass registry} is enabled.
+	 *
+	 * @param generatedRoot Root directory with generated files
+	 * @param source        All specifications
+	 * @param logger        Logger for messages
+	 * @return Path to registry class or {@code null} if registry is disabled
+	 * @throws KaitaiException If any specification can not be parsed or registry can not be written
+	 */
+	protected Path writeRegistry(Path generatedRoot, List<Path> source, Logger logger) throws KaitaiException {
+		if (isBlank(registryClass)) {
+			return null;
+		}
+		Path registry = KaitaiRegistry
+			.registry(packageName, registryClass.trim())
+			.noAutoRead(Boolean.TRUE.equals(noAutoRead))
+			.withSource(source)
+			.write(generatedRoot, logger);
+		buildContext.refresh(registry.toFile());
+		return registry;
+	}
+
+	/**
+	 * Normalize generated files in {@link #reproducible reproducible} mode.
+	 * Only files of current generation are touched: {@link #exactOutput} can point into directory with hand-written sources.
+	 *
+	 * @param generatedRoot Root directory with generated files
+	 * @param generated     Files which were written by current generation
+	 * @param timestamp     Modification time of generated files or {@code null}
+	 * @param logger        Logger for messages
+	 * @param metrics       Metrics of current execution
+	 * @throws KaitaiException If any generated file can not be normalized
+	 */
+	private void normalize(Path generatedRoot, List<Path> generated, Long timestamp, Logger logger, KaitaiMetrics metrics) throws KaitaiException {
+		try (KaitaiMetrics.Phase ignored = metrics.start("normalize")) {
+			KaitaiReproducible reproducible = KaitaiReproducible
+				.reproducible(generatedRoot)
+				.digestFile(kaitaiTarget().resolve("generated.sha256"))
+				.timestamp(timestamp);
+			String digest = reproducible.normalize(generated, logger);
+			getLog().info(format(
+				"Kaitai: digest of generated files %s: %s"
+				, digest
+				, reproducible.getDigestFile().normalize().toFile().getAbsolutePath()
+			));
+		}
+	}
+
+	private void addCompileSourceRoot(Path generatedRoot) {
+		if (addCompileSourceRoot) {
+			project.addCompileSourceRoot(generatedRoot.normalize().toFile().getAbsolutePath());
+		}
+	}
 
-		//Download Kaitai distribution into cache and unzip it
-		URL url = prepareUrl(this.url, version);
-		Path cacheDir = prepareCache(detectCacheDir(), logger);
-		Path kaitai = downloadKaitai(url, cacheDir, logger);
+	/**
+	 * Compile generated Java sources into output directory of project.
+	 *
+	 * @param generatedRoot Root directory with generated files
+	 * @param logger        Logger for messages
+	 * @param metrics       Metrics of current execution
+	 * @return Paths to compiled classes
+	 * @throws KaitaiException If any source can not be compiled
+	 */
+	private List<Path> compileClasses(Path generatedRoot, Logger logger, KaitaiMetrics metrics) throws KaitaiException {
+		List<String> classpath = new ArrayList<>();
+		classpath.add(project.getBuild().getOutputDirectory());
+		for (Dependency dependency : resolveCompileDependencies()) {
+			File file = dependency.getArtifact().getFile();
+			if (file != null) {
+				classpath.add(file.getAbsolutePath());
+			}
+		}
+		List<String> options = new ArrayList<>();
+		Properties properties = project.getProperties();
+		if (properties.getProperty("maven.compiler.release") != null) {
+			options.add("--release");
+			options.add(properties.getProperty("maven.compiler.release"));
+		} else {
+			if (properties.getProperty("maven.compiler.source") != null) {
+				options.add("-source");
+				options.add(properties.getProperty("maven.compiler.source"));
+			}
+			if (properties.getProperty("maven.compiler.target") != null) {
+				options.add("-target");
+				options.add(properties.getProperty("maven.compiler.target"));
+			}
+		}
+		List<Path> classes = KaitaiJavaCompiler
+			.compiler(mkdirs(Paths.get(project.getBuild().getOutputDirectory())))
+			.withSource(scanFiles(generatedRoot, new String[]{"*.java"}, new String[0]))
+			.classpath(classpath)
+			.options(options)
+			.metrics(metrics)
+			.compile(logger);
+		for (Path path : classes) {
+			buildContext.refresh(path.toFile());
+		}
+		return classes;
+	}
 
-		//Generate Java sources
-		Path output = mkdirs(this.output.toPath());
-		Path generatedRoot = KaitaiGenerator
+	/**
+	 * Get root directory with generated files.
+	 *
+	 * @return Path to directory
+	 * @see KaitaiGenerator#generate(Logger)
+	 */
+	protected Path generatedRoot() {
+		return exactOutput ? output.toPath() : output.toPath().resolve("src");
+	}
+
+	/**
+	 * Validate specifications if {@link #validate validation} is enabled.
+	 *
+	 * @param source  Specifications for validate
+	 * @param logger  Logger for messages
+	 * @param metrics Metrics of current execution
+	 * @throws KaitaiException If any specification is invalid
+	 */
+	protected void validate(List<Path> source, Logger logger, KaitaiMetrics metrics) throws KaitaiException {
+		if (!validate) {
+			return;
+		}
+		try (KaitaiMetrics.Phase phase = metrics.start("validate")) {
+			phase.files(source.size());
+			KaitaiValidator
+				.validator()
+				.opaqueTypes(opaqueTypes)
+				.cacheFile(kaitaiTarget().resolve("validation.cache"))
+				.validate(source, logger);
+		}
+	}
+
+	/**
+	 * Build generator configured with parameters of plugin.
+	 *
+	 * @param kaitai  Path to compiler
+	 * @param output  Target directory for generated files
+	 * @param source  Specifications for generate
+	 * @param metrics Metrics of current execution
+	 * @return Configured generator
+	 * @throws KaitaiException If compiler is not executable, output is not writable or any specification is not readable
+	 */
+	protected KaitaiGenerator generator(Path kaitai, Path output, List<Path> source, KaitaiMetrics metrics) throws KaitaiException {
+		return KaitaiGenerator
 			.generator(kaitai, output, packageName)
 			.withSource(source)
+			.withImportPath(importPaths)
 			.overwrite(overwrite)
 			.exactOutput(exactOutput)
+			.stagingDirectory(stagingDirectory != null ? stagingDirectory.toPath() : null)
 			.executionTimeout(executionTimeout)
 			.fromFileClass(fromFileClass)
 			.opaqueTypes(opaqueTypes)
 			.noVersionCheck(noVersionCheck)
 			.noAutoRead(noAutoRead)
-			.generate(logger);
+			.maxCommandLength(maxCommandLength != null ? maxCommandLength : KaitaiGenerator.DEFAULT_MAX_COMMAND_LENGTH)
+			.metrics(metrics)
+			.profile(profile ? KaitaiProfile.profile().historyFile(kaitaiTarget().resolve("profile.history")) : null);
+	}
 
-		//Add generated directory into Maven's build scope
-		project.addCompileSourceRoot(generatedRoot.normalize().toFile().getAbsolutePath());
+	/**
+	 * Get target directory for generated Java source files.
+	 *
+	 * @return Path to directory
+	 */
+	protected Path getOutput() {
+		return output.toPath();
 	}
 
-	private Path detectCacheDir() {
-		if (cacheDir != null) {
-			return cacheDir.toPath();
-		} else {
-			Path repository = new File(session.getLocalRepository().getBasedir()).toPath();
-			return repository.resolve(".cache").resolve("kaitai").normalize();
+	protected Path kaitaiTarget() {
+		return Paths.get(project.getBuild().getDirectory(), "kaitai");
+	}
+
+	private void writeMetrics(KaitaiMetrics metrics) {
+		getLog().info(metrics.summary());
+		Path target = kaitaiTarget().resolve("metrics.json");
+		try {
+			metrics.write(target);
+		} catch (KaitaiException e) {
+			getLog().warn(e.getMessage(), e);
+		}
+	}
+
+	private static <T> T await(Future<T> future) throws KaitaiException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KaitaiException("Interrupted while preparing Kaitai distribution", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof KaitaiException) {
+				throw (KaitaiException) e.getCause();
+			}
+			throw new KaitaiException("Fail to prepare Kaitai distribution", e.getCause());
+		}
+	}
+
+	private static void shutdown(ExecutorService executor) {
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 }
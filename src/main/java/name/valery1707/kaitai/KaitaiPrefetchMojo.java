@@ -0,0 +1,87 @@
+package name.valery1707.kaitai;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.slf4j.Logger;
+
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static java.lang.String.format;
+import static name.valery1707.kaitai.KaitaiUtils.prepareUrl;
+
+/**
+ * Warm all caches which are used by {@code generate} goal without generation itself:
+ * download and unpack distributions, resolve start script of compiler and check its version.
+ *
+ * <p>
+ * Useful for baking of caches into container images: first generation inside fresh container will be as fast as next ones.
+ *
+ * @see KaitaiMojo
+ */
+@Mojo(
+	name = "prefetch"
+	, requiresProject = false
+	, threadSafe = true
+)
+public class KaitaiPrefetchMojo extends AbstractKaitaiMojo {
+	/**
+	 * Versions of <a href="http://kaitai.io/#download">KaiTai</a> library for prefetching.
+	 * If not specified then only {@link #version version} (or {@link #url url}) is prefetched.
+	 *
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.prefetch.versions")
+	private String[] versions;
+
+	/**
+	 * Executes the plugin, to download, unpack and check all configured distributions.
+	 */
+	public void execute() throws MojoExecutionException {
+		try {
+			executeInt();
+		} catch (KaitaiException e) {
+			throw new MojoExecutionException(e.getMessage(), e);
+		}
+	}
+
+	private void executeInt() throws KaitaiException {
+		if (skip) {
+			getLog().info("Skip KaiTai prefetch: skip=true");
+			return;
+		}
+
+		Logger logger = createLogger();
+		configureProcessLimit();
+		for (URL url : urls()) {
+			try (KaitaiCache.Lease ignored = leaseDistribution(url)) {
+				Path kaitai = prepareDistribution(url, logger, KaitaiMetrics.metrics());
+				String compilerVersion = KaitaiGenerator
+					.generator(kaitai, kaitai.getParent(), "kaitai")
+					.executionTimeout(executionTimeout)
+					.noVersionCheck(noVersionCheck)
+					.checkVersion(logger);
+				logger.info(format(
+					"KaiTai distribution: Prefetched: %s (%s)"
+					, url
+					, compilerVersion
+				));
+			}
+		}
+	}
+
+	private Set<URL> urls() throws KaitaiException {
+		Set<URL> urls = new LinkedHashSet<>();
+		if (versions == null || versions.length == 0) {
+			urls.add(prepareUrl(url, version));
+		} else {
+			for (String version : versions) {
+				urls.add(prepareUrl(null, version));
+			}
+		}
+		return urls;
+	}
+}
@@ -0,0 +1,321 @@
+package name.valery1707.kaitai;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Runner of external process which pumps its output inside calling thread.
+ *
+ * <p>
+ * Calling thread polls both output streams of process without blocking and stores received bytes directly into capture buffers,
+ * complete lines are decoded once and sent into logger: standard output with level {@code INFO}, error output with level {@code ERROR}.
+ * So execution does not need any additional threads.
+ *
+ * <p>
+ * Timeout is counted from start of process: process which is still running after it is destroyed.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiProcess {
+	/**
+	 * Maximum pause between polls of idle process.
+	 */
+	private static final long MAX_IDLE_MILLIS = 10;
+
+	/**
+	 * Level of logging of lines of output stream.
+	 */
+	public enum Mode {
+		INFO,
+		ERROR,
+	}
+
+	private final List<String> command = new ArrayList<>();
+	private long timeoutMillis = -1;
+
+	private KaitaiProcess(String executable) {
+		command.add(executable);
+	}
+
+	/**
+	 * Build {@code KaitaiProcess} for executable.
+	 *
+	 * @param executable Path to executable
+	 * @return New {@code KaitaiProcess}
+	 */
+	public static KaitaiProcess process(String executable) {
+		return new KaitaiProcess(executable);
+	}
+
+	public List<String> getCommand() {
+		return Collections.unmodifiableList(command);
+	}
+
+	public KaitaiProcess withArgs(List<String> args) {
+		command.addAll(args);
+		return this;
+	}
+
+	public KaitaiProcess withArgs(String... args) {
+		return withArgs(Arrays.asList(args));
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * Set timeout of execution.
+	 *
+	 * @param timeoutMillis Timeout in milliseconds, negative value disables timeout
+	 * @return self
+	 */
+	public KaitaiProcess timeoutMillis(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+		return this;
+	}
+
+	/**
+	 * Start process and wait for its completion.
+	 *
+	 * @param log Logger for lines of output
+	 * @return Captured output of successful process
+	 * @throws IOException              If process can not be started or current thread was interrupted
+	 * @throws TimeoutException         If process does not complete inside timeout
+	 * @throws ExternalFailureException If process completes with non-zero exit code
+	 */
+	public Result run(Logger log) throws IOException {
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(command).start();
+		Result result = new Result();
+		try {
+			process.getOutputStream().close();
+			Pump output = new Pump(process.getInputStream(), result.output, log, Mode.INFO);
+			Pump error = new Pump(process.getErrorStream(), result.error, log, Mode.ERROR);
+			long idle = 1;
+			while (true) {
+				boolean received = output.pump() | error.pump();
+				Integer exitValue = exitValue(process);
+				if (exitValue != null) {
+					//Everything which was written before exit is already inside pipes: drain them
+					while (output.pump() | error.pump()) {
+						//Read until pipes are empty
+					}
+					output.flush();
+					error.flush();
+					result.exitValue = exitValue;
+					result.millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+					break;
+				}
+				if (timeoutMillis >= 0 && System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+					output.flush();
+					error.flush();
+					throw new TimeoutException(format("Process '%s' timed out after %dms.", commandString(), timeoutMillis), result);
+				}
+				if (received) {
+					idle = 1;
+				} else {
+					Thread.sleep(idle);
+					idle = Math.min(idle * 2, MAX_IDLE_MILLIS);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(format("Interrupted while waiting for process '%s'", commandString()));
+		} finally {
+			process.destroy();
+		}
+		if (result.exitValue != 0) {
+			throw new ExternalFailureException(format(
+				"Process '%s' returned %d after %dms"
+				, commandString()
+				, result.exitValue
+				, result.millis
+			), result);
+		}
+		return result;
+	}
+
+	private static Integer exitValue(Process process) {
+		try {
+			return process.exitValue();
+		} catch (IllegalThreadStateException e) {
+			//Process is still running
+			return null;
+		}
+	}
+
+	private String commandString() {
+		StringBuilder builder = new StringBuilder();
+		for (String part : command) {
+			if (builder.length() > 0) {
+				builder.append(' ');
+			}
+			builder.append(part);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Transfer of available bytes of single output stream of process into capture buffer and logger.
+	 */
+	private static final class Pump {
+		private final InputStream source;
+		private final ByteArrayOutputStream capture;
+		private final Logger log;
+		private final Mode mode;
+		private final byte[] buffer = new byte[8 * 1024];
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+		private Pump(InputStream source, ByteArrayOutputStream capture, Logger log, Mode mode) {
+			this.source = source;
+			this.capture = capture;
+			this.log = log;
+			this.mode = mode;
+		}
+
+		/**
+		 * Transfer bytes which can be read without blocking.
+		 *
+		 * @return {@code true} if any bytes were transferred
+		 * @throws IOException If stream can not be read
+		 */
+		private boolean pump() throws IOException {
+			boolean received = false;
+			int available;
+			while ((available = source.available()) > 0) {
+				int read = source.read(buffer, 0, Math.min(available, buffer.length));
+				if (read <= 0) {
+					break;
+				}
+				received = true;
+				capture.write(buffer, 0, read);
+				int from = 0;
+				for (int i = 0; i < read; i++) {
+					if (buffer[i] == '\n' || buffer[i] == '\r') {
+						line.write(buffer, from, i - from);
+						flush();
+						from = i + 1;
+					}
+				}
+				line.write(buffer, from, read - from);
+			}
+			return received;
+		}
+
+		private void flush() {
+			String text = new String(line.toByteArray(), UTF_8).trim();
+			line.reset();
+			if (text.isEmpty()) {
+				return;
+			}
+			switch (mode) {
+				case INFO:
+					log.info(text);
+					break;
+				case ERROR:
+				default:
+					log.error(text);
+			}
+		}
+	}
+
+	/**
+	 * Captured output of process.
+	 */
+	public static final class Result {
+		private final ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+		private final ByteArrayOutputStream error = new ByteArrayOutputStream(256);
+		private int exitValue = -1;
+		private long millis;
+
+		private Result() {
+		}
+
+		public String getOutput() {
+			return new String(output.toByteArray(), UTF_8);
+		}
+
+		public int getOutputSize() {
+			return output.size();
+		}
+
+		public String getError() {
+			return new String(error.toByteArray(), UTF_8);
+		}
+
+		public int getErrorSize() {
+			return error.size();
+		}
+
+		/**
+		 * Get exit code of process.
+		 *
+		 * @return Exit code or {@code -1} if process was destroyed by timeout
+		 */
+		public int getExitValue() {
+			return exitValue;
+		}
+
+		/**
+		 * Get wall time of execution.
+		 *
+		 * @return Time in milliseconds
+		 */
+		public long getMillis() {
+			return millis;
+		}
+	}
+
+	/**
+	 * Process does not complete inside timeout.
+	 */
+	public static class TimeoutException extends IOException {
+		private final Result result;
+
+		private TimeoutException(String message, Result result) {
+			super(message);
+			this.result = result;
+		}
+
+		/**
+		 * Get output which was captured before process was destroyed.
+		 *
+		 * @return Captured output
+		 */
+		public Result getResult() {
+			return result;
+		}
+	}
+
+	/**
+	 * Process completes with non-zero exit code.
+	 */
+	public static class ExternalFailureException extends IOException {
+		private final Result result;
+
+		private ExternalFailureException(String message, Result result) {
+			super(message);
+			this.result = result;
+		}
+
+		public Result getResult() {
+			return result;
+		}
+
+		public int getExitValue() {
+			return result.getExitValue();
+		}
+	}
+}
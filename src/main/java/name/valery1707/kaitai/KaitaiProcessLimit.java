@@ -0,0 +1,122 @@
+package name.valery1707.kaitai;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM-wide limit of concurrently running compiler processes.
+ *
+ * <p>
+ * Every compiler process is a separate JVM with its own heap, so parallel builds ({@code mvn -T ...}) of many modules
+ * can exhaust memory of build agent. All generators inside current JVM share the same limit.
+ *
+ * <p>
+ * Limit can be changed at any moment: processes which are already running are not affected,
+ * waiting processes are started according to new limit.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiProcessLimit {
+	/**
+	 * Memory which is reserved for one compiler process.
+	 */
+	private static final long PROCESS_MEMORY = 1024L * 1024 * 1024;
+
+	private static final Object LOCK = new Object();
+	private static int limit = defaultLimit();
+	private static int running = 0;
+
+	private KaitaiProcessLimit() {
+	}
+
+	/**
+	 * Detect default limit: one process per core but not more then one process per gigabyte of physical memory.
+	 *
+	 * @return Default limit
+	 */
+	public static int defaultLimit() {
+		int cores = Runtime.getRuntime().availableProcessors();
+		long memory = physicalMemory();
+		if (memory > 0) {
+			return (int) Math.max(1, Math.min(cores, memory / PROCESS_MEMORY));
+		} else {
+			return Math.max(1, cores);
+		}
+	}
+
+	private static long physicalMemory() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		try {
+			return hotSpotPhysicalMemory(os);
+		} catch (LinkageError e) {
+			//Not HotSpot-based JVM: class com.sun.management.OperatingSystemMXBean is absent
+			return -1;
+		}
+	}
+
+	/**
+	 * Separate method so class {@code com.sun.management.OperatingSystemMXBean} is resolved only inside guarded call.
+	 */
+	private static long hotSpotPhysicalMemory(OperatingSystemMXBean os) {
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+		} else {
+			return -1;
+		}
+	}
+
+	/**
+	 * Get current limit.
+	 *
+	 * @return Maximum count of concurrently running compiler processes
+	 */
+	public static int getLimit() {
+		synchronized (LOCK) {
+			return limit;
+		}
+	}
+
+	/**
+	 * Set new limit.
+	 *
+	 * @param limit Maximum count of concurrently running compiler processes, non-positive value restores default limit
+	 */
+	public static void setLimit(int limit) {
+		synchronized (LOCK) {
+			KaitaiProcessLimit.limit = limit > 0 ? limit : defaultLimit();
+			LOCK.notifyAll();
+		}
+	}
+
+	/**
+	 * Wait for free slot and occupy it. Every successful call must be followed by {@link #release()}.
+	 *
+	 * @return Time of waiting in milliseconds
+	 * @throws KaitaiException If current thread was interrupted while waiting
+	 */
+	public static long acquire() throws KaitaiException {
+		long start = System.nanoTime();
+		synchronized (LOCK) {
+			try {
+				while (running >= limit) {
+					LOCK.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new KaitaiException("Interrupted while waiting for start of kaitai command", e);
+			}
+			running++;
+		}
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	/**
+	 * Free slot which was occupied by {@link #acquire()}.
+	 */
+	public static void release() {
+		synchronized (LOCK) {
+			running--;
+			LOCK.notifyAll();
+		}
+	}
+}
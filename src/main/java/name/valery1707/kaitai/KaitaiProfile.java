@@ -0,0 +1,285 @@
+package name.valery1707.kaitai;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static name.valery1707.kaitai.KaitaiUtils.mkdirs;
+import static name.valery1707.kaitai.KaitaiUtils.move;
+
+/**
+ * History of compilation costs of single specifications.
+ *
+ * <p>
+ * Generator with configured profile compiles every specification by separate execution of compiler
+ * and records time of execution and count of generated classes. History is accumulated between builds
+ * inside {@link #getHistoryFile() history file}, so it can be used for report about the slowest specifications.
+ *
+ * <p>
+ * Time of every execution contains start of compiler, so only difference between specifications is meaningful.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiProfile {
+	private final Map<String, Entry> entries = new TreeMap<>();
+	private Path historyFile;
+	private boolean loaded;
+
+	/**
+	 * Build {@code KaitaiProfile} with empty history.
+	 *
+	 * @return New {@code KaitaiProfile}
+	 */
+	public static KaitaiProfile profile() {
+		return new KaitaiProfile();
+	}
+
+	private KaitaiProfile() {
+	}
+
+	/**
+	 * Get file for storing of history between builds.
+	 *
+	 * @return History file or {@code null} if history is stored only in memory
+	 */
+	public synchronized Path getHistoryFile() {
+		return historyFile;
+	}
+
+	/**
+	 * Set file for storing of history between builds.
+	 *
+	 * @param historyFile History file or {@code null} if history is stored only in memory
+	 */
+	public synchronized void setHistoryFile(Path historyFile) {
+		this.historyFile = historyFile;
+		this.loaded = false;
+	}
+
+	/**
+	 * Set file for storing of history between builds.
+	 *
+	 * @param historyFile History file or {@code null} if history is stored only in memory
+	 * @return self
+	 */
+	public KaitaiProfile historyFile(Path historyFile) {
+		setHistoryFile(historyFile);
+		return this;
+	}
+
+	/**
+	 * Record cost of compilation of specification.
+	 *
+	 * @param source  Path to specification
+	 * @param millis  Time of execution of compiler
+	 * @param classes Count of generated classes
+	 */
+	public synchronized void record(Path source, long millis, int classes) {
+		load();
+		String key = key(source);
+		Entry entry = entries.get(key);
+		entries.put(key, entry == null ? new Entry(key, millis, millis, classes, 1) : entry.next(millis, classes));
+	}
+
+	/**
+	 * Get recorded cost of compilation of specification.
+	 *
+	 * @param source Path to specification
+	 * @return Recorded cost or {@code null} if specification was never compiled in profiling mode
+	 */
+	public synchronized Entry getEntry(Path source) {
+		load();
+		return entries.get(key(source));
+	}
+
+	/**
+	 * Forget history of specifications which are not in {@code sources}: removed or renamed ones.
+	 *
+	 * @param sources Paths to all existing specifications
+	 */
+	public synchronized void retain(Collection<Path> sources) {
+		load();
+		Set<String> keys = new HashSet<>();
+		for (Path source : sources) {
+			keys.add(key(source));
+		}
+		entries.keySet().retainAll(keys);
+	}
+
+	/**
+	 * Get recorded costs, the slowest first.
+	 *
+	 * @param limit Maximum count of entries
+	 * @return Recorded costs
+	 */
+	public synchronized List<Entry> top(int limit) {
+		load();
+		List<Entry> top = new ArrayList<>(entries.values());
+		Collections.sort(top, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry o1, Entry o2) {
+				int result = Long.compare(o2.getLastMillis(), o1.getLastMillis());
+				return result != 0 ? result : o1.getSource().compareTo(o2.getSource());
+			}
+		});
+		return top.subList(0, Math.min(Math.max(limit, 0), top.size()));
+	}
+
+	/**
+	 * Format report about the slowest specifications.
+	 *
+	 * @param limit Maximum count of specifications
+	 * @return Human readable lines of report
+	 */
+	public List<String> report(int limit) {
+		List<Entry> top = top(limit);
+		List<String> report = new ArrayList<>(top.size() + 1);
+		report.add(format("Kaitai: profile: %d slowest specifications", top.size()));
+		for (Entry entry : top) {
+			report.add(format(
+				"Kaitai: profile: %6d ms (average %6d ms of %d runs), %3d classes: %s"
+				, entry.getLastMillis()
+				, entry.getAverageMillis()
+				, entry.getRuns()
+				, entry.getClasses()
+				, entry.getSource()
+			));
+		}
+		return report;
+	}
+
+	/**
+	 * Store history into {@link #getHistoryFile() history file}.
+	 *
+	 * @param log Logger for messages
+	 */
+	public synchronized void store(Logger log) {
+		if (historyFile == null) {
+			return;
+		}
+		load();
+		List<String> lines = new ArrayList<>(entries.size());
+		for (Entry entry : entries.values()) {
+			lines.add(entry.getLastMillis() + "\t" + entry.getAverageMillis() + "\t" + entry.getRuns()
+				+ "\t" + entry.getClasses() + "\t" + entry.getSource());
+		}
+		Path temp = historyFile.resolveSibling(historyFile.getFileName().toString() + ".tmp");
+		try {
+			mkdirs(historyFile.toAbsolutePath().getParent());
+			Files.write(temp, lines, UTF_8);
+			move(temp, historyFile);
+		} catch (IOException | KaitaiException e) {
+			log.debug("Kaitai: fail to store profile history: " + historyFile.toAbsolutePath(), e);
+		}
+	}
+
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		if (historyFile == null || !Files.isRegularFile(historyFile)) {
+			return;
+		}
+		try {
+			for (String line : Files.readAllLines(historyFile, UTF_8)) {
+				String[] parts = line.split("\t", 5);
+				if (parts.length == 5 && !entries.containsKey(parts[4])) {
+					entries.put(parts[4], new Entry(
+						parts[4]
+						, Long.parseLong(parts[0])
+						, Long.parseLong(parts[1])
+						, Integer.parseInt(parts[3])
+						, Integer.parseInt(parts[2])
+					));
+				}
+			}
+		} catch (IOException | NumberFormatException ignored) {
+			//Broken history is same as absent history
+		}
+	}
+
+	private static String key(Path source) {
+		return source.toAbsolutePath().normalize().toString();
+	}
+
+	/**
+	 * Recorded cost of compilation of single specification.
+	 */
+	public static final class Entry {
+		private final String source;
+		private final long lastMillis;
+		private final long averageMillis;
+		private final int classes;
+		private final int runs;
+
+		private Entry(String source, long lastMillis, long averageMillis, int classes, int runs) {
+			this.source = source;
+			this.lastMillis = lastMillis;
+			this.averageMillis = averageMillis;
+			this.classes = classes;
+			this.runs = runs;
+		}
+
+		private Entry next(long millis, int classes) {
+			return new Entry(source, millis, (averageMillis * runs + millis) / (runs + 1), classes, runs + 1);
+		}
+
+		/**
+		 * Get absolute path to specification.
+		 *
+		 * @return Path to specification
+		 */
+		public String getSource() {
+			return source;
+		}
+
+		/**
+		 * Get time of the last execution of compiler.
+		 *
+		 * @return Time in milliseconds
+		 */
+		public long getLastMillis() {
+			return lastMillis;
+		}
+
+		/**
+		 * Get average time of all recorded executions of compiler.
+		 *
+		 * @return Time in milliseconds
+		 */
+		public long getAverageMillis() {
+			return averageMillis;
+		}
+
+		/**
+		 * Get count of classes which were generated by the last execution of compiler: main class and classes of imported specifications.
+		 *
+		 * @return Count of classes
+		 */
+		public int getClasses() {
+			return classes;
+		}
+
+		/**
+		 * Get count of recorded executions of compiler.
+		 *
+		 * @return Count of executions
+		 */
+		public int getRuns() {
+			return runs;
+		}
+	}
+}
@@ -0,0 +1,618 @@
+package name.valery1707.kaitai;
+
+import org.slf4j.Logger;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.unmodifiableSet;
+import static name.valery1707.kaitai.KaitaiSpec.*;
+import static name.valery1707.kaitai.KaitaiUtils.checkFileIsReadable;
+import static name.valery1707.kaitai.KaitaiUtils.mkdirs;
+
+/**
+ * Generator of registry class for generated parsers.
+ *
+ * <p>
+ * Registry allows to find parser at runtime by {@code meta/id}, by {@code meta/file-extension}
+ * or by fixed magic bytes from leading {@code contents} of specification without reflection and allocations:
+ * identifiers and extensions are looked up by {@code switch}, magic bytes by walking of trie which is built by plugin.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiRegistry {
+	private static final Pattern CLASS_NAME = Pattern.compile("^[A-Za-z_$][A-Za-z0-9_$]*$");
+	/**
+	 * Limit of nesting of user types while magic bytes are collected.
+	 */
+	private static final int MAX_MAGIC_DEPTH = 8;
+
+	private final String packageName;
+	private final String className;
+	private final Set<Path> sources = new LinkedHashSet<>();
+	private boolean noAutoRead;
+
+	private KaitaiRegistry(String packageName, String className) {
+		this.packageName = packageName;
+		this.className = className;
+	}
+
+	/**
+	 * Build {@code KaitaiRegistry} with preconfigured state.
+	 *
+	 * @param packageName Package name of generated Java-classes
+	 * @param className   Simple name of registry class
+	 * @return New {@code KaitaiRegistry}
+	 * @throws KaitaiException If class name is not valid Java identifier
+	 */
+	public static KaitaiRegistry registry(String packageName, String className) throws KaitaiException {
+		if (className == null || !CLASS_NAME.matcher(className).matches()) {
+			throw new KaitaiException("Invalid name of registry class: " + className);
+		}
+		return new KaitaiRegistry(packageName, className);
+	}
+
+	public String getPackageName() {
+		return packageName;
+	}
+
+	public String getClassName() {
+		return className;
+	}
+
+	public Set<Path> getSources() {
+		return unmodifiableSet(sources);
+	}
+
+	/**
+	 * Add paths to kaitai specifications.
+	 *
+	 * @param sources Iterable with paths to kaitai specification
+	 * @return self
+	 * @throws KaitaiException If any path is not readable
+	 */
+	public KaitaiRegistry withSource(Iterable<Path> sources) throws KaitaiException {
+		for (Path source : sources) {
+			checkFileIsReadable(source);
+			this.sources.add(source);
+		}
+		return this;
+	}
+
+	public boolean isNoAutoRead() {
+		return noAutoRead;
+	}
+
+	/**
+	 * Parsers are generated without auto-running of {@code _read} in constructor, so registry must call it itself.
+	 *
+	 * @param noAutoRead Mode of generated parsers
+	 */
+	public void setNoAutoRead(boolean noAutoRead) {
+		this.noAutoRead = noAutoRead;
+	}
+
+	public KaitaiRegistry noAutoRead(boolean noAutoRead) {
+		setNoAutoRead(noAutoRead);
+		return this;
+	}
+
+	/**
+	 * Collect entries of registry from specifications.
+	 * Specifications with {@code params} are skipped: they can not be created only from stream.
+	 *
+	 * @param log Logger for messages
+	 * @return Entries of registry
+	 * @throws KaitaiException If any specification can not be parsed or its class conflicts with registry class
+	 */
+	public List<Entry> entries(Logger log) throws KaitaiException {
+		List<Entry> entries = new ArrayList<>(sources.size());
+		Set<String> ids = new LinkedHashSet<>();
+		Map<String, String> extensions = new LinkedHashMap<>();
+		Map<String, String> magics = new LinkedHashMap<>();
+		for (Path source : sources) {
+			KaitaiSpec spec = KaitaiSpec.parse(source);
+			String id = spec.getId();
+			if (id == null || child(spec.getRoot(), "params") != null) {
+				log.debug(format("Kaitai: registry: skip specification without id or with params: %s", spec.location(null)));
+				continue;
+			}
+			if (!ids.add(id)) {
+				log.warn(format("Kaitai: registry: duplicate id '%s' is skipped: %s", id, spec.location(null)));
+				continue;
+			}
+			Entry entry = new Entry(id, javaClassName(id), extensions(spec), magic(spec));
+			if (entry.getClassName().equals(className)) {
+				throw new KaitaiException(format(
+					"%s: class of specification conflicts with registry class: %s"
+					, spec.location(null)
+					, className
+				));
+			}
+			for (String extension : new ArrayList<>(entry.extensions)) {
+				String owner = extensions.get(extension);
+				if (owner != null) {
+					log.warn(format("Kaitai: registry: extension '%s' is already used by '%s', skipped for '%s'", extension, owner, id));
+					entry.extensions.remove(extension);
+				} else {
+					extensions.put(extension, id);
+				}
+			}
+			if (entry.magic != null) {
+				String key = Arrays.toString(entry.magic);
+				String owner = magics.get(key);
+				if (owner != null) {
+					log.warn(format("Kaitai: registry: magic %s is already used by '%s', skipped for '%s'", key, owner, id));
+					entry.magic = null;
+				} else {
+					magics.put(key, id);
+				}
+			}
+			entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * Write source of registry class.
+	 *
+	 * @param generatedRoot Root directory with generated files
+	 * @param log           Logger for messages
+	 * @return Path to written source
+	 * @throws KaitaiException If any specification can not be parsed or source can not be written
+	 */
+	public Path write(Path generatedRoot, Logger log) throws KaitaiException {
+		List<Entry> entries = entries(log);
+		Path target = generatedRoot.resolve(packageName.replace('.', '/')).resolve(className + ".java");
+		mkdirs(target.getParent());
+		try {
+			Files.write(target, render(entries).getBytes(UTF_8));
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to write registry: %s"
+				, target.normalize().toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+		log.info(format("Kaitai: registry: %d parsers written into %s.%s", entries.size(), packageName, className));
+		return target;
+	}
+
+	/**
+	 * Build name of Java-class for specification the same way as compiler does.
+	 *
+	 * @param id Identifier of specification
+	 * @return Simple name of Java-class
+	 */
+	public static String javaClassName(String id) {
+		StringBuilder name = new StringBuilder(id.length());
+		for (String part : id.split("_")) {
+			if (!part.isEmpty()) {
+				name.append(Character.toUpperCase(part.charAt(0))).append(part.substring(1));
+			}
+		}
+		return name.toString();
+	}
+
+	private static List<String> extensions(KaitaiSpec spec) {
+		List<String> extensions = new ArrayList<>();
+		for (String extension : scalars(child(spec.getRoot(), "meta", "file-extension"))) {
+			String normalized = extension.trim().toLowerCase(Locale.ROOT);
+			if (!normalized.isEmpty() && !extensions.contains(normalized)) {
+				extensions.add(normalized);
+			}
+		}
+		return extensions;
+	}
+
+	/**
+	 * Collect fixed magic bytes of specification: {@code contents} of leading attributes of {@code seq},
+	 * including leading attributes of user types which are used by first attributes.
+	 *
+	 * @param spec Specification
+	 * @return Magic bytes or {@code null} if specification does not start with fixed contents
+	 */
+	public static byte[] magic(KaitaiSpec spec) {
+		ByteArrayOutputStream magic = new ByteArrayOutputStream();
+		magic(spec.getRoot(), child(spec.getRoot(), "types"), magic, 0);
+		return magic.size() > 0 ? magic.toByteArray() : null;
+	}
+
+	/**
+	 * Append leading contents of type into magic.
+	 *
+	 * @return {@code true} if all attributes of type were fixed contents and magic can be continued by next attributes
+	 */
+	private static boolean magic(Node type, Node types, ByteArrayOutputStream magic, int depth) {
+		if (depth > MAX_MAGIC_DEPTH) {
+			return false;
+		}
+		for (Node attribute : items(child(type, "seq"))) {
+			if (child(attribute, "if") != null || child(attribute, "pos") != null) {
+				return false;
+			}
+			//Repetition until end of stream or until condition starts with the first item if data is not empty
+			String repeat = scalar(child(attribute, "repeat"));
+			if (repeat != null && !"eos".equals(repeat) && !"until".equals(repeat)) {
+				return false;
+			}
+			Node contents = child(attribute, "contents");
+			if (contents != null) {
+				if (!contents(contents, magic) || repeat != null) {
+					return false;
+				}
+				continue;
+			}
+			String typeName = scalar(child(attribute, "type"));
+			Node userType = typeName != null ? child(types, typeName) : null;
+			if (userType == null || child(userType, "params") != null) {
+				return false;
+			}
+			//Attribute with size is read from substream which starts at the same position, so its leading contents are still magic
+			boolean complete = magic(userType, types, magic, depth + 1);
+			if (!complete || repeat != null || child(attribute, "size") != null || child(attribute, "size-eos") != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean contents(Node contents, ByteArrayOutputStream magic) {
+		List<Node> items = contents instanceof ScalarNode ? Collections.singletonList(contents) : items(contents);
+		if (items.isEmpty()) {
+			return false;
+		}
+		for (Node item : items) {
+			if (!(item instanceof ScalarNode)) {
+				return false;
+			}
+			String value = scalar(item);
+			if (Tag.INT.equals(item.getTag())) {
+				Long number = number(value);
+				if (number == null || number < 0 || number > 255) {
+					return false;
+				}
+				magic.write(number.intValue());
+			} else {
+				byte[] bytes = value.getBytes(UTF_8);
+				magic.write(bytes, 0, bytes.length);
+			}
+		}
+		return true;
+	}
+
+	private static Long number(String value) {
+		String clean = value.replace("_", "");
+		try {
+			if (clean.startsWith("0b")) {
+				return Long.parseLong(clean.substring(2), 2);
+			} else if (clean.startsWith("0o")) {
+				return Long.parseLong(clean.substring(2), 8);
+			} else {
+				return Long.decode(clean);
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Render source of registry class.
+	 *
+	 * @param entries Entries of registry
+	 * @return Java source
+	 */
+	String render(List<Entry> entries) {
+		Trie trie = new Trie();
+		for (Entry entry : entries) {
+			if (entry.magic != null) {
+				trie.add(entry.magic, entry.getId());
+			}
+		}
+
+		StringBuilder java = new StringBuilder()
+			.append("// This is a generated file! Please edit source .ksy files and use kaitai-maven-plugin to rebuild\n")
+			.append('\n')
+			.append("package ").append(packageName).append(";\n")
+			.append('\n')
+			.append("import io.kaitai.struct.KaitaiStream;\n")
+			.append("import io.kaitai.struct.KaitaiStruct;\n")
+			.append('\n')
+			.append("import java.util.Locale;\n")
+			.append('\n')
+			.append("/**\n")
+			.append(" * Registry of generated parsers: lookup by {@code meta/id}, file extension or leading magic bytes.\n")
+			.append(" */\n")
+			.append("public final class ").append(className).append(" {\n")
+			.append("\t/**\n")
+			.append("\t * Factory of parser.\n")
+			.append("\t */\n")
+			.append("\tpublic interface Factory {\n")
+			.append("\t\tString id();\n")
+			.append('\n')
+			.append("\t\tClass<? extends KaitaiStruct> type();\n")
+			.append('\n')
+			.append("\t\tKaitaiStruct parse(KaitaiStream io);\n")
+			.append("\t}\n");
+		for (Entry entry : entries) {
+			java
+				.append('\n')
+				.append("\tpublic static final Factory ").append(constant(entry)).append(" = new Factory() {\n")
+				.append("\t\t@Override\n")
+				.append("\t\tpublic String id() {\n")
+				.append("\t\t\treturn \"").append(entry.getId()).append("\";\n")
+				.append("\t\t}\n")
+				.append('\n')
+				.append("\t\t@Override\n")
+				.append("\t\tpublic Class<? extends KaitaiStruct> type() {\n")
+				.append("\t\t\treturn ").append(entry.getClassName()).append(".class;\n")
+				.append("\t\t}\n")
+				.append('\n')
+				.append("\t\t@Override\n")
+				.append("\t\tpublic KaitaiStruct parse(KaitaiStream io) {\n");
+			if (noAutoRead) {
+				java
+					.append("\t\t\t").append(entry.getClassName()).append(" parsed = new ").append(entry.getClassName()).append("(io);\n")
+					.append("\t\t\tparsed._read();\n")
+					.append("\t\t\treturn parsed;\n");
+			} else {
+				java.append("\t\t\treturn new ").append(entry.getClassName()).append("(io);\n");
+			}
+			java
+				.append("\t\t}\n")
+				.append("\t};\n");
+		}
+
+		java
+			.append('\n')
+			.append("\tprivate ").append(className).append("() {\n")
+			.append("\t}\n")
+			.append('\n')
+			.append("\t/**\n")
+			.append("\t * All registered parsers.\n")
+			.append("\t *\n")
+			.append("\t * @return New array of factories\n")
+			.append("\t */\n")
+			.append("\tpublic static Factory[] all() {\n")
+			.append("\t\treturn new Factory[]{");
+		for (int i = 0; i < entries.size(); i++) {
+			java.append(i == 0 ? "" : ", ").append(constant(entries.get(i)));
+		}
+		java
+			.append("};\n")
+			.append("\t}\n")
+			.append('\n')
+			.append("\t/**\n")
+			.append("\t * Find parser by {@code meta/id} of specification.\n")
+			.append("\t *\n")
+			.append("\t * @param id Identifier of specification\n")
+			.append("\t * @return Factory or {@code null} if it is unknown\n")
+			.append("\t */\n")
+			.append("\tpublic static Factory byId(String id) {\n")
+			.append("\t\tswitch (id) {\n");
+		for (Entry entry : entries) {
+			java
+				.append("\t\t\tcase \"").append(entry.getId()).append("\":\n")
+				.append("\t\t\t\treturn ").append(constant(entry)).append(";\n");
+		}
+		java
+			.append("\t\t\tdefault:\n")
+			.append("\t\t\t\treturn null;\n")
+			.append("\t\t}\n")
+			.append("\t}\n")
+			.append('\n')
+			.append("\t/**\n")
+			.append("\t * Find parser by {@code meta/file-extension} of specification.\n")
+			.append("\t *\n")
+			.append("\t * @param extension Extension of file without leading dot, case insensitive\n")
+			.append("\t * @return Factory or {@code null} if it is unknown\n")
+			.append("\t */\n")
+			.append("\tpublic static Factory byExtension(String extension) {\n")
+			.append("\t\tswitch (extension.toLowerCase(Locale.ROOT)) {\n");
+		for (Entry entry : entries) {
+			for (String extension : entry.getExtensions()) {
+				java
+					.append("\t\t\tcase \"").append(escape(extension)).append("\":\n")
+					.append("\t\t\t\treturn ").append(constant(entry)).append(";\n");
+			}
+		}
+		java
+			.append("\t\t\tdefault:\n")
+			.append("\t\t\t\treturn null;\n")
+			.append("\t\t}\n")
+			.append("\t}\n")
+			.append('\n')
+			.append("\t/**\n")
+			.append("\t * Find parser by leading bytes of data: the longest known magic which is prefix of data wins.\n")
+			.append("\t *\n")
+			.append("\t * @param data Leading bytes of data, at least {@link #maxMagicLength()} bytes are enough\n")
+			.append("\t * @return Factory or {@code null} if data does not start with any known magic\n")
+			.append("\t */\n")
+			.append("\tpublic static Factory byMagic(byte[] data) {\n")
+			.append("\t\treturn byMagic(data, 0, data.length);\n")
+			.append("\t}\n")
+			.append('\n')
+			.append("\t/**\n")
+			.append("\t * Find parser by leading bytes of data: the longest known magic which is prefix of data wins.\n")
+			.append("\t *\n")
+			.append("\t * @param data   Buffer with data\n")
+			.append("\t * @param offset Start of data inside buffer\n")
+			.append("\t * @param length Length of data inside buffer\n")
+			.append("\t * @return Factory or {@code null} if data does not start with any known magic\n")
+			.append("\t */\n")
+			.append("\tpublic static Factory byMagic(byte[] data, int offset, int length) {\n")
+			.append("\t\tFactory found = null;\n")
+			.append("\t\tint node = 0;\n")
+			.append("\t\tfor (int i = 0; i < length; i++) {\n")
+			.append("\t\t\tbyte[] keys = Trie.KEYS[node];\n")
+			.append("\t\t\tint next = -1;\n")
+			.append("\t\t\tfor (int k = 0; k < keys.length; k++) {\n")
+			.append("\t\t\t\tif (keys[k] == data[offset + i]) {\n")
+			.append("\t\t\t\t\tnext = Trie.NEXT[node][k];\n")
+			.append("\t\t\t\t\tbreak;\n")
+			.append("\t\t\t\t}\n")
+			.append("\t\t\t}\n")
+			.append("\t\t\tif (next < 0) {\n")
+			.append("\t\t\t\tbreak;\n")
+			.append("\t\t\t}\n")
+			.append("\t\t\tnode = next;\n")
+			.append("\t\t\tif (Trie.FACTORIES[node] != null) {\n")
+			.append("\t\t\t\tfound = Trie.FACTORIES[node];\n")
+			.append("\t\t\t}\n")
+			.append("\t\t}\n")
+			.append("\t\treturn found;\n")
+			.append("\t}\n")
+			.append('\n')
+			.append("\t/**\n")
+			.append("\t * Length of the longest known magic.\n")
+			.append("\t *\n")
+			.append("\t * @return Length in bytes\n")
+			.append("\t */\n")
+			.append("\tpublic static int maxMagicLength() {\n")
+			.append("\t\treturn ").append(trie.depth()).append(";\n")
+			.append("\t}\n")
+			.append('\n')
+			.append("\t/**\n")
+			.append("\t * Trie over magic bytes: children of every node with indexes of child nodes and factory of node.\n")
+			.append("\t */\n")
+			.append("\tprivate static final class Trie {\n")
+			.append("\t\tprivate static final byte[][] KEYS = {\n");
+		for (Trie.Node node : trie.nodes) {
+			java.append("\t\t\t{");
+			for (int i = 0; i < node.keys.size(); i++) {
+				java.append(i == 0 ? "" : ", ").append("(byte) ").append(node.keys.get(i));
+			}
+			java.append("},\n");
+		}
+		java
+			.append("\t\t};\n")
+			.append("\t\tprivate static final int[][] NEXT = {\n");
+		for (Trie.Node node : trie.nodes) {
+			java.append("\t\t\t{");
+			for (int i = 0; i < node.next.size(); i++) {
+				java.append(i == 0 ? "" : ", ").append(node.next.get(i));
+			}
+			java.append("},\n");
+		}
+		java
+			.append("\t\t};\n")
+			.append("\t\tprivate static final Factory[] FACTORIES = {\n");
+		for (Trie.Node node : trie.nodes) {
+			java.append("\t\t\t").append(node.id != null ? node.id.toUpperCase(Locale.ROOT) : "null").append(",\n");
+		}
+		return java
+			.append("\t\t};\n")
+			.append("\t}\n")
+			.append("}\n")
+			.toString();
+	}
+
+	private static String constant(Entry entry) {
+		return entry.getId().toUpperCase(Locale.ROOT);
+	}
+
+	private static String escape(String value) {
+		StringBuilder escaped = new StringBuilder(value.length());
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				escaped.append('\\').append(c);
+			} else if (c < ' ' || c > '~') {
+				escaped.append(format("\\u%04x", (int) c));
+			} else {
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	/**
+	 * Registered parser.
+	 */
+	public static final class Entry {
+		private final String id;
+		private final String className;
+		private final List<String> extensions;
+		private byte[] magic;
+
+		private Entry(String id, String className, List<String> extensions, byte[] magic) {
+			this.id = id;
+			this.className = className;
+			this.extensions = extensions;
+			this.magic = magic;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public List<String> getExtensions() {
+			return Collections.unmodifiableList(extensions);
+		}
+
+		/**
+		 * Get fixed leading bytes of format.
+		 *
+		 * @return Copy of magic bytes or {@code null} if format does not have them
+		 */
+		public byte[] getMagic() {
+			return magic != null ? magic.clone() : null;
+		}
+	}
+
+	/**
+	 * Trie which is built inside plugin and rendered as constant arrays.
+	 */
+	private static final class Trie {
+		private final List<Node> nodes = new ArrayList<>(Collections.singletonList(new Node()));
+		private int depth;
+
+		private void add(byte[] magic, String id) {
+			int current = 0;
+			for (byte key : magic) {
+				Node node = nodes.get(current);
+				int index = node.keys.indexOf(key);
+				if (index < 0) {
+					node.keys.add(key);
+					node.next.add(nodes.size());
+					current = nodes.size();
+					nodes.add(new Node());
+				} else {
+					current = node.next.get(index);
+				}
+			}
+			nodes.get(current).id = id;
+			depth = Math.max(depth, magic.length);
+		}
+
+		private int depth() {
+			return depth;
+		}
+
+		private static final class Node {
+			private final List<Byte> keys = new ArrayList<>();
+			private final List<Integer> next = new ArrayList<>();
+			private String id;
+		}
+	}
+}
@@ -0,0 +1,314 @@
+package name.valery1707.kaitai;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static name.valery1707.kaitai.KaitaiUtils.checkDirectoryIsReadable;
+
+/**
+ * Normalization of generated files for reproducible builds: the same specifications produce bit-identical tree of files.
+ *
+ * <p>
+ * Line endings of files are converted into {@code \n}, modification time of files and directories is set into fixed timestamp
+ * and digest of files is written into {@link #getDigestFile() digest file}, so external caches can use it as key.
+ * Only generated files are normalized: either listed explicitly or, for dedicated output directory, all files of tree
+ * except temporary files of plugin (names which start with {@code .kaitai-}).
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiReproducible {
+	/**
+	 * Suffix of name of digest file.
+	 */
+	public static final String DIGEST_SUFFIX = ".sha256";
+
+	private static final String TEMPORARY_PREFIX = ".kaitai-";
+	private static final String[] TIMESTAMP_PATTERNS = {"yyyy-MM-dd'T'HH:mm:ssXXX", "yyyy-MM-dd'T'HH:mm:ss.SSSXXX"};
+
+	private final Path root;
+	private Path digestFile;
+	private Long timestamp;
+
+	private KaitaiReproducible(Path root) {
+		this.root = root;
+	}
+
+	/**
+	 * Build {@code KaitaiReproducible} for tree of generated files.
+	 *
+	 * @param root Root directory of generated files
+	 * @return New {@code KaitaiReproducible}
+	 */
+	public static KaitaiReproducible reproducible(Path root) {
+		return new KaitaiReproducible(root);
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+
+	/**
+	 * Get file with digest of generated files.
+	 *
+	 * @return Path to configured file or to file {@code <root>.sha256} near the root directory
+	 */
+	public Path getDigestFile() {
+		return digestFile != null ? digestFile : root.resolveSibling(root.getFileName().toString() + DIGEST_SUFFIX);
+	}
+
+	/**
+	 * Set file with digest of generated files.
+	 *
+	 * @param digestFile Path to file or {@code null} for file {@code <root>.sha256} near the root directory
+	 */
+	public void setDigestFile(Path digestFile) {
+		this.digestFile = digestFile;
+	}
+
+	/**
+	 * Set file with digest of generated files.
+	 *
+	 * @param digestFile Path to file or {@code null} for file {@code <root>.sha256} near the root directory
+	 * @return self
+	 */
+	public KaitaiReproducible digestFile(Path digestFile) {
+		setDigestFile(digestFile);
+		return this;
+	}
+
+	/**
+	 * Get modification time of generated files.
+	 *
+	 * @return Milliseconds since epoch or {@code null} if modification time is not changed
+	 */
+	public Long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Set modification time of generated files.
+	 *
+	 * @param timestamp Milliseconds since epoch or {@code null} if modification time is not changed
+	 */
+	public void setTimestamp(Long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Set modification time of generated files.
+	 *
+	 * @param timestamp Milliseconds since epoch or {@code null} if modification time is not changed
+	 * @return self
+	 */
+	public KaitaiReproducible timestamp(Long timestamp) {
+		setTimestamp(timestamp);
+		return this;
+	}
+
+	/**
+	 * Parse timestamp in format of {@code project.build.outputTimestamp}:
+	 * ISO-8601 date-time with offset or count of seconds since epoch, single character disables timestamp.
+	 *
+	 * @param value Timestamp
+	 * @return Milliseconds since epoch or {@code null} if timestamp is not configured
+	 * @throws KaitaiException If timestamp has invalid format
+	 */
+	public static Long parseTimestamp(String value) throws KaitaiException {
+		if (value == null || value.trim().length() <= 1 && !value.trim().matches("\\d")) {
+			return null;
+		}
+		value = value.trim();
+		if (value.matches("\\d+")) {
+			return Long.parseLong(value) * 1000;
+		}
+		try {
+			return DateUtils.parseDateStrictly(value, TIMESTAMP_PATTERNS).getTime();
+		} catch (ParseException e) {
+			throw new KaitaiException(format(
+				"Invalid output timestamp '%s': expected ISO-8601 date-time with offset or count of seconds since epoch"
+				, value
+			)
+				, e
+			);
+		}
+	}
+
+	/**
+	 * Normalize all files inside root directory and write digest of them: root directory must contain only generated files.
+	 *
+	 * @param log Logger for messages
+	 * @return Digest of files
+	 * @throws KaitaiException If any file can not be read or written
+	 */
+	public String normalize(Logger log) throws KaitaiException {
+		checkDirectoryIsReadable(root);
+		final List<Path> files = new ArrayList<>();
+		Path base = root.toAbsolutePath().normalize();
+		try {
+			Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+					return isTemporary(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					if (!isTemporary(file)) {
+						files.add(file);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+			String digest = normalize(files, log);
+			if (timestamp != null) {
+				Files.setLastModifiedTime(base, FileTime.fromMillis(timestamp));
+			}
+			return digest;
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to normalize generated files: %s"
+				, base.toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+	}
+
+	/**
+	 * Normalize listed generated files inside root directory and write digest of them.
+	 * Other files inside root directory and root directory itself are not touched: it can be shared with not generated files.
+	 *
+	 * @param generated Generated files inside root directory
+	 * @param log       Logger for messages
+	 * @return Digest of files
+	 * @throws KaitaiException If any file can not be read or written
+	 */
+	public String normalize(Collection<Path> generated, Logger log) throws KaitaiException {
+		checkDirectoryIsReadable(root);
+		Map<String, String> files = new TreeMap<>();
+		Set<Path> directories = new TreeSet<>(Collections.reverseOrder());
+		FileTime time = timestamp != null ? FileTime.fromMillis(timestamp) : null;
+		Path base = root.toAbsolutePath().normalize();
+		try (KaitaiEvents.FileEvent event = KaitaiEvents.file("normalize", base)) {
+			for (Path path : generated) {
+				Path file = path.toAbsolutePath().normalize();
+				if (!file.startsWith(base) || !Files.isRegularFile(file)) {
+					continue;
+				}
+				byte[] content = Files.readAllBytes(file);
+				byte[] normalized = normalizeLineEndings(content);
+				if (normalized != content) {
+					Files.write(file, normalized);
+				}
+				if (time != null) {
+					Files.setLastModifiedTime(file, time);
+				}
+				files.put(base.relativize(file).toString().replace(File.separatorChar, '/'), KaitaiValidator.sha256(normalized));
+				for (Path dir = file.getParent(); !dir.equals(base); dir = dir.getParent()) {
+					directories.add(dir);
+				}
+			}
+			if (time != null) {
+				for (Path dir : directories) {
+					Files.setLastModifiedTime(dir, time);
+				}
+			}
+			event.files(files.size());
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to normalize generated files: %s"
+				, base.toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+		String digest = digest(files);
+		writeDigest(digest, log);
+		return digest;
+	}
+
+	private static boolean isTemporary(Path path) {
+		return path.getFileName() != null && path.getFileName().toString().startsWith(TEMPORARY_PREFIX);
+	}
+
+	/**
+	 * Convert line endings {@code \r\n} and {@code \r} into {@code \n}.
+	 *
+	 * @param content Content of file
+	 * @return The same array if content does not contain {@code \r}, converted copy otherwise
+	 */
+	static byte[] normalizeLineEndings(byte[] content) {
+		int count = 0;
+		for (byte b : content) {
+			if (b == '\r') {
+				count++;
+			}
+		}
+		if (count == 0) {
+			return content;
+		}
+		byte[] normalized = new byte[content.length];
+		int length = 0;
+		for (int i = 0; i < content.length; i++) {
+			if (content[i] == '\r') {
+				normalized[length++] = '\n';
+				if (i + 1 < content.length && content[i + 1] == '\n') {
+					i++;
+				}
+			} else {
+				normalized[length++] = content[i];
+			}
+		}
+		byte[] result = new byte[length];
+		System.arraycopy(normalized, 0, result, 0, length);
+		return result;
+	}
+
+	/**
+	 * Digest of tree: hash of sorted lines {@code <digest of file> <relative path>}, so it does not depend on location of tree.
+	 *
+	 * @param files Digests of files by relative paths
+	 * @return Digest of tree
+	 */
+	private static String digest(Map<String, String> files) {
+		StringBuilder listing = new StringBuilder();
+		for (Map.Entry<String, String> entry : files.entrySet()) {
+			listing.append(entry.getValue()).append(' ').append(entry.getKey()).append('\n');
+		}
+		return KaitaiValidator.sha256(listing.toString().getBytes(UTF_8));
+	}
+
+	private void writeDigest(String digest, Logger log) {
+		Path digestFile = getDigestFile();
+		try {
+			if (!Files.isRegularFile(digestFile) || !Files.readAllLines(digestFile, UTF_8).equals(Collections.singletonList(digest))) {
+				Files.createDirectories(digestFile.toAbsolutePath().getParent());
+				Files.write(digestFile, Collections.singletonList(digest), UTF_8);
+			}
+			if (timestamp != null) {
+				Files.setLastModifiedTime(digestFile, FileTime.fromMillis(timestamp));
+			}
+		} catch (IOException e) {
+			log.debug("Kaitai: fail to store digest of generated files: " + digestFile.toAbsolutePath(), e);
+		}
+	}
+}
@@ -0,0 +1,375 @@
+package name.valery1707.kaitai;
+
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.unmodifiableList;
+import static name.valery1707.kaitai.KaitaiUtils.*;
+
+/**
+ * Compiler of specifications which are known only at runtime: specification is generated by Kaitai compiler,
+ * compiled by Java compiler in memory and loaded into separate class loader.
+ *
+ * <p>
+ * Results are cached by hash of specification in LRU cache of {@link #getMaxEntries() limited size}.
+ * Concurrent requests of the same specification are compiled only once: all of them wait for the first one.
+ *
+ * <p>
+ * Specification must be self-contained: imports of other specifications are not supported.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiRuntimeCompiler {
+	/**
+	 * Default count of compiled specifications inside cache.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 64;
+
+	private final Path kaitai;
+	private final Path workDir;
+	private String packageName = "kaitai.runtime";
+	private List<String> classpath = defaultClasspath();
+	private ClassLoader parent = KaitaiRuntimeCompiler.class.getClassLoader();
+	private long executionTimeout = 5_000;
+	private Logger logger = NOPLogger.NOP_LOGGER;
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	private final LinkedHashMap<String, FutureTask<Compiled>> cache = new LinkedHashMap<String, FutureTask<Compiled>>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, FutureTask<Compiled>> eldest) {
+			return size() > maxEntries;
+		}
+	};
+
+	private KaitaiRuntimeCompiler(Path kaitai, Path workDir) {
+		this.kaitai = kaitai;
+		this.workDir = workDir;
+	}
+
+	/**
+	 * Build {@code KaitaiRuntimeCompiler} with preconfigured state.
+	 *
+	 * @param kaitai  Path to kaitai compiler runner
+	 * @param workDir Directory for temporary files of compiler
+	 * @return New {@code KaitaiRuntimeCompiler}
+	 * @throws KaitaiException If compiler is not executable or work directory is not writable
+	 */
+	public static KaitaiRuntimeCompiler compiler(Path kaitai, Path workDir) throws KaitaiException {
+		checkFileIsExecutable(kaitai);
+		checkDirectoryIsWritable(mkdirs(workDir));
+		return new KaitaiRuntimeCompiler(kaitai, workDir);
+	}
+
+	private static List<String> defaultClasspath() {
+		return Arrays.asList(System.getProperty("java.class.path", "").split(File.pathSeparator));
+	}
+
+	public Path getKaitai() {
+		return kaitai;
+	}
+
+	public Path getWorkDir() {
+		return workDir;
+	}
+
+	public String getPackageName() {
+		return packageName;
+	}
+
+	public void setPackageName(String packageName) {
+		this.packageName = packageName;
+	}
+
+	public KaitaiRuntimeCompiler packageName(String packageName) {
+		setPackageName(packageName);
+		return this;
+	}
+
+	public List<String> getClasspath() {
+		return unmodifiableList(classpath);
+	}
+
+	/**
+	 * Set classpath for Java compiler, it must contain Kaitai runtime library.
+	 *
+	 * @param classpath Classpath elements, by default classpath of current JVM
+	 */
+	public void setClasspath(List<String> classpath) {
+		this.classpath = new ArrayList<>(classpath);
+	}
+
+	public KaitaiRuntimeCompiler classpath(List<String> classpath) {
+		setClasspath(classpath);
+		return this;
+	}
+
+	public ClassLoader getParent() {
+		return parent;
+	}
+
+	/**
+	 * Set parent of class loaders of compiled specifications, it must load Kaitai runtime library.
+	 *
+	 * @param parent Parent class loader, by default class loader of plugin
+	 */
+	public void setParent(ClassLoader parent) {
+		this.parent = parent;
+	}
+
+	public KaitaiRuntimeCompiler parent(ClassLoader parent) {
+		setParent(parent);
+		return this;
+	}
+
+	public long getExecutionTimeout() {
+		return executionTimeout;
+	}
+
+	public void setExecutionTimeout(long executionTimeout) {
+		this.executionTimeout = executionTimeout;
+	}
+
+	public KaitaiRuntimeCompiler executionTimeout(long executionTimeout) {
+		setExecutionTimeout(executionTimeout);
+		return this;
+	}
+
+	public Logger getLogger() {
+		return logger;
+	}
+
+	public void setLogger(Logger logger) {
+		this.logger = logger;
+	}
+
+	public KaitaiRuntimeCompiler logger(Logger logger) {
+		setLogger(logger);
+		return this;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Set size of cache of compiled specifications: least recently used specifications are evicted.
+	 *
+	 * @param maxEntries Count of specifications
+	 */
+	public void setMaxEntries(int maxEntries) {
+		synchronized (cache) {
+			this.maxEntries = maxEntries;
+		}
+	}
+
+	public KaitaiRuntimeCompiler maxEntries(int maxEntries) {
+		setMaxEntries(maxEntries);
+		return this;
+	}
+
+	/**
+	 * Count of specifications inside cache, including ones which are compiling now.
+	 *
+	 * @return Size of cache
+	 */
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Compile specification and load generated classes or get them from cache.
+	 *
+	 * @param ksyYaml Content of specification
+	 * @return Loaded classes
+	 * @throws KaitaiException If specification can not be compiled or current thread was interrupted while waiting for it
+	 */
+	public Compiled compileAndLoad(final String ksyYaml) throws KaitaiException {
+		final String hash = hash(ksyYaml);
+		FutureTask<Compiled> task;
+		boolean owner = false;
+		synchronized (cache) {
+			task = cache.get(hash);
+			if (task == null) {
+				task = new FutureTask<>(new Callable<Compiled>() {
+					@Override
+					public Compiled call() throws KaitaiException {
+						return compile(hash, ksyYaml);
+					}
+				});
+				cache.put(hash, task);
+				owner = true;
+			}
+		}
+		if (owner) {
+			task.run();
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KaitaiException("Interrupted while waiting for compilation of specification " + hash, e);
+		} catch (ExecutionException e) {
+			//Failed compilation must not be cached: next request will try again
+			synchronized (cache) {
+				if (cache.get(hash) == task) {
+					cache.remove(hash);
+				}
+			}
+			if (e.getCause() instanceof KaitaiException) {
+				throw (KaitaiException) e.getCause();
+			}
+			throw new KaitaiException("Fail to compile specification " + hash, e.getCause());
+		}
+	}
+
+	private Compiled compile(String hash, String ksyYaml) throws KaitaiException {
+		Path dir;
+		try {
+			dir = Files.createTempDirectory(workDir, hash.substring(0, 16));
+		} catch (IOException e) {
+			throw new KaitaiException("Fail to create temp directory inside " + workDir.toFile().getAbsolutePath(), e);
+		}
+		try {
+			Path source = dir.resolve("spec.ksy");
+			String id = KaitaiSpec.parse(source, ksyYaml).getId();
+			if (id == null) {
+				throw new KaitaiException(source.toFile().getAbsolutePath() + ": /meta/id: required key is missing");
+			}
+			//Identifier is used as name of file: it must not escape temporary directory
+			if (!KaitaiValidator.IDENTIFIER.matcher(id).matches()) {
+				throw new KaitaiException(format(
+					"%s: /meta/id: invalid identifier: '%s', expected /%s/"
+					, source.toFile().getAbsolutePath()
+					, id
+					, KaitaiValidator.IDENTIFIER.pattern()
+				));
+			}
+			source = Files.write(dir.resolve(id + ".ksy"), ksyYaml.getBytes(UTF_8));
+			Path generatedRoot = KaitaiGenerator
+				.generator(kaitai, mkdirs(dir.resolve("generated")), packageName)
+				.withSource(source)
+				.executionTimeout(executionTimeout)
+				.generate(logger);
+			Map<String, byte[]> bytecode = KaitaiJavaCompiler
+				.compiler()
+				.withSource(scanFiles(generatedRoot, new String[]{"*.java"}, new String[0]))
+				.classpath(classpath)
+				.compileToMemory(logger);
+
+			MemoryClassLoader loader = new MemoryClassLoader(parent, bytecode);
+			Map<String, Class<?>> classes = new LinkedHashMap<>();
+			for (String name : bytecode.keySet()) {
+				classes.put(name, loader.loadClass(name));
+			}
+			Class<?> mainClass = classes.get(packageName + "." + KaitaiRegistry.javaClassName(id));
+			if (mainClass == null) {
+				throw new KaitaiException(format("Fail to find generated class of specification '%s' (%s)", id, hash));
+			}
+			return new Compiled(hash, id, mainClass, classes);
+		} catch (IOException | ClassNotFoundException | LinkageError e) {
+			throw new KaitaiException("Fail to compile specification " + hash, e);
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static String hash(String content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(UTF_8));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 must be supported by every JVM", e);
+		}
+	}
+
+	/**
+	 * Classes generated from single specification.
+	 */
+	public static final class Compiled {
+		private final String hash;
+		private final String id;
+		private final Class<?> mainClass;
+		private final Map<String, Class<?>> classes;
+
+		private Compiled(String hash, String id, Class<?> mainClass, Map<String, Class<?>> classes) {
+			this.hash = hash;
+			this.id = id;
+			this.mainClass = mainClass;
+			this.classes = Collections.unmodifiableMap(classes);
+		}
+
+		/**
+		 * Get SHA-256 hash of content of specification.
+		 *
+		 * @return Hash in hex form
+		 */
+		public String getHash() {
+			return hash;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		/**
+		 * Get class of top-level type of specification.
+		 *
+		 * @return Class with constructor from {@code KaitaiStream}
+		 */
+		public Class<?> getMainClass() {
+			return mainClass;
+		}
+
+		/**
+		 * Get all generated classes, including nested ones.
+		 *
+		 * @return Classes by binary names
+		 */
+		public Map<String, Class<?>> getClasses() {
+			return classes;
+		}
+	}
+
+	/**
+	 * Class loader of classes of single specification.
+	 */
+	private static final class MemoryClassLoader extends ClassLoader {
+		private final Map<String, byte[]> bytecode;
+
+		private MemoryClassLoader(ClassLoader parent, Map<String, byte[]> bytecode) {
+			super(parent);
+			this.bytecode = bytecode;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] content = bytecode.get(name);
+			if (content == null) {
+				throw new ClassNotFoundException(name);
+			}
+			return defineClass(name, content, 0, content.length);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package name.valery1707.kaitai;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.Mark;
+import org.yaml.snakeyaml.error.MarkedYAMLException;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.nodes.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Parsed <a href="http://doc.kaitai.io/ksy_reference.html">Kaitai Struct specification</a> ({@code .ksy} file)
+ * as tree of YAML nodes with positions inside source file.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiSpec {
+	private final Path path;
+	private final Node root;
+
+	private KaitaiSpec(Path path, Node root) {
+		this.path = path;
+		this.root = root;
+	}
+
+	/**
+	 * Parse specification from file.
+	 *
+	 * @param path Path to specification
+	 * @return Parsed specification
+	 * @throws KaitaiException If file can not be read or it is not valid YAML document
+	 */
+	public static KaitaiSpec parse(Path path) throws KaitaiException {
+		try (Reader reader = Files.newBufferedReader(path, UTF_8)) {
+			return parse(path, reader);
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to read file: %s"
+				, path.normalize().toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+	}
+
+	/**
+	 * Parse specification from content.
+	 *
+	 * @param path    Path to specification, used only in messages
+	 * @param content Content of specification
+	 * @return Parsed specification
+	 * @throws KaitaiException If content is not valid YAML document
+	 */
+	public static KaitaiSpec parse(Path path, String content) throws KaitaiException {
+		return parse(path, new StringReader(content));
+	}
+
+	private static KaitaiSpec parse(Path path, Reader reader) throws KaitaiException {
+		try {
+			return new KaitaiSpec(path, new Yaml().compose(reader));
+		} catch (MarkedYAMLException e) {
+			Mark mark = e.getProblemMark() != null ? e.getProblemMark() : e.getContextMark();
+			throw new KaitaiException(location(path, mark) + ": invalid YAML: " + e.getProblem(), e);
+		} catch (YAMLException e) {
+			throw new KaitaiException(format(
+				"%s: invalid YAML: %s"
+				, path.normalize().toFile().getAbsolutePath()
+				, e.getMessage()
+			)
+				, e
+			);
+		}
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Get root node of specification.
+	 *
+	 * @return Root node or {@code null} if specification is empty
+	 */
+	public Node getRoot() {
+		return root;
+	}
+
+	/**
+	 * Format position of node inside specification file as {@code path:line:column}.
+	 *
+	 * @param node Node of specification
+	 * @return Position of node
+	 */
+	public String location(Node node) {
+		return location(path, node != null ? node.getStartMark() : null);
+	}
+
+	private static String location(Path path, Mark mark) {
+		String file = path.normalize().toFile().getAbsolutePath();
+		if (mark == null) {
+			return file;
+		}
+		return file + ":" + (mark.getLine() + 1) + ":" + (mark.getColumn() + 1);
+	}
+
+	/**
+	 * Find value of key inside mapping node.
+	 *
+	 * @param node Mapping node
+	 * @param key  Key
+	 * @return Value node or {@code null} if {@code node} is not mapping or it does not contain {@code key}
+	 */
+	public static Node child(Node node, String key) {
+		if (!(node instanceof MappingNode)) {
+			return null;
+		}
+		for (NodeTuple tuple : ((MappingNode) node).getValue()) {
+			if (key.equals(scalar(tuple.getKeyNode()))) {
+				return tuple.getValueNode();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Find value by path of keys inside nested mapping nodes.
+	 *
+	 * @param node Mapping node
+	 * @param keys Path of keys
+	 * @return Value node or {@code null} if path is absent
+	 */
+	public static Node child(Node node, String... keys) {
+		Node current = node;
+		for (String key : keys) {
+			current = child(current, key);
+		}
+		return current;
+	}
+
+	/**
+	 * Get value of scalar node.
+	 *
+	 * @param node Node
+	 * @return Value of scalar node or {@code null} if node is not scalar
+	 */
+	public static String scalar(Node node) {
+		return node instanceof ScalarNode ? ((ScalarNode) node).getValue() : null;
+	}
+
+	/**
+	 * Get items of sequence node.
+	 *
+	 * @param node Node
+	 * @return Items of sequence node or empty list if node is not sequence
+	 */
+	public static List<Node> items(Node node) {
+		return node instanceof SequenceNode ? ((SequenceNode) node).getValue() : Collections.<Node>emptyList();
+	}
+
+	/**
+	 * Get scalar values of node which can be scalar or sequence of scalars.
+	 *
+	 * @param node Node
+	 * @return Scalar values
+	 */
+	public static List<String> scalars(Node node) {
+		List<String> values = new ArrayList<>();
+		if (node instanceof ScalarNode) {
+			values.add(scalar(node));
+		}
+		for (Node item : items(node)) {
+			if (item instanceof ScalarNode) {
+				values.add(scalar(item));
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Get entries of mapping node.
+	 *
+	 * @param node Node
+	 * @return Entries of mapping node or empty list if node is not mapping
+	 */
+	public static List<NodeTuple> entries(Node node) {
+		return node instanceof MappingNode ? ((MappingNode) node).getValue() : Collections.<NodeTuple>emptyList();
+	}
+
+	/**
+	 * Get identifier of specification from {@code meta/id}.
+	 *
+	 * @return Identifier or {@code null} if it is absent
+	 */
+	public String getId() {
+		return scalar(child(root, "meta", "id"));
+	}
+
+	/**
+	 * Get list of imported specifications from {@code meta/imports}.
+	 *
+	 * @return Imported specifications as they are written in specification
+	 */
+	public List<String> getImports() {
+		return scalars(child(root, "meta", "imports"));
+	}
+
+	/**
+	 * Check that specification allows unknown types by {@code meta/ks-opaque-types}.
+	 *
+	 * @return {@code true} if unknown types are treated as opaque external classes
+	 */
+	public boolean isOpaqueTypes() {
+		return "true".equals(scalar(child(root, "meta", "ks-opaque-types")));
+	}
+}
@@ -0,0 +1,176 @@
+package name.valery1707.kaitai;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static name.valery1707.kaitai.KaitaiUtils.delete;
+import static name.valery1707.kaitai.KaitaiUtils.mkdirs;
+
+/**
+ * Deletion of directories and files out of critical path of build.
+ *
+ * <p>
+ * Path is renamed into trash directory {@value #TRASH_DIR} near it (so rename stays inside the same filesystem and is cheap)
+ * and deleted by background daemon thread. Before exit of JVM all paths from trash are deleted by shutdown hook.
+ * Content of trash which was left by crashed builds is deleted on the first usage of the same trash directory.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiTrash {
+	/**
+	 * Name of trash directory.
+	 */
+	public static final String TRASH_DIR = ".kaitai-trash";
+
+	/**
+	 * Time which shutdown hook waits for deletion of trash.
+	 */
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 60_000;
+
+	private static final Object LOCK = new Object();
+	private static final BlockingQueue<Path> QUEUE = new LinkedBlockingQueue<>();
+	private static final Set<Path> SWEPT = new HashSet<>();
+	private static int pending = 0;
+	private static Thread worker;
+
+	private KaitaiTrash() {
+	}
+
+	/**
+	 * Delete path in background: file or entry directory.
+	 * Path is free for reuse right after return from this method.
+	 *
+	 * @param path Path for delete
+	 * @throws KaitaiException If path can not be moved into trash and can not be deleted synchronously
+	 */
+	public static void deleteLater(Path path) throws KaitaiException {
+		if (!Files.exists(path)) {
+			return;
+		}
+		path = path.toAbsolutePath().normalize();
+		Path trash = path.resolveSibling(TRASH_DIR);
+		Path target = trash.resolve(path.getFileName().toString() + "-" + UUID.randomUUID());
+		try {
+			mkdirs(trash);
+			Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | KaitaiException e) {
+			//Trash is not usable: delete in place
+			delete(path);
+			return;
+		}
+		synchronized (LOCK) {
+			if (SWEPT.add(trash)) {
+				sweep(trash, target);
+			}
+			enqueue(target);
+		}
+	}
+
+	/**
+	 * Schedule deletion of content of trash which was left by previous builds.
+	 *
+	 * @param trash  Trash directory
+	 * @param actual Path which is already scheduled by current build
+	 */
+	private static void sweep(Path trash, Path actual) {
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(trash)) {
+			for (Path child : children) {
+				if (!child.equals(actual)) {
+					enqueue(child);
+				}
+			}
+		} catch (IOException e) {
+			//Leftovers will be swept by next build
+		}
+	}
+
+	private static void enqueue(Path path) {
+		synchronized (LOCK) {
+			pending++;
+			QUEUE.add(path);
+			if (worker == null) {
+				worker = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							while (true) {
+								process(QUEUE.take());
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				}, "kaitai-trash");
+				worker.setDaemon(true);
+				worker.start();
+				Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+					@Override
+					public void run() {
+						await(SHUTDOWN_TIMEOUT_MILLIS);
+					}
+				}, "kaitai-trash-shutdown"));
+			}
+		}
+	}
+
+	private static void process(Path path) {
+		try {
+			delete(path);
+		} catch (KaitaiException e) {
+			//Path is still inside trash: it will be swept by next build
+		} finally {
+			synchronized (LOCK) {
+				pending--;
+				LOCK.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Count of paths which are scheduled for deletion but not deleted yet.
+	 *
+	 * @return Count of paths
+	 */
+	public static int pending() {
+		synchronized (LOCK) {
+			return pending;
+		}
+	}
+
+	/**
+	 * Delete scheduled paths in current thread together with background thread and wait until all of them are deleted.
+	 *
+	 * @param timeoutMillis Maximum time of waiting
+	 * @return {@code true} if all scheduled paths are deleted
+	 */
+	public static boolean await(long timeoutMillis) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		Path path;
+		while ((path = QUEUE.poll()) != null) {
+			process(path);
+		}
+		synchronized (LOCK) {
+			while (pending > 0) {
+				long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (left <= 0) {
+					return false;
+				}
+				try {
+					LOCK.wait(left);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
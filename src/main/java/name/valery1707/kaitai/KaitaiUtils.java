@@ -15,6 +15,8 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.*;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -101,13 +103,11 @@ public final class KaitaiUtils {
 	 */
 	public static List<Path> scanFiles(Path root, String[] includes, String[] excludes) throws KaitaiException {
 		checkDirectoryIsReadable(root);
-		FilenameFilter filter = FileFilterUtils.and(
-			new WildcardFileFilter(includes)
-			, FileFilterUtils.notFileFilter(new WildcardFileFilter(excludes))
-		);
-		try {
+		FilenameFilter filter = fileFilter(includes, excludes);
+		try (KaitaiEvents.FileEvent event = KaitaiEvents.file("scan", root)) {
 			ArrayList<Path> list = new ArrayList<>();
 			Files.walkFileTree(root.normalize(), new FilterFileVisitor(filter, list));
+			event.files(list.size());
 			return list;
 		} catch (IOException e) {
 			throw new KaitaiException(format(
@@ -119,6 +119,21 @@ public final class KaitaiUtils {
 		}
 	}
 
+	/**
+	 * Build filter of file names which matches with any {@code includes} wildcard mask and don't matches with any {@code excludes} wildcard mask.
+	 *
+	 * @param includes Includes wildcard mask
+	 * @param excludes Excludes wildcard mask
+	 * @return Filter of file names, directory argument of filter is ignored
+	 * @see #scanFiles(Path, String[], String[])
+	 */
+	public static FilenameFilter fileFilter(String[] includes, String[] excludes) {
+		return FileFilterUtils.and(
+			new WildcardFileFilter(includes)
+			, FileFilterUtils.notFileFilter(new WildcardFileFilter(excludes))
+		);
+	}
+
 	/**
 	 * Check path for be regular writable directory.
 	 *
@@ -178,6 +193,26 @@ public final class KaitaiUtils {
 		}
 	}
 
+	/**
+	 * Create unique directory inside {@code dir}.
+	 *
+	 * @param dir        Parent directory, it is created if not exists
+	 * @param prefix     Prefix for name
+	 * @param attributes Attributes for created directory
+	 * @return Path to created directory
+	 * @throws KaitaiException If directory can not be created
+	 */
+	public static Path createTempDirectory(Path dir, String prefix, FileAttribute<?>... attributes) throws KaitaiException {
+		try {
+			return Files.createTempDirectory(mkdirs(dir), prefix, attributes);
+		} catch (IOException e) {
+			throw new KaitaiException(
+				"Fail to create temp directory inside " + dir.normalize().toFile().getAbsolutePath()
+				, e
+			);
+		}
+	}
+
 	/**
 	 * Remove path: file or entry directory.
 	 *
@@ -188,7 +223,7 @@ public final class KaitaiUtils {
 		if (!Files.exists(path)) {
 			return;
 		}
-		try {
+		try (KaitaiEvents.FileEvent ignored = KaitaiEvents.file("delete", path)) {
 			//todo Symbolic
 			if (Files.isRegularFile(path)) {
 				Files.delete(path);
@@ -229,7 +264,7 @@ public final class KaitaiUtils {
 	 * @throws KaitaiException If path can not be moved
 	 */
 	public static void move(Path source, Path target) throws KaitaiException {
-		try {
+		try (KaitaiEvents.FileEvent ignored = KaitaiEvents.file("move", target)) {
 			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
 		} catch (IOException e) {
 			try {
@@ -289,16 +324,17 @@ public final class KaitaiUtils {
 			return;
 		}
 		Path temp = target.resolveSibling(target.getFileName().toString() + ".tmp");
-		delete(temp);
+		KaitaiTrash.deleteLater(temp);
 		log.info(format(
 			"KaiTai distribution: Downloading: %s"
 			, source
 		));
 		try (
+			KaitaiEvents.FileEvent event = KaitaiEvents.file("download", target);
 			InputStream is = source.openStream();
 			OutputStream os = Files.newOutputStream(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
 		) {
-			IOUtils.copy(is, os);
+			event.bytes(IOUtils.copyLarge(is, os));
 		} catch (IOException e) {
 			throw new KaitaiException(format(
 				"Fail to download '%s' into '%s'"
@@ -338,21 +374,26 @@ public final class KaitaiUtils {
 			, zip.normalize().toFile().getAbsolutePath()
 		));
 		Path temp = dir.resolveSibling(dir.getFileName().toString() + "-tmp");
-		delete(temp);
+		KaitaiTrash.deleteLater(temp);
 		try (
+			KaitaiEvents.FileEvent event = KaitaiEvents.file("unpack", dir);
 			InputStream is = Files.newInputStream(zip);
 			ZipInputStream zis = new ZipInputStream(is);
 		) {
 			Files.createDirectory(temp);
 			ZipEntry entry;
+			long files = 0;
+			long bytes = 0;
 			while ((entry = zis.getNextEntry()) != null) {
 				if (entry.isDirectory()) {
 					continue;
 				}
 				Path current = temp.resolve(removeStart(entry.getName(), "/"));
 				Files.createDirectories(current.getParent());
-				Files.copy(zis, current, StandardCopyOption.REPLACE_EXISTING);
+				bytes += Files.copy(zis, current, StandardCopyOption.REPLACE_EXISTING);
+				files++;
 			}
+			event.files(files).bytes(bytes);
 		} catch (IOException e) {
 			throw new KaitaiException(format(
 				"Fail to extract content of '%s'"
@@ -403,6 +444,27 @@ public final class KaitaiUtils {
 		return mkdirs(cache);
 	}
 
+	/**
+	 * Prepare directory for cache and evict outdated distributions from it.
+	 *
+	 * @param cache   Path for cache directory
+	 * @param maxSize Maximum total size of cache in bytes, negative value means unlimited
+	 * @param maxAge  Maximum age of last access to cached distribution in millis, negative value means unlimited
+	 * @param log     Logger for messages
+	 * @return Path to created directory
+	 * @throws KaitaiException If any io-exception was occurs
+	 * @see KaitaiCache#evict(Logger)
+	 */
+	public static Path prepareCache(Path cache, long maxSize, long maxAge, Logger log) throws KaitaiException {
+		Path dir = prepareCache(cache, log);
+		KaitaiCache
+			.cache(dir)
+			.maxSize(maxSize)
+			.maxAge(maxAge)
+			.evict(log);
+		return dir;
+	}
+
 	private static final String KAITAI_START_SCRIPT = "kaitai-struct-compiler.bat";
 	private static final Map<Boolean, String> SCRIPT_SUFFIX_REMOVER = Collections.unmodifiableMap(new HashMap<Boolean, String>() {
 		{
@@ -427,10 +489,35 @@ public final class KaitaiUtils {
 	 * @throws KaitaiException If any io-exception was occurs
 	 */
 	public static Path downloadKaitai(URL url, Path cacheDir, Logger log) throws KaitaiException {
+		return downloadKaitai(url, cacheDir, log, KaitaiMetrics.metrics());
+	}
+
+	/**
+	 * Download Kaitai distribution into cache directory and unzip it with measuring of every step.
+	 *
+	 * @param url      URL of distribution
+	 * @param cacheDir Directory for caching
+	 * @param log      Logger for messages
+	 * @param metrics  Metrics for measuring of steps
+	 * @return Path into kaitai compiler executable
+	 * @throws KaitaiException If any io-exception was occurs
+	 * @see #downloadKaitai(URL, Path, Logger)
+	 */
+	public static Path downloadKaitai(URL url, Path cacheDir, Logger log, KaitaiMetrics metrics) throws KaitaiException {
 		Path distZip = cacheDir.resolve(FilenameUtils.getName(url.getFile()));
-		download(url, distZip, log);
-		Path dist = unpack(distZip, log);
-		List<Path> bats = scanFiles(dist, new String[]{KAITAI_START_SCRIPT}, new String[0]);
+		try (KaitaiMetrics.Phase phase = metrics.start("download")) {
+			download(url, distZip, log);
+			phase.bytes(size(distZip));
+		}
+		Path dist;
+		try (KaitaiMetrics.Phase ignored = metrics.start("unpack")) {
+			dist = unpack(distZip, log);
+		}
+		List<Path> bats;
+		try (KaitaiMetrics.Phase phase = metrics.start("start-script")) {
+			bats = scanFiles(dist, new String[]{KAITAI_START_SCRIPT}, new String[0]);
+			phase.files(bats.size());
+		}
 		if (bats.size() != 1) {
 			throw new KaitaiException(format(
 				"Fail to find start script '%s' in Kaitai distribution: %s"
@@ -443,6 +530,46 @@ public final class KaitaiUtils {
 		return bat.resolveSibling(bat.getFileName().toString().replace(suffixToRemove, ""));
 	}
 
+	/**
+	 * Calculate total size of files.
+	 *
+	 * @param files Paths to files
+	 * @return Total size in bytes, unreadable files are ignored
+	 */
+	public static long size(Collection<Path> files) {
+		long size = 0;
+		for (Path file : files) {
+			size += Math.max(0, size(file));
+		}
+		return size;
+	}
+
+	private static long size(Path file) {
+		try {
+			return Files.size(file);
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Create factory of daemon threads with names started with {@code prefix}.
+	 *
+	 * @param prefix Prefix for thread names
+	 * @return Thread factory
+	 */
+	public static ThreadFactory daemonThreadFactory(final String prefix) {
+		final AtomicInteger counter = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
 	private static class FilterFileVisitor extends SimpleFileVisitor<Path> {
 		private final FilenameFilter filter;
 		private final List<Path> target;
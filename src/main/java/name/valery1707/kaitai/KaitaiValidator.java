@@ -0,0 +1,420 @@
+package name.valery1707.kaitai;
+
+import org.slf4j.Logger;
+import org.yaml.snakeyaml.nodes.MappingNode;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.nodes.SequenceNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static name.valery1707.kaitai.KaitaiSpec.*;
+import static name.valery1707.kaitai.KaitaiUtils.daemonThreadFactory;
+import static name.valery1707.kaitai.KaitaiUtils.mkdirs;
+import static name.valery1707.kaitai.KaitaiUtils.move;
+
+/**
+ * Fast structural validation of Kaitai specifications before start of compiler.
+ *
+ * <p>
+ * Only problems which compiler definitely rejects are reported:
+ * invalid YAML, absent {@code meta/id}, invalid identifiers, invalid structure of {@code seq}/{@code instances}/{@code types}
+ * and references onto unknown types.
+ *
+ * <p>
+ * Content hashes of successfully validated specifications are cached, so unchanged files are not parsed again.
+ * Cache contains only hashes of the last validated specifications, so it does not grow with history of changes.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiValidator {
+	static final Pattern IDENTIFIER = Pattern.compile("^[a-z][a-z0-9_]*$");
+	private static final Pattern BUILTIN_TYPE = Pattern.compile("^(([us][1248]|f[48])(le|be)?|b[1-9][0-9]*(le|be)?|strz?|bytes)$");
+
+	/**
+	 * Hashes of the last successfully validated content of specifications inside current JVM by absolute paths:
+	 * only the last state of every specification is kept, so memory is bounded by count of specifications.
+	 */
+	private static final ConcurrentMap<String, String> VALIDATED = new ConcurrentHashMap<>();
+
+	private Boolean opaqueTypes;
+	private Path cacheFile;
+
+	/**
+	 * Build {@code KaitaiValidator} with default state.
+	 *
+	 * @return New {@code KaitaiValidator}
+	 */
+	public static KaitaiValidator validator() {
+		return new KaitaiValidator();
+	}
+
+	private KaitaiValidator() {
+	}
+
+	/**
+	 * Get opaque types mode.
+	 *
+	 * @return Opaque types mode
+	 */
+	public Boolean getOpaqueTypes() {
+		return opaqueTypes;
+	}
+
+	/**
+	 * Set opaque types mode: references onto unknown types are allowed if it is enabled.
+	 *
+	 * @param opaqueTypes Opaque types mode
+	 */
+	public void setOpaqueTypes(Boolean opaqueTypes) {
+		this.opaqueTypes = opaqueTypes;
+	}
+
+	/**
+	 * Set opaque types mode: references onto unknown types are allowed if it is enabled.
+	 *
+	 * @param opaqueTypes Opaque types mode
+	 * @return self
+	 */
+	public KaitaiValidator opaqueTypes(Boolean opaqueTypes) {
+		setOpaqueTypes(opaqueTypes);
+		return this;
+	}
+
+	/**
+	 * Get file for storing hashes of successfully validated specifications between builds.
+	 *
+	 * @return Cache file or {@code null} if cache is stored only in memory
+	 */
+	public Path getCacheFile() {
+		return cacheFile;
+	}
+
+	/**
+	 * Set file for storing hashes of successfully validated specifications between builds.
+	 *
+	 * @param cacheFile Cache file or {@code null} if cache is stored only in memory
+	 */
+	public void setCacheFile(Path cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * Set file for storing hashes of successfully validated specifications between builds.
+	 *
+	 * @param cacheFile Cache file or {@code null} if cache is stored only in memory
+	 * @return self
+	 */
+	public KaitaiValidator cacheFile(Path cacheFile) {
+		setCacheFile(cacheFile);
+		return this;
+	}
+
+	/**
+	 * Validate specifications in parallel.
+	 *
+	 * @param sources Paths to specifications
+	 * @param log     Logger for messages
+	 * @throws KaitaiException If any specification is invalid, message contains all found problems
+	 */
+	public void validate(Collection<Path> sources, Logger log) throws KaitaiException {
+		final Set<String> cached = loadCache();
+		final Set<String> actual = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		int threads = Math.max(1, Math.min(sources.size(), Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads, daemonThreadFactory("kaitai-validator"));
+		try {
+			Map<Path, Future<List<String>>> results = new LinkedHashMap<>();
+			for (final Path source : sources) {
+				results.put(source, executor.submit(new Callable<List<String>>() {
+					@Override
+					public List<String> call() throws KaitaiException {
+						return validateCached(source, cached, actual);
+					}
+				}));
+			}
+			List<String> errors = new ArrayList<>();
+			for (Map.Entry<Path, Future<List<String>>> result : results.entrySet()) {
+				errors.addAll(await(result.getKey(), result.getValue()));
+			}
+			if (!actual.equals(cached)) {
+				storeCache(actual, log);
+			}
+			if (!errors.isEmpty()) {
+				for (String error : errors) {
+					log.error(error);
+				}
+				StringBuilder message = new StringBuilder("Fail to validate kaitai specifications:");
+				for (String error : errors) {
+					message.append("\n").append(error);
+				}
+				throw new KaitaiException(message.toString());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Validate single specification.
+	 *
+	 * @param spec Parsed specification
+	 * @return List of found problems in format {@code path:line:column: /yaml/path: message}
+	 */
+	public List<String> validate(KaitaiSpec spec) {
+		Context context = new Context(spec, Boolean.TRUE.equals(opaqueTypes) || spec.isOpaqueTypes() || !spec.getImports().isEmpty());
+		Node root = spec.getRoot();
+		if (!(root instanceof MappingNode)) {
+			context.error(root, "", "expected map");
+			return context.errors;
+		}
+		Node meta = child(root, "meta");
+		if (meta == null) {
+			context.error(root, "/meta", "required key is missing");
+		} else if (!(meta instanceof MappingNode)) {
+			context.error(meta, "/meta", "expected map");
+		} else {
+			Node id = child(meta, "id");
+			if (id == null) {
+				context.error(meta, "/meta/id", "required key is missing");
+			} else {
+				context.identifier(id, "/meta/id", "invalid meta ID");
+			}
+		}
+		Deque<Node> scopes = new ArrayDeque<>();
+		validateType(context, root, "", scopes);
+		return context.errors;
+	}
+
+	private static List<String> await(Path source, Future<List<String>> future) throws KaitaiException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KaitaiException("Interrupted while validating: " + source, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof KaitaiException) {
+				return Collections.singletonList(e.getCause().getMessage());
+			}
+			throw new KaitaiException("Fail to validate: " + source, e.getCause());
+		}
+	}
+
+	private List<String> validateCached(Path source, Set<String> cached, Set<String> actual) throws KaitaiException {
+		byte[] content;
+		try {
+			content = Files.readAllBytes(source);
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to read file: %s"
+				, source.normalize().toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+		String key = sha256(content) + (Boolean.TRUE.equals(opaqueTypes) ? "+opaque" : "");
+		String path = source.toAbsolutePath().normalize().toString();
+		if (key.equals(VALIDATED.get(path)) || cached.contains(key)) {
+			VALIDATED.put(path, key);
+			actual.add(key);
+			return Collections.emptyList();
+		}
+		List<String> errors = validate(KaitaiSpec.parse(source, new String(content, UTF_8)));
+		if (errors.isEmpty()) {
+			VALIDATED.put(path, key);
+			actual.add(key);
+		} else {
+			VALIDATED.remove(path);
+		}
+		return errors;
+	}
+
+	private void validateType(Context context, Node type, String path, Deque<Node> scopes) {
+		scopes.push(type);
+		Node seq = child(type, "seq");
+		if (seq != null) {
+			if (!(seq instanceof SequenceNode)) {
+				context.error(seq, path + "/seq", "expected array");
+			} else {
+				List<Node> items = items(seq);
+				for (int i = 0; i < items.size(); i++) {
+					validateAttribute(context, items.get(i), path + "/seq/" + i, "invalid attribute ID", scopes);
+				}
+			}
+		}
+		Node instances = child(type, "instances");
+		if (instances != null) {
+			if (!(instances instanceof MappingNode)) {
+				context.error(instances, path + "/instances", "expected map");
+			} else {
+				for (NodeTuple instance : entries(instances)) {
+					String name = scalar(instance.getKeyNode());
+					context.identifier(instance.getKeyNode(), path + "/instances/" + name, "invalid instance name");
+					validateAttribute(context, instance.getValueNode(), path + "/instances/" + name, null, scopes);
+				}
+			}
+		}
+		Node types = child(type, "types");
+		if (types != null) {
+			if (!(types instanceof MappingNode)) {
+				context.error(types, path + "/types", "expected map");
+			} else {
+				for (NodeTuple nested : entries(types)) {
+					String name = scalar(nested.getKeyNode());
+					context.identifier(nested.getKeyNode(), path + "/types/" + name, "invalid type name");
+					if (!(nested.getValueNode() instanceof MappingNode)) {
+						context.error(nested.getValueNode(), path + "/types/" + name, "expected map");
+					} else {
+						validateType(context, nested.getValueNode(), path + "/types/" + name, scopes);
+					}
+				}
+			}
+		}
+		scopes.pop();
+	}
+
+	private void validateAttribute(Context context, Node attribute, String path, String idMessage, Deque<Node> scopes) {
+		if (!(attribute instanceof MappingNode)) {
+			context.error(attribute, path, "expected map");
+			return;
+		}
+		Node id = child(attribute, "id");
+		if (id != null && idMessage != null) {
+			context.identifier(id, path + "/id", idMessage);
+		}
+		Node type = child(attribute, "type");
+		if (type == null) {
+			return;
+		}
+		if (type instanceof MappingNode) {
+			for (NodeTuple option : entries(child(type, "cases"))) {
+				validateTypeReference(context, option.getValueNode(), path + "/type/cases/" + scalar(option.getKeyNode()), scopes);
+			}
+		} else {
+			validateTypeReference(context, type, path + "/type", scopes);
+		}
+	}
+
+	private void validateTypeReference(Context context, Node reference, String path, Deque<Node> scopes) {
+		String name = scalar(reference);
+		if (name == null || context.unknownTypesAllowed) {
+			return;
+		}
+		//Remove parameters of parametrized types: `type_name(arg1, arg2)`
+		int params = name.indexOf('(');
+		if (params >= 0) {
+			name = name.substring(0, params);
+		}
+		name = name.trim();
+		if (BUILTIN_TYPE.matcher(name).matches() || resolve(context, name, scopes)) {
+			return;
+		}
+		context.error(reference, path, format(
+			"unable to find type '%s'"
+			, name
+		));
+	}
+
+	private static boolean resolve(Context context, String name, Deque<Node> scopes) {
+		String[] parts = name.split("::");
+		if (parts[0].equals(context.spec.getId())) {
+			return parts.length == 1 || resolveNested(context.spec.getRoot(), parts, 1);
+		}
+		for (Node scope : scopes) {
+			Node found = child(scope, "types", parts[0]);
+			if (found != null) {
+				return resolveNested(found, parts, 1);
+			}
+		}
+		return false;
+	}
+
+	private static boolean resolveNested(Node type, String[] parts, int from) {
+		Node current = type;
+		for (int i = from; i < parts.length; i++) {
+			current = child(current, "types", parts[i]);
+			if (current == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Set<String> loadCache() {
+		Set<String> cached = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		if (cacheFile != null && Files.isRegularFile(cacheFile)) {
+			try {
+				cached.addAll(Files.readAllLines(cacheFile, UTF_8));
+			} catch (IOException ignored) {
+				//Broken cache is same as absent cache
+			}
+		}
+		return cached;
+	}
+
+	private void storeCache(Set<String> actual, Logger log) {
+		if (cacheFile == null) {
+			return;
+		}
+		Path temp = cacheFile.resolveSibling(cacheFile.getFileName().toString() + ".tmp");
+		try {
+			mkdirs(cacheFile.getParent());
+			Files.write(temp, new TreeSet<>(actual), UTF_8);
+			move(temp, cacheFile);
+		} catch (IOException | KaitaiException e) {
+			log.debug("Kaitai: fail to store validation cache: " + cacheFile.toAbsolutePath(), e);
+		}
+	}
+
+	static String sha256(byte[] content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not supported", e);
+		}
+	}
+
+	private static final class Context {
+		private final KaitaiSpec spec;
+		private final boolean unknownTypesAllowed;
+		private final List<String> errors = new ArrayList<>();
+
+		private Context(KaitaiSpec spec, boolean unknownTypesAllowed) {
+			this.spec = spec;
+			this.unknownTypesAllowed = unknownTypesAllowed;
+		}
+
+		private void error(Node node, String path, String message) {
+			errors.add(format(
+				"%s: %s: %s"
+				, spec.location(node)
+				, path.isEmpty() ? "/" : path
+				, message
+			));
+		}
+
+		private void identifier(Node node, String path, String message) {
+			String value = scalar(node);
+			if (value == null || !IDENTIFIER.matcher(value).matches()) {
+				error(node, path, format(
+					"%s: '%s', expected /%s/"
+					, message
+					, value
+					, IDENTIFIER.pattern()
+				));
+			}
+		}
+	}
+}
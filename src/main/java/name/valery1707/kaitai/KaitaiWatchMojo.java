@@ -0,0 +1,214 @@
+package name.valery1707.kaitai;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+import static name.valery1707.kaitai.KaitaiUtils.*;
+
+/**
+ * Watch Kaitai specifications and regenerate Java-classes on every change.
+ *
+ * <p>
+ * Distribution is prepared and compiler version is checked only once at start of goal,
+ * every change regenerates only changed specifications and specifications which import them.
+ * After removal or renaming of specification all specifications are regenerated into clean staging directory
+ * and files which were generated during watching, but are not generated anymore, are removed from output.
+ * Goal runs until Maven is stopped.
+ *
+ * <p>
+ * Dependencies of project for {@code dependencySources}/{@code dependencyImports} are resolved by goal itself once at start of goal.
+ *
+ * @see KaitaiMojo
+ */
+@Mojo(
+	name = "watch"
+	, requiresProject = true
+)
+public class KaitaiWatchMojo extends KaitaiMojo {
+	/**
+	 * Quiet interval after last change of files before start of regeneration: in milliseconds.
+	 * Editors usually write file in several steps, all of them are collapsed into single regeneration.
+	 *
+	 * @since 0.1.7
+	 */
+	@Parameter(property = "kaitai.watch.debounce", defaultValue = "" + KaitaiWatcher.DEFAULT_DEBOUNCE)
+	private long debounce;
+
+	/**
+	 * Executes the plugin, to regenerate POJOs on every change of sources.
+	 */
+	@Override
+	public void execute() throws MojoExecutionException {
+		try {
+			executeInt();
+		} catch (KaitaiException e) {
+			throw new MojoExecutionException(e.getMessage(), e);
+		}
+	}
+
+	private void executeInt() throws KaitaiException {
+		if (skip) {
+			getLog().info("Skip KaiTai watch: skip=true");
+			return;
+		}
+
+		Path root = sourceDirectory.toPath().normalize();
+		checkDirectoryIsReadable(root);
+		Logger logger = createLogger();
+		configureProcessLimit();
+		URL url = prepareUrl(this.url, version);
+		try (
+			KaitaiCache.Lease ignored = leaseDistribution(url);
+			KaitaiWatcher watcher = KaitaiWatcher.watcher(root, includes, excludes).debounce(debounce)
+		) {
+			Path kaitai = prepareDistribution(url, logger, KaitaiMetrics.metrics());
+			KaitaiGenerator
+				.generator(kaitai, kaitai.getParent(), "kaitai")
+				.executionTimeout(executionTimeout)
+				.noVersionCheck(noVersionCheck)
+				.checkVersion(logger);
+
+			getLog().info(format(
+				"Kaitai: watch: %s (include: %s; exclude: %s), stop with Ctrl+C"
+				, root.toFile().getAbsolutePath()
+				, Arrays.toString(includes)
+				, Arrays.toString(excludes)
+			));
+			//Dependencies are not changed while watching
+			List<Path> dependencies = resolveDependencies(logger);
+			List<Path> source = scanFiles(root, includes, excludes);
+			source.addAll(dependencies);
+			//Relative paths of files which were generated during watching
+			Set<Path> generated = new HashSet<>();
+			boolean full = !regenerate(kaitai, source, source, true, generated, logger);
+			while (!Thread.currentThread().isInterrupted()) {
+				final Set<Path> changed = watcher.await();
+				List<Path> previous = source;
+				source = scanFiles(root, includes, excludes);
+				source.addAll(dependencies);
+				//Outputs of removed specifications can be found only by full regeneration
+				full |= !new HashSet<>(source).containsAll(previous);
+				List<Path> affected = full ? source : KaitaiWatcher.affected(changed, source);
+				if (regenerate(kaitai, source, affected, full, generated, logger)) {
+					full = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Regenerate specifications, problems are only logged: watching must continue after any broken change.
+	 *
+	 * <p>
+	 * Compiler writes into clean staging directory, so list of generated files is known exactly:
+	 * after full regeneration files which were generated before, but are not generated anymore, are removed from output.
+	 *
+	 * @param kaitai    Path to compiler
+	 * @param source    All existing specifications
+	 * @param affected  Specifications for regenerate
+	 * @param full      Whether {@code affected} contains all existing specifications
+	 * @param generated Relative paths of files which were generated during watching, updated on success
+	 * @param logger    Logger for messages
+	 * @return {@code true} if regeneration succeeds
+	 */
+	private boolean regenerate(Path kaitai, List<Path> source, List<Path> affected, boolean full, Set<Path> generated, Logger logger) {
+		if (affected.isEmpty() && !full) {
+			getLog().info("Kaitai: watch: nothing to regenerate");
+			return true;
+		}
+		long start = System.nanoTime();
+		KaitaiMetrics metrics = KaitaiMetrics.metrics();
+		Path staging = null;
+		try {
+			Path generatedRoot = mkdirs(generatedRoot());
+			Set<Path> produced = new HashSet<>();
+			if (!affected.isEmpty()) {
+				validate(affected, logger, metrics);
+				staging = createStaging();
+				Path stagingRoot = generator(kaitai, staging, affected, metrics).exactOutput(false).generate(logger);
+				List<Path> files = scanFiles(stagingRoot, new String[]{"*"}, new String[0]);
+				for (Path file : files) {
+					produced.add(stagingRoot.relativize(file));
+				}
+				move(stagingRoot, files, generatedRoot);
+			}
+			if (full) {
+				Set<Path> stale = new HashSet<>(generated);
+				stale.removeAll(produced);
+				removeStale(generatedRoot, stale);
+				generated.clear();
+			}
+			generated.addAll(produced);
+			writeRegistry(generatedRoot, source, logger);
+			getLog().info(format(
+				"Kaitai: watch: regenerated %d of %d specifications in %d ms"
+				, affected.size()
+				, source.size()
+				, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+			));
+			return true;
+		} catch (KaitaiException e) {
+			getLog().error(format(
+				"Kaitai: watch: fail to regenerate %d of %d specifications in %d ms: %s"
+				, affected.size()
+				, source.size()
+				, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+				, e.getMessage()
+			));
+			return false;
+		} finally {
+			if (staging != null) {
+				try {
+					KaitaiTrash.deleteLater(staging);
+				} catch (KaitaiException e) {
+					getLog().warn(e.getMessage(), e);
+				}
+			}
+		}
+	}
+
+	private Path createStaging() throws KaitaiException {
+		Path parent = mkdirs(kaitaiTarget());
+		try {
+			return Files.createTempDirectory(parent, "watch-");
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to create staging directory inside: %s"
+				, parent.toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+	}
+
+	private void removeStale(Path generatedRoot, Set<Path> stale) throws KaitaiException {
+		for (Path path : stale) {
+			Path file = generatedRoot.resolve(path);
+			try {
+				if (Files.deleteIfExists(file)) {
+					getLog().info("Kaitai: watch: remove output of removed specification: " + file.toFile().getAbsolutePath());
+				}
+			} catch (IOException e) {
+				throw new KaitaiException(format(
+					"Fail to remove output of removed specification: %s"
+					, file.toFile().getAbsolutePath()
+				)
+					, e
+				);
+			}
+		}
+	}
+}
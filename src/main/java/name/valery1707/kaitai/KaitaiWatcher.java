@@ -0,0 +1,268 @@
+package name.valery1707.kaitai;
+
+import java.io.Closeable;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+import static java.nio.file.StandardWatchEventKinds.*;
+import static name.valery1707.kaitai.KaitaiUtils.checkDirectoryIsReadable;
+import static name.valery1707.kaitai.KaitaiUtils.fileFilter;
+import static name.valery1707.kaitai.KaitaiUtils.scanFiles;
+
+/**
+ * Watcher of changes of specifications inside source directory and all its subdirectories.
+ *
+ * <p>
+ * Bursts of events (editors usually write file in several steps) are collapsed into single change set:
+ * change set is completed only after {@link #getDebounce() debounce} interval without new events.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KaitaiWatcher implements Closeable {
+	/**
+	 * Default quiet interval after last event before change set is completed: in milliseconds.
+	 */
+	public static final long DEFAULT_DEBOUNCE = 200;
+
+	private final Path root;
+	private final String[] includes;
+	private final String[] excludes;
+	private final FilenameFilter filter;
+	private final WatchService service;
+	private final Map<WatchKey, Path> directories = new HashMap<>();
+	private long debounce = DEFAULT_DEBOUNCE;
+
+	private KaitaiWatcher(Path root, String[] includes, String[] excludes, WatchService service) {
+		this.root = root;
+		this.includes = includes;
+		this.excludes = excludes;
+		this.filter = fileFilter(includes, excludes);
+		this.service = service;
+	}
+
+	/**
+	 * Start watching of directory.
+	 *
+	 * @param root     Root directory for watch
+	 * @param includes Includes wildcard mask
+	 * @param excludes Excludes wildcard mask
+	 * @return Started watcher
+	 * @throws KaitaiException If directory can not be watched
+	 * @see KaitaiUtils#scanFiles(Path, String[], String[])
+	 */
+	public static KaitaiWatcher watcher(Path root, String[] includes, String[] excludes) throws KaitaiException {
+		checkDirectoryIsReadable(root);
+		Path normalized = root.normalize().toAbsolutePath();
+		WatchService service;
+		try {
+			service = normalized.getFileSystem().newWatchService();
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to watch directory: %s"
+				, normalized.toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+		KaitaiWatcher watcher = new KaitaiWatcher(normalized, includes, excludes, service);
+		try {
+			watcher.register(normalized);
+		} catch (KaitaiException e) {
+			watcher.close();
+			throw e;
+		}
+		return watcher;
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+
+	public long getDebounce() {
+		return debounce;
+	}
+
+	public void setDebounce(long debounce) {
+		this.debounce = debounce;
+	}
+
+	public KaitaiWatcher debounce(long debounce) {
+		setDebounce(debounce);
+		return this;
+	}
+
+	/**
+	 * Register directory and all its subdirectories.
+	 *
+	 * @param directory Directory for register
+	 * @return Matched files which already exist inside directory
+	 * @throws KaitaiException If directory can not be watched
+	 */
+	private List<Path> register(Path directory) throws KaitaiException {
+		try {
+			Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					directories.put(dir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			throw new KaitaiException(format(
+				"Fail to watch directory: %s"
+				, directory.toFile().getAbsolutePath()
+			)
+				, e
+			);
+		}
+		return scanFiles(directory, includes, excludes);
+	}
+
+	/**
+	 * Wait for next change set: block until at least one matched file is changed
+	 * and then until {@link #getDebounce() debounce} interval passes without new events.
+	 *
+	 * <p>
+	 * Change set contains created, modified and deleted files.
+	 * If some events were lost by file system then all existing matched files are returned.
+	 *
+	 * @return Changed files
+	 * @throws KaitaiException If thread was interrupted or watcher was closed
+	 */
+	public Set<Path> await() throws KaitaiException {
+		Set<Path> changed = new LinkedHashSet<>();
+		try {
+			while (changed.isEmpty()) {
+				WatchKey key = service.take();
+				while (key != null) {
+					collect(key, changed);
+					key = service.poll(getDebounce(), TimeUnit.MILLISECONDS);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KaitaiException("Interrupted while watching directory: " + root.toFile().getAbsolutePath(), e);
+		} catch (ClosedWatchServiceException e) {
+			throw new KaitaiException("Watcher is closed: " + root.toFile().getAbsolutePath(), e);
+		}
+		return changed;
+	}
+
+	private void collect(WatchKey key, Set<Path> changed) throws KaitaiException {
+		Path directory = directories.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				changed.addAll(scanFiles(root, includes, excludes));
+				continue;
+			}
+			if (directory == null) {
+				continue;
+			}
+			Path path = directory.resolve((Path) event.context()).normalize();
+			if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+				//Files can be created inside new directory before it is registered
+				changed.addAll(register(path));
+			} else if (filter.accept(null, path.getFileName().toString())) {
+				changed.add(path);
+			}
+		}
+		if (!key.reset()) {
+			directories.remove(key);
+		}
+	}
+
+	/**
+	 * Detect specifications which must be regenerated after change of files:
+	 * changed specifications itself and all specifications which import them directly or transitively.
+	 *
+	 * <p>
+	 * Only relative imports are resolved.
+	 * Specifications which can not be parsed are not scanned for imports: they will be reported by validator or compiler.
+	 *
+	 * @param changed Changed files, including deleted ones
+	 * @param sources All existing specifications
+	 * @return Affected specifications in order of {@code sources}
+	 */
+	public static List<Path> affected(Collection<Path> changed, Collection<Path> sources) {
+		Map<Path, List<Path>> importers = new HashMap<>();
+		for (Path source : sources) {
+			for (Path imported : imports(source)) {
+				List<Path> list = importers.get(imported);
+				if (list == null) {
+					list = new ArrayList<>();
+					importers.put(imported, list);
+				}
+				list.add(source);
+			}
+		}
+
+		Set<Path> affected = new HashSet<>();
+		Deque<Path> queue = new ArrayDeque<>();
+		for (Path path : changed) {
+			queue.add(path.normalize().toAbsolutePath());
+		}
+		while (!queue.isEmpty()) {
+			Path path = queue.poll();
+			if (affected.add(path) && importers.containsKey(path)) {
+				queue.addAll(importers.get(path));
+			}
+		}
+
+		List<Path> result = new ArrayList<>();
+		for (Path source : sources) {
+			if (affected.contains(source.normalize().toAbsolutePath())) {
+				result.add(source);
+			}
+		}
+		return result;
+	}
+
+	private static List<Path> imports(Path source) {
+		List<String> imports;
+		try {
+			imports = KaitaiSpec.parse(source).getImports();
+		} catch (KaitaiException e) {
+			return new ArrayList<>();
+		}
+		Path directory = source.normalize().toAbsolutePath().getParent();
+		List<Path> paths = new ArrayList<>(imports.size());
+		for (String imported : imports) {
+			if (!imported.startsWith("/")) {
+				paths.add(directory.resolve(imported + ".ksy").normalize());
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Stop watching.
+	 */
+	@Override
+	public void close() {
+		try {
+			service.close();
+		} catch (IOException e) {
+			//Nothing to do: watcher is not used anymore
+		}
+	}
+}
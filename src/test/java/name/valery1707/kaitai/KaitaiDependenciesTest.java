@@ -0,0 +1,109 @@
+package name.valery1707.kaitai;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.slf4j.helpers.NOPLogger.NOP_LOGGER;
+
+public class KaitaiDependenciesTest {
+	private static final String[] INCLUDES = {"*.ksy"};
+	private static final String[] EXCLUDES = {"skip*"};
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static Path jar(Path jar, String... entries) throws IOException {
+		try (
+			OutputStream os = Files.newOutputStream(jar);
+			ZipOutputStream zos = new ZipOutputStream(os)
+		) {
+			for (String entry : entries) {
+				zos.putNextEntry(new ZipEntry(entry));
+				zos.write(("meta:\n  id: " + entry.replaceAll(".*/|\\..*", "") + "\n").getBytes(UTF_8));
+				zos.closeEntry();
+			}
+		}
+		return jar;
+	}
+
+	private static List<String> children(Path dir) throws IOException {
+		List<String> names = new ArrayList<>();
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+			for (Path child : children) {
+				names.add(child.getFileName().toString());
+			}
+		}
+		return names;
+	}
+
+	@Test
+	public void testMatches() {
+		assertThat(KaitaiDependencies.matches("com.example:specs", "com.example", "specs")).isTrue();
+		assertThat(KaitaiDependencies.matches("com.example:*", "com.example", "specs")).isTrue();
+		assertThat(KaitaiDependencies.matches(" *:spec? ", "com.example", "specs")).isTrue();
+		assertThat(KaitaiDependencies.matches("com.example:other", "com.example", "specs")).isFalse();
+		assertThat(KaitaiDependencies.matches("com.example", "com.example", "specs")).isFalse();
+	}
+
+	@Test
+	public void testExtract() throws Exception {
+		Path jar = jar(
+			temporaryFolder.getRoot().toPath().resolve("specs.jar")
+			, "kaitai/common/header.ksy", "kaitai/packet.ksy", "kaitai/skipped.ksy", "META-INF/MANIFEST.MF"
+		);
+		KaitaiDependencies dependencies = KaitaiDependencies.dependencies(temporaryFolder.getRoot().toPath().resolve("cache"));
+		Path dir = dependencies.extract("com.example:specs", jar, INCLUDES, EXCLUDES, NOP_LOGGER);
+		assertThat(dir.getFileName().toString()).matches("com\\.example_specs-[0-9a-f]{16}");
+		assertThat(dir.resolve("kaitai/common/header.ksy")).isRegularFile();
+		assertThat(dir.resolve("kaitai/packet.ksy")).isRegularFile();
+		assertThat(dir.resolve("kaitai/skipped.ksy")).doesNotExist();
+		assertThat(dir.resolve("META-INF")).doesNotExist();
+
+		//Unchanged artifact is not extracted again
+		Files.delete(dir.resolve("kaitai/packet.ksy"));
+		assertThat(dependencies.extract("com.example:specs", jar, INCLUDES, EXCLUDES, NOP_LOGGER)).isEqualTo(dir);
+		assertThat(dir.resolve("kaitai/packet.ksy")).doesNotExist();
+
+		//Changed artifact replaces previous version
+		jar(jar, "kaitai/packet.ksy", "kaitai/footer.ksy");
+		Path changed = dependencies.extract("com.example:specs", jar, INCLUDES, EXCLUDES, NOP_LOGGER);
+		assertThat(changed).isNotEqualTo(dir);
+		assertThat(changed.resolve("kaitai/footer.ksy")).isRegularFile();
+		assertThat(KaitaiTrash.await(10_000)).isTrue();
+		assertThat(children(dependencies.getRoot())).containsOnly(changed.getFileName().toString(), KaitaiTrash.TRASH_DIR);
+	}
+
+	@Test
+	public void testExtract_directory() throws Exception {
+		Path classes = temporaryFolder.newFolder("classes").toPath();
+		KaitaiDependencies dependencies = KaitaiDependencies.dependencies(temporaryFolder.getRoot().toPath().resolve("cache"));
+		assertThat(dependencies.extract("com.example:module", classes, INCLUDES, EXCLUDES, NOP_LOGGER)).isEqualTo(classes);
+	}
+
+	@Test
+	public void testExtract_outside() throws Exception {
+		Path jar = jar(temporaryFolder.getRoot().toPath().resolve("evil.jar"), "../../evil.ksy");
+		KaitaiDependencies dependencies = KaitaiDependencies.dependencies(temporaryFolder.getRoot().toPath().resolve("cache"));
+		try {
+			dependencies.extract("com.example:evil", jar, INCLUDES, EXCLUDES, NOP_LOGGER);
+			fail("Entry outside of target directory must be rejected");
+		} catch (KaitaiException e) {
+			assertThat(e).hasMessageContaining("is outside of target directory");
+		}
+		assertThat(temporaryFolder.getRoot().toPath().resolve("evil.ksy")).doesNotExist();
+	}
+}
@@ -0,0 +1,63 @@
+package name.valery1707.kaitai;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static name.valery1707.kaitai.KaitaiUtils.delete;
+import static name.valery1707.kaitai.KaitaiUtils.scanFiles;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * JFR API is used through reflection because tests are compiled for Java 7 as main code.
+ */
+public class KaitaiEventsTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testWithoutRecording() throws Exception {
+		Path dir = temporaryFolder.newFolder().toPath();
+		try (KaitaiEvents.FileEvent event = KaitaiEvents.file("test", dir)) {
+			event.files(1).bytes(2);
+		}
+		try (KaitaiEvents.ProcessEvent event = KaitaiEvents.process("test", dir)) {
+			event.exitCode(1).timedOut().output(1, 2);
+		}
+	}
+
+	@Test
+	public void testRecording() throws Exception {
+		assumeTrue(KaitaiEvents.isAvailable());
+		Path dir = temporaryFolder.newFolder().toPath();
+		Files.createFile(dir.resolve("a.ksy"));
+		Files.createFile(dir.resolve("b.ksy"));
+
+		Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+		Object recording = recordingClass.newInstance();
+		recordingClass.getMethod("enable", String.class).invoke(recording, "name.valery1707.kaitai.File");
+		recordingClass.getMethod("start").invoke(recording);
+		scanFiles(dir, new String[]{"*.ksy"}, new String[0]);
+		delete(dir);
+		recordingClass.getMethod("stop").invoke(recording);
+		Path dump = temporaryFolder.getRoot().toPath().resolve("recording.jfr");
+		recordingClass.getMethod("dump", Path.class).invoke(recording, dump);
+		recordingClass.getMethod("close").invoke(recording);
+
+		List<String> operations = new ArrayList<>();
+		Class<?> eventClass = Class.forName("jdk.jfr.consumer.RecordedEvent");
+		List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile").getMethod("readAllEvents", Path.class).invoke(null, dump);
+		for (Object event : events) {
+			String operation = (String) eventClass.getMethod("getString", String.class).invoke(event, "operation");
+			long files = (Long) eventClass.getMethod("getLong", String.class).invoke(event, "files");
+			operations.add(operation + ":" + files);
+		}
+		assertThat(operations).contains("scan:2", "delete:0");
+	}
+}
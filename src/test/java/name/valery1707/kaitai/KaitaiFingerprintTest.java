@@ -0,0 +1,115 @@
+package name.valery1707.kaitai;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.slf4j.helpers.NOPLogger.NOP_LOGGER;
+
+public class KaitaiFingerprintTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static final String SPEC = ""
+		+ "meta:\n"
+		+ "  id: sample\n"
+		+ "  endian: le\n"
+		+ "doc: Sample format\n"
+		+ "seq:\n"
+		+ "  - id: magic\n"
+		+ "    contents: [0x01, 2]\n"
+		+ "  - id: len\n"
+		+ "    type: u4\n"
+		+ "    doc: Length of body\n"
+		+ "instances:\n"
+		+ "  doc:\n"
+		+ "    value: len * 2\n";
+
+	private static String fingerprint(String content) throws KaitaiException {
+		return KaitaiFingerprint.fingerprint(KaitaiSpec.parse(Paths.get("test.ksy"), content));
+	}
+
+	@Test
+	public void testFingerprint_ignored() throws KaitaiException {
+		String expected = fingerprint(SPEC);
+		assertThat(fingerprint("# Comment\n" + SPEC.replace("  endian: le\n", "  endian: 'le'   # Little\n"))).isEqualTo(expected);
+		assertThat(fingerprint(SPEC.replace("doc: Sample format", "doc: |\n  Another description\ndoc-ref: https://example.com"))).isEqualTo(expected);
+		assertThat(fingerprint(SPEC.replace("    type: u4\n    doc: Length of body\n", "    -orig-id: length\n    doc: Length\n    type: u4\n"))).isEqualTo(expected);
+		assertThat(fingerprint(SPEC.replace("  id: sample\n  endian: le\n", "  endian: le\n  id: sample\n"))).isEqualTo(expected);
+		assertThat(fingerprint(SPEC.replace("contents: [0x01, 2]", "contents:\n      - 0x01\n      - 2"))).isEqualTo(expected);
+	}
+
+	@Test
+	public void testFingerprint_changed() throws KaitaiException {
+		String expected = fingerprint(SPEC);
+		assertThat(fingerprint(SPEC.replace("type: u4", "type: u2"))).isNotEqualTo(expected);
+		assertThat(fingerprint(SPEC.replace("contents: [0x01, 2]", "contents: [2, 0x01]"))).isNotEqualTo(expected);
+		assertThat(fingerprint(SPEC.replace("contents: [0x01, 2]", "contents: [0x01, '2']"))).isNotEqualTo(expected);
+		//Instance with name `doc` is not documentation
+		assertThat(fingerprint(SPEC.replace("len * 2", "len * 3"))).isNotEqualTo(expected);
+	}
+
+	@Test
+	public void testFingerprint_cached() throws Exception {
+		Path cacheFile = temporaryFolder.getRoot().toPath().resolve("cache/fingerprint.cache");
+		Path source = Files.write(temporaryFolder.newFile("sample.ksy").toPath(), SPEC.getBytes(UTF_8));
+		Map<Path, String> first = KaitaiFingerprint.fingerprints().cacheFile(cacheFile).fingerprint(Collections.singleton(source), NOP_LOGGER);
+		assertThat(first.get(source)).isEqualTo(fingerprint(SPEC));
+		assertThat(cacheFile).isRegularFile();
+
+		//File with the same size and modification time is not parsed again
+		FileTime modified = Files.getLastModifiedTime(source);
+		Files.write(source, SPEC.replace("u4", "u2").getBytes(UTF_8));
+		Files.setLastModifiedTime(source, modified);
+		assertThat(KaitaiFingerprint.fingerprints().cacheFile(cacheFile).fingerprint(Collections.singleton(source), NOP_LOGGER)).isEqualTo(first);
+
+		Files.setLastModifiedTime(source, FileTime.fromMillis(modified.toMillis() + 2_000));
+		assertThat(KaitaiFingerprint.fingerprints().fingerprint(Collections.singleton(source), NOP_LOGGER).get(source))
+			.isEqualTo(fingerprint(SPEC.replace("u4", "u2")));
+	}
+
+	@Test
+	public void testFingerprint_imports() throws Exception {
+		Path dir = temporaryFolder.newFolder("specs").toPath();
+		Path lib = temporaryFolder.newFolder("lib").toPath();
+		Path main = Files.write(dir.resolve("main.ksy"), "meta:\n  id: main\n  imports:\n    - helper\n    - /common/shared\n    - absent\n".getBytes(UTF_8));
+		Path helper = Files.write(dir.resolve("helper.ksy"), "meta:\n  id: helper\n  imports:\n    - main\n".getBytes(UTF_8));
+		Path shared = Files.write(Files.createDirectory(lib.resolve("common")).resolve("shared.ksy"), "meta:\n  id: shared\n".getBytes(UTF_8));
+		Path cacheFile = temporaryFolder.getRoot().toPath().resolve("cache/fingerprint.cache");
+
+		//Imported specifications follow sources, every specification is fingerprinted once
+		Map<Path, String> fingerprints = KaitaiFingerprint.fingerprints().cacheFile(cacheFile)
+			.fingerprint(Collections.singletonList(main), Collections.singletonList(lib), NOP_LOGGER);
+		assertThat(fingerprints.keySet()).containsExactly(main, helper.normalize(), shared.normalize());
+		assertThat(fingerprints.get(shared)).isEqualTo(KaitaiFingerprint.fingerprint(shared));
+
+		//Imports are taken from cache together with fingerprints
+		assertThat(KaitaiFingerprint.fingerprints().cacheFile(cacheFile)
+			.fingerprint(Collections.singletonList(main), Collections.singletonList(lib), NOP_LOGGER)).isEqualTo(fingerprints);
+
+		//Change of imported specification changes its fingerprint
+		Files.write(shared, "meta:\n  id: shared\nseq:\n  - id: body\n    type: u1\n".getBytes(UTF_8));
+		Files.setLastModifiedTime(shared, FileTime.fromMillis(Files.getLastModifiedTime(shared).toMillis() + 2_000));
+		assertThat(KaitaiFingerprint.fingerprints().cacheFile(cacheFile)
+			.fingerprint(Collections.singletonList(main), Collections.singletonList(lib), NOP_LOGGER).get(shared))
+			.isNotEqualTo(fingerprints.get(shared));
+
+		//Without import paths imports are not followed
+		assertThat(KaitaiFingerprint.fingerprints().fingerprint(Collections.singletonList(main), NOP_LOGGER).keySet()).containsExactly(main);
+	}
+
+	@Test
+	public void testFingerprint_invalidYaml() throws Exception {
+		Path source = Files.write(temporaryFolder.newFile("broken.ksy").toPath(), "meta: [".getBytes(UTF_8));
+		assertThat(KaitaiFingerprint.fingerprint(source)).startsWith("raw:");
+	}
+}
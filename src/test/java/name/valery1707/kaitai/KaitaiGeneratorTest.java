@@ -1,10 +1,10 @@
 package name.valery1707.kaitai;
 
+import com.github.marschall.memoryfilesystem.MemoryFileSystemBuilder;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.JavaVersion;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.SystemUtils;
-import org.buildobjects.process.ExternalProcessFailureException;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -13,9 +13,19 @@ import org.slf4j.Logger;
 import java.io.IOException;
 import java.io.Reader;
 import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static name.valery1707.kaitai.KaitaiMojo.KAITAI_VERSION;
@@ -25,6 +35,7 @@ import static name.valery1707.kaitai.KaitaiUtilsTest.copy;
 import static org.apache.commons.io.FilenameUtils.removeExtension;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 import static org.slf4j.helpers.NOPLogger.NOP_LOGGER;
 
 public class KaitaiGeneratorTest {
@@ -95,8 +106,7 @@ public class KaitaiGeneratorTest {
 			assertThat(e.getMessage()).doesNotContain(KAITAI_VERSION);
 
 			assertThat(e.getCause())
-				.isInstanceOf(ExternalProcessFailureException.class)
-				.hasMessageContaining("Stderr unavailable as it has been consumed by user provided stream.")
+				.isInstanceOf(KaitaiProcess.ExternalFailureException.class)
 				.hasMessageContaining("returned 2 after")
 			;
 
@@ -137,7 +147,7 @@ public class KaitaiGeneratorTest {
 			fail("Must throw exception");
 		} catch (KaitaiException e) {
 			assertThat(e.getCause())
-				.isInstanceOf(org.buildobjects.process.TimeoutException.class)
+				.isInstanceOf(KaitaiProcess.TimeoutException.class)
 				.hasMessageContaining("timed out after 500ms")
 			;
 		}
@@ -150,6 +160,192 @@ public class KaitaiGeneratorTest {
 		assertThat(generator.generate(LOG)).isNotNull();
 	}
 
+	@Test
+	public void testCheckVersion_probeReused() throws IOException, KaitaiException {
+		KaitaiGenerator generator = testExecutionTimeout();
+		generator.executionTimeout(2_000);
+		String version = generator.checkVersion(LOG);
+		assertThat(generator.getKaitai().resolveSibling(generator.getKaitai().getFileName() + ".version")).isRegularFile();
+
+		//Second check must not execute compiler: it would fail with such small timeout
+		generator.executionTimeout(1);
+		assertThat(generator.checkVersion(LOG)).isEqualTo(version);
+	}
+
+	@Test
+	public void testGenerate_batches() throws IOException, KaitaiException {
+		assumeTrue(SystemUtils.IS_OS_UNIX);
+		Path executable = copy("/executable/_batch.sh", temporaryFolder);
+		Path output = temporaryFolder.newFolder().toPath();
+		//Deep directory: sources are much longer then common part of command line
+		Path dir = temporaryFolder.getRoot().toPath();
+		for (int i = 0; i < 4; i++) {
+			dir = dir.resolve(StringUtils.repeat(Integer.toString(i), 200));
+		}
+		Files.createDirectories(dir);
+		List<Path> sources = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			sources.add(Files.createFile(dir.resolve("source_" + i + ".ksy")));
+		}
+		KaitaiGenerator generator = KaitaiGenerator
+			.generator(executable, output, getClass().getPackage().getName())
+			.exactOutput(true)
+			.withSource(sources);
+		//Common part of command line is shorter then 1024 chars, so every execution can contain only 3 or 4 sources
+		generator.maxCommandLength(1024 + sources.get(0).toString().length() * 3);
+
+		Path target = generator.generate(LOG);
+		assertThat(target).isEqualTo(output);
+		List<String> batches = Files.readAllLines(target.resolve("batches.txt"), UTF_8);
+		assertThat(batches.size()).isBetween(2, sources.size() - 1);
+		List<String> executed = new ArrayList<>();
+		for (String batch : batches) {
+			executed.addAll(Arrays.asList(batch.split(" ")));
+		}
+		assertThat(executed).hasSize(sources.size());
+		for (int i = 0; i < sources.size(); i++) {
+			assertThat(executed.get(i)).isEqualTo(sources.get(i).toAbsolutePath().toString());
+		}
+		assertThat(generator.getMetrics().getPhases()).extracting("name").containsExactly("version-check", "compile", "move");
+		assertThat(generator.getMetrics().getPhases().get(1).getFiles()).isEqualTo(sources.size());
+	}
+
+	private static List<String> children(Path dir) throws IOException {
+		List<String> names = new ArrayList<>();
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+			for (Path child : children) {
+				names.add(child.getFileName().toString());
+			}
+		}
+		return names;
+	}
+
+	@Test
+	public void testGenerate_exactOutputStaging() throws IOException, KaitaiException {
+		assumeTrue(SystemUtils.IS_OS_UNIX);
+		Path executable = copy("/executable/_batch.sh", temporaryFolder);
+		Path parent = temporaryFolder.newFolder().toPath();
+		Path source = Files.createFile(temporaryFolder.getRoot().toPath().resolve("source.ksy"));
+
+		//Empty output is replaced by staging directory
+		Path empty = Files.createDirectory(parent.resolve("empty"));
+		assertThat(KaitaiGenerator.generator(executable, empty, "test").exactOutput(true).withSource(source).generate(LOG)).isEqualTo(empty);
+		assertThat(children(empty)).containsExactly("batches.txt");
+
+		//Files are moved into existing output one by one
+		Path existing = Files.createDirectory(parent.resolve("existing"));
+		Files.write(existing.resolve("existing.txt"), "existing".getBytes(UTF_8));
+		assertThat(KaitaiGenerator.generator(executable, existing, "test").exactOutput(true).withSource(source).generate(LOG)).isEqualTo(existing);
+		assertThat(children(existing)).containsOnly("existing.txt", "batches.txt");
+
+		assertThat(KaitaiTrash.await(10_000)).isTrue();
+		assertThat(children(parent)).containsOnly("empty", "existing", KaitaiTrash.TRASH_DIR);
+		assertThat(children(parent.resolve(KaitaiTrash.TRASH_DIR))).isEmpty();
+	}
+
+	@Test
+	public void testGenerate_exactOutputStagingDirectory() throws IOException, KaitaiException {
+		assumeTrue(SystemUtils.IS_OS_UNIX);
+		Path executable = copy("/executable/_batch.sh", temporaryFolder);
+		Path parent = temporaryFolder.newFolder().toPath();
+		Path staging = temporaryFolder.getRoot().toPath().resolve("target/kaitai");
+		Path source = Files.createFile(temporaryFolder.getRoot().toPath().resolve("source.ksy"));
+
+		//Staging directory on the same filesystem is used instead of parent of output
+		Path output = Files.createDirectory(parent.resolve("output"));
+		assertThat(KaitaiGenerator.generator(executable, output, "test").exactOutput(true).stagingDirectory(staging).withSource(source).generate(LOG))
+			.isEqualTo(output);
+		assertThat(children(output)).containsExactly("batches.txt");
+		assertThat(KaitaiTrash.await(10_000)).isTrue();
+		assertThat(children(parent)).containsOnly("output");
+
+		//Staging directory on other filesystem is replaced by parent of output
+		try (FileSystem fs = MemoryFileSystemBuilder.newLinux().build()) {
+			Path other = Files.createDirectory(parent.resolve("other"));
+			assertThat(KaitaiGenerator.generator(executable, other, "test").exactOutput(true).stagingDirectory(fs.getPath("/staging")).withSource(source).generate(LOG))
+				.isEqualTo(other);
+			assertThat(children(other)).containsExactly("batches.txt");
+		}
+	}
+
+	@Test
+	public void testGenerate_profile() throws Exception {
+		assumeTrue(SystemUtils.IS_OS_UNIX);
+		Path executable = copy("/executable/_java.sh", temporaryFolder);
+		Path dir = temporaryFolder.newFolder().toPath();
+		Path first = Files.write(dir.resolve("first.ksy"), "meta:\n  id: first\n".getBytes(UTF_8));
+		Path second = Files.write(dir.resolve("second.ksy"), "meta:\n  id: second\n".getBytes(UTF_8));
+		KaitaiProfile profile = KaitaiProfile.profile();
+		Path target = KaitaiGenerator
+			.generator(executable, temporaryFolder.newFolder().toPath(), "test")
+			.withSource(first, second)
+			.profile(profile)
+			.generate(LOG);
+		assertThat(target.resolve("test/First.java")).isRegularFile();
+		assertThat(target.resolve("test/Second.java")).isRegularFile();
+		//Output directories of single executions are removed
+		assertThat(target.getParent().toFile().list()).containsExactly("src");
+
+		//Every source is compiled by separate execution
+		assertThat(Files.readAllLines(executable.resolveSibling("executions.txt"), UTF_8))
+			.containsExactly(first.toAbsolutePath().toString(), second.toAbsolutePath().toString());
+		for (Path source : Arrays.asList(first, second)) {
+			KaitaiProfile.Entry entry = profile.getEntry(source);
+			assertThat(entry.getClasses()).isEqualTo(1);
+			//Fake compiler sleeps for 300 ms
+			assertThat(entry.getLastMillis()).isGreaterThanOrEqualTo(300);
+		}
+	}
+
+	@Test
+	public void testGenerateAsync_concurrent() throws Exception {
+		assumeTrue(SystemUtils.IS_OS_UNIX);
+		Path executable = copy("/executable/_java.sh", temporaryFolder);
+		Path dir = temporaryFolder.newFolder().toPath();
+		KaitaiGenerator generator = KaitaiGenerator
+			.generator(executable, temporaryFolder.newFolder().toPath(), "test")
+			.withSource(Files.write(dir.resolve("first.ksy"), "meta:\n  id: first\n".getBytes(UTF_8)));
+		KaitaiGenerator.Config config = generator.toConfig();
+		//Changes of generator do not affect taken configuration
+		generator.withSource(Files.write(dir.resolve("second.ksy"), "meta:\n  id: second\n".getBytes(UTF_8)));
+		assertThat(config.getSources()).hasSize(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<KaitaiGenerator.Result>> futures = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				futures.add(config.withOutput(temporaryFolder.newFolder().toPath()).generateAsync(executor, LOG));
+			}
+			for (Future<KaitaiGenerator.Result> future : futures) {
+				KaitaiGenerator.Result result = future.get(30, TimeUnit.SECONDS);
+				assertThat(result.getOutput().resolve("test/First.java")).isRegularFile();
+				assertThat(result.getDiagnostics()).containsExactly("first.ksy: generated First");
+			}
+			assertThat(config.getMetrics().getPhases()).extracting("name").contains("compile");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testGenerateAsync_failed() throws Exception {
+		assumeTrue(SystemUtils.IS_OS_UNIX);
+		Path executable = copy("/executable/_timeout.sh", temporaryFolder);
+		KaitaiGenerator.Config config = KaitaiGenerator
+			.generator(executable, temporaryFolder.newFolder().toPath(), "test")
+			.executionTimeout(100)
+			.toConfig();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			config.generateAsync(executor, LOG).get(30, TimeUnit.SECONDS);
+			fail("Generation must fail by timeout");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause()).isInstanceOf(KaitaiException.class);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
 	@Test
 	public void testOption_fromFileClass() throws URISyntaxException, IOException, KaitaiException {
 		Path source = findIt()
@@ -211,8 +407,7 @@ public class KaitaiGeneratorTest {
 			assertThat(e.getMessage()).doesNotContain(KAITAI_VERSION);
 
 			assertThat(e.getCause())
-				.isInstanceOf(ExternalProcessFailureException.class)
-				.hasMessageContaining("Stderr unavailable as it has been consumed by user provided stream.")
+				.isInstanceOf(KaitaiProcess.ExternalFailureException.class)
 				.hasMessageContaining("returned 2 after")
 			;
 
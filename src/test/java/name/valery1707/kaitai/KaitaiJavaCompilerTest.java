@@ -0,0 +1,96 @@
+package name.valery1707.kaitai;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static name.valery1707.kaitai.KaitaiUtils.scanFiles;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class KaitaiJavaCompilerTest {
+	private static final Logger LOG = LoggerFactory.getLogger(KaitaiJavaCompilerTest.class);
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path source(Path root, String className, String content) throws Exception {
+		Path path = root.resolve(className.replace('.', '/') + ".java");
+		Files.createDirectories(path.getParent());
+		return Files.write(path, content.getBytes(UTF_8));
+	}
+
+	@Test
+	public void testCompile() throws Exception {
+		Path sources = temporaryFolder.newFolder("sources").toPath();
+		Path classes = temporaryFolder.newFolder("classes").toPath();
+		source(sources, "test.Header", "package test;\npublic class Header {\n\tpublic int size;\n}\n");
+		source(sources, "test.Packet", "package test;\npublic class Packet {\n\tpublic Header header = new Header();\n\tpublic class Body {\n\t}\n}\n");
+
+		KaitaiMetrics metrics = KaitaiMetrics.metrics();
+		List<Path> written = KaitaiJavaCompiler
+			.compiler(classes)
+			.withSource(scanFiles(sources, new String[]{"*.java"}, new String[0]))
+			.options("-g:none")
+			.metrics(metrics)
+			.compile(LOG);
+		assertThat(written).containsOnly(
+			classes.resolve("test/Header.class")
+			, classes.resolve("test/Packet.class")
+			, classes.resolve("test/Packet$Body.class")
+		);
+		for (Path path : written) {
+			assertThat(path).isRegularFile();
+		}
+		assertThat(metrics.getPhases()).hasSize(1);
+		assertThat(metrics.getPhases().get(0).getName()).isEqualTo("javac");
+		assertThat(metrics.getPhases().get(0).getFiles()).isEqualTo(2);
+		assertThat(metrics.getPhases().get(0).getBytes()).isPositive();
+	}
+
+	@Test
+	public void testCompile_classpath() throws Exception {
+		Path library = temporaryFolder.newFolder("library").toPath();
+		Path classes = temporaryFolder.newFolder("classes").toPath();
+		KaitaiJavaCompiler
+			.compiler(library)
+			.withSource(Collections.singleton(source(temporaryFolder.getRoot().toPath().resolve("library-sources"), "lib.Stream", "package lib;\npublic class Stream {\n}\n")))
+			.compile(LOG);
+
+		List<Path> written = KaitaiJavaCompiler
+			.compiler(classes)
+			.withSource(Collections.singleton(source(temporaryFolder.getRoot().toPath().resolve("sources"), "test.Format", "package test;\npublic class Format {\n\tlib.Stream io;\n}\n")))
+			.classpath(Arrays.asList(library.toString()))
+			.compile(LOG);
+		assertThat(written).containsOnly(classes.resolve("test/Format.class"));
+	}
+
+	@Test
+	public void testCompile_failed() throws Exception {
+		Path sources = temporaryFolder.newFolder("sources").toPath();
+		Path classes = temporaryFolder.newFolder("classes").toPath();
+		source(sources, "test.Valid", "package test;\npublic class Valid {\n}\n");
+		source(sources, "test.Broken", "package test;\npublic class Broken {\n\tUnknown field;\n}\n");
+		try {
+			KaitaiJavaCompiler
+				.compiler(classes)
+				.withSource(scanFiles(sources, new String[]{"*.java"}, new String[0]))
+				.compile(LOG);
+			fail("Broken source must not be compiled");
+		} catch (KaitaiException e) {
+			assertThat(e.getMessage())
+				.startsWith("Fail to compile generated sources:")
+				.contains("Broken.java:3:");
+		}
+		assertThat(scanFiles(classes, new String[]{"*"}, new String[0])).isEmpty();
+	}
+}
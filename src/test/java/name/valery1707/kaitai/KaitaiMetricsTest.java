@@ -0,0 +1,74 @@
+package name.valery1707.kaitai;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KaitaiMetricsTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testPhases() throws InterruptedException {
+		KaitaiMetrics metrics = KaitaiMetrics.metrics();
+		try (KaitaiMetrics.Phase phase = metrics.start("scan")) {
+			phase.files(3).bytes(1024);
+			Thread.sleep(20);
+		}
+		try (KaitaiMetrics.Phase phase = metrics.start("compile")) {
+			phase.cpu(10).cpu(5).cpu(-1);
+		}
+		assertThat(metrics.getPhases()).hasSize(2);
+		KaitaiMetrics.Phase scan = metrics.getPhases().get(0);
+		assertThat(scan.getName()).isEqualTo("scan");
+		assertThat(scan.getMillis()).isGreaterThanOrEqualTo(20);
+		assertThat(scan.getFiles()).isEqualTo(3);
+		assertThat(scan.getBytes()).isEqualTo(1024);
+		assertThat(scan.getCpuMillis()).isEqualTo(-1);
+		KaitaiMetrics.Phase compile = metrics.getPhases().get(1);
+		assertThat(compile.getFiles()).isEqualTo(-1);
+		assertThat(compile.getCpuMillis()).isEqualTo(15);
+
+		assertThat(metrics.summary())
+			.startsWith("Kaitai: metrics: total ")
+			.contains("; scan ")
+			.contains(" ms, 3 files, 1024 bytes; compile ")
+			.endsWith(" ms, cpu 15 ms");
+	}
+
+	@Test
+	public void testWrite() throws IOException, KaitaiException {
+		KaitaiMetrics metrics = KaitaiMetrics.metrics();
+		Path target = temporaryFolder.getRoot().toPath().resolve("kaitai/metrics.json");
+		metrics.write(target);
+		assertThat(new String(Files.readAllBytes(target), UTF_8))
+			.contains("\"totalMillis\": ")
+			.contains("\"phases\": []");
+
+		try (KaitaiMetrics.Phase phase = metrics.start("quote\"d")) {
+			phase.files(1);
+		}
+		metrics.write(target);
+		assertThat(new String(Files.readAllBytes(target), UTF_8))
+			.contains("{\"name\": \"quote\\\"d\", \"thread\": \"" + Thread.currentThread().getName() + "\", \"startMillis\": ")
+			.contains(", \"files\": 1, \"bytes\": -1, \"cpuMillis\": -1}");
+		assertThat(target.resolveSibling("metrics.json.tmp")).doesNotExist();
+	}
+
+	@Test
+	public void testChildrenCpuMillis() {
+		if (SystemUtils.IS_OS_LINUX) {
+			assertThat(KaitaiMetrics.childrenCpuMillis()).isNotNegative();
+		} else {
+			assertThat(KaitaiMetrics.childrenCpuMillis()).isEqualTo(-1);
+		}
+	}
+}
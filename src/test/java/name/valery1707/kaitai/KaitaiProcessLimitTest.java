@@ -0,0 +1,88 @@
+package name.valery1707.kaitai;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class KaitaiProcessLimitTest {
+	@After
+	public void tearDown() {
+		KaitaiProcessLimit.setLimit(-1);
+	}
+
+	@Test
+	public void testDefaultLimit() {
+		assertThat(KaitaiProcessLimit.defaultLimit())
+			.isPositive()
+			.isLessThanOrEqualTo(Runtime.getRuntime().availableProcessors());
+		KaitaiProcessLimit.setLimit(0);
+		assertThat(KaitaiProcessLimit.getLimit()).isEqualTo(KaitaiProcessLimit.defaultLimit());
+	}
+
+	@Test
+	public void testAcquire_waitForRelease() throws Exception {
+		KaitaiProcessLimit.setLimit(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			assertThat(KaitaiProcessLimit.acquire()).isNotNegative();
+			final CountDownLatch started = new CountDownLatch(1);
+			final AtomicBoolean released = new AtomicBoolean();
+			Future<Boolean> second = executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					started.countDown();
+					KaitaiProcessLimit.acquire();
+					boolean afterRelease = released.get();
+					KaitaiProcessLimit.release();
+					return afterRelease;
+				}
+			});
+			assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+			try {
+				second.get(200, TimeUnit.MILLISECONDS);
+				fail("Second acquire must wait for release of first one");
+			} catch (TimeoutException expected) {
+				//Second acquire is still waiting
+			}
+			released.set(true);
+			KaitaiProcessLimit.release();
+			assertThat(second.get(5, TimeUnit.SECONDS)).as("Second acquire must complete only after release of first one").isTrue();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testSetLimit_wakeUpWaiting() throws Exception {
+		KaitaiProcessLimit.setLimit(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			KaitaiProcessLimit.acquire();
+			Future<Long> second = executor.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					long queued = KaitaiProcessLimit.acquire();
+					KaitaiProcessLimit.release();
+					return queued;
+				}
+			});
+			Thread.sleep(100);
+			KaitaiProcessLimit.setLimit(2);
+			assertThat(second.get(5, TimeUnit.SECONDS)).isNotNegative();
+			KaitaiProcessLimit.release();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
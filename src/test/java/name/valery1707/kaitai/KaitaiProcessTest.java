@@ -0,0 +1,103 @@
+package name.valery1707.kaitai;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class KaitaiProcessTest {
+	private final List<String> logged = Collections.synchronizedList(new ArrayList<String>());
+	private Logger log;
+
+	@Before
+	public void setUp() {
+		assumeTrue(SystemUtils.IS_OS_UNIX);
+		//Record only messages of levels which are used by runner
+		log = (Logger) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Logger.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (args != null && args.length == 1 && (method.getName().equals("info") || method.getName().equals("error"))) {
+					logged.add(method.getName() + ": " + args[0]);
+				}
+				return method.getReturnType() == boolean.class ? Boolean.TRUE : null;
+			}
+		});
+	}
+
+	private static KaitaiProcess shell(String script) {
+		return KaitaiProcess.process("/bin/sh").withArgs("-c", script);
+	}
+
+	@Test
+	public void testRun_success() throws Exception {
+		KaitaiProcess.Result result = shell("printf 'first\\n\\nsecond\\r\\n'; printf 'problem' >&2; printf 'last'")
+			.timeoutMillis(5_000)
+			.run(log);
+		assertThat(result.getExitValue()).isZero();
+		assertThat(result.getOutput()).isEqualTo("first\n\nsecond\r\nlast");
+		assertThat(result.getError()).isEqualTo("problem");
+		assertThat(result.getOutputSize()).isEqualTo(19);
+		assertThat(logged).containsOnly("info: first", "info: second", "info: last", "error: problem");
+		assertThat(logged.indexOf("info: first")).isLessThan(logged.indexOf("info: second"));
+	}
+
+	@Test
+	public void testRun_largeOutput() throws Exception {
+		//Output is larger then buffer of pipe: process is blocked until runner reads it
+		KaitaiProcess.Result result = shell("i=0; while [ $i -lt 20000 ]; do echo \"line $i\"; i=$((i+1)); done")
+			.timeoutMillis(10_000)
+			.run(log);
+		assertThat(result.getOutput().split("\n")).hasSize(20000);
+		assertThat(logged).hasSize(20000).endsWith("info: line 19999");
+	}
+
+	@Test
+	public void testRun_outputBeforeExit() throws Exception {
+		//Tail of output is written right before exit: it must be drained after exit is seen
+		for (int i = 0; i < 20; i++) {
+			KaitaiProcess.Result result = shell("head -c 100000 /dev/zero | tr '\\0' 'a'; printf '\\ntail %d' " + i)
+				.timeoutMillis(10_000)
+				.run(log);
+			assertThat(result.getOutputSize()).isEqualTo(100006 + String.valueOf(i).length());
+			assertThat(logged).endsWith("info: tail " + i);
+		}
+	}
+
+	@Test
+	public void testRun_failure() throws Exception {
+		try {
+			shell("echo 'broken spec' >&2; exit 2").run(log);
+			fail("Must throw exception");
+		} catch (KaitaiProcess.ExternalFailureException e) {
+			assertThat(e.getExitValue()).isEqualTo(2);
+			assertThat(e.getResult().getError()).isEqualTo("broken spec\n");
+			assertThat(e).hasMessageContaining("returned 2 after");
+		}
+		assertThat(logged).containsExactly("error: broken spec");
+	}
+
+	@Test
+	public void testRun_timeout() throws Exception {
+		long start = System.currentTimeMillis();
+		try {
+			shell("echo started; sleep 5").timeoutMillis(300).run(log);
+			fail("Must throw exception");
+		} catch (KaitaiProcess.TimeoutException e) {
+			assertThat(e).hasMessageEndingWith("timed out after 300ms.");
+			assertThat(e.getResult().getOutput()).isEqualTo("started\n");
+		}
+		assertThat(System.currentTimeMillis() - start).isLessThan(3_000);
+		assertThat(logged).containsExactly("info: started");
+	}
+}
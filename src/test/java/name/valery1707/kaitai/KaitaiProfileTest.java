@@ -0,0 +1,51 @@
+package name.valery1707.kaitai;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.slf4j.helpers.NOPLogger.NOP_LOGGER;
+
+public class KaitaiProfileTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testHistory() throws Exception {
+		Path history = temporaryFolder.getRoot().toPath().resolve("kaitai/profile.history");
+		Path fast = Paths.get("fast.ksy");
+		Path slow = Paths.get("slow.ksy");
+
+		KaitaiProfile profile = KaitaiProfile.profile().historyFile(history);
+		profile.record(fast, 100, 1);
+		profile.record(slow, 300, 4);
+		profile.store(NOP_LOGGER);
+		assertThat(history).isRegularFile();
+
+		//History is accumulated between builds
+		KaitaiProfile next = KaitaiProfile.profile().historyFile(history);
+		next.record(slow, 500, 5);
+		KaitaiProfile.Entry entry = next.getEntry(slow);
+		assertThat(entry.getLastMillis()).isEqualTo(500);
+		assertThat(entry.getAverageMillis()).isEqualTo(400);
+		assertThat(entry.getRuns()).isEqualTo(2);
+		assertThat(entry.getClasses()).isEqualTo(5);
+		assertThat(entry.getSource()).isEqualTo(slow.toAbsolutePath().toString());
+
+		assertThat(next.top(1)).extracting("lastMillis").containsExactly(500L);
+		List<String> report = next.report(10);
+		assertThat(report).hasSize(3);
+		assertThat(report.get(1)).contains("500 ms").contains("slow.ksy");
+		assertThat(report.get(2)).contains("100 ms").contains("fast.ksy");
+
+		next.retain(Arrays.asList(slow));
+		assertThat(next.getEntry(fast)).isNull();
+		assertThat(next.top(10)).hasSize(1);
+	}
+}
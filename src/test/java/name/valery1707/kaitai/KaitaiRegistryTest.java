@@ -0,0 +1,169 @@
+package name.valery1707.kaitai;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static name.valery1707.kaitai.KaitaiUtils.scanFiles;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KaitaiRegistryTest {
+	private static final Logger LOG = LoggerFactory.getLogger(KaitaiRegistryTest.class);
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private List<Path> formats() throws Exception {
+		Path dir = temporaryFolder.newFolder("formats").toPath();
+		return Arrays.asList(
+			Files.write(dir.resolve("png.ksy"), ("meta:\n  id: png\n  file-extension: png\nseq:\n"
+				+ "  - id: magic\n    contents: [137, 80, 78, 71, 13, 10, 26, 10]\n"
+				+ "  - id: ihdr_len\n    contents: [0, 0, 0, 13]\n"
+				+ "  - id: ihdr_type\n    contents: 'IHDR'\n"
+				+ "  - id: ihdr\n    size: 13\n").getBytes(UTF_8))
+			, Files.write(dir.resolve("gif.ksy"), "meta:\n  id: gif\n  file-extension: gif\nseq:\n  - id: magic\n    contents: 'GIF'\n".getBytes(UTF_8))
+			, Files.write(dir.resolve("bmp.ksy"), "meta:\n  id: bmp\nseq:\n  - id: magic\n    contents: 'BM'\n  - id: len_file\n    type: u4le\n".getBytes(UTF_8))
+			, Files.write(dir.resolve("gzip.ksy"), "meta:\n  id: gzip\n  file-extension: gz\nseq:\n  - id: magic\n    contents: [0x1f, 0x8b]\n".getBytes(UTF_8))
+			, Files.write(dir.resolve("ipv4_packet.ksy"), "meta:\n  id: ipv4_packet\nseq:\n  - id: b1\n    type: u1\n".getBytes(UTF_8))
+		);
+	}
+
+	private static byte[] bytes(int... values) {
+		byte[] bytes = new byte[values.length];
+		for (int i = 0; i < values.length; i++) {
+			bytes[i] = (byte) values[i];
+		}
+		return bytes;
+	}
+
+	@Test
+	public void testJavaClassName() {
+		assertThat(KaitaiRegistry.javaClassName("png")).isEqualTo("Png");
+		assertThat(KaitaiRegistry.javaClassName("ipv4_packet")).isEqualTo("Ipv4Packet");
+		assertThat(KaitaiRegistry.javaClassName("some__name_")).isEqualTo("SomeName");
+	}
+
+	@Test
+	public void testEntries_formats() throws Exception {
+		List<KaitaiRegistry.Entry> entries = KaitaiRegistry
+			.registry("test", "Formats")
+			.withSource(formats())
+			.entries(LOG);
+		assertThat(entries).hasSize(5);
+		for (KaitaiRegistry.Entry entry : entries) {
+			switch (entry.getId()) {
+				case "png":
+					assertThat(entry.getMagic()).isEqualTo(bytes(137, 80, 78, 71, 13, 10, 26, 10, 0, 0, 0, 13, 'I', 'H', 'D', 'R'));
+					assertThat(entry.getExtensions()).containsExactly("png");
+					break;
+				case "gif":
+					assertThat(entry.getMagic()).isEqualTo("GIF".getBytes(UTF_8));
+					break;
+				case "bmp":
+					assertThat(entry.getMagic()).isEqualTo("BM".getBytes(UTF_8));
+					break;
+				case "gzip":
+					assertThat(entry.getMagic()).isEqualTo(bytes(0x1f, 0x8b));
+					assertThat(entry.getExtensions()).containsExactly("gz");
+					break;
+				default:
+					assertThat(entry.getMagic()).as(entry.getId()).isNull();
+			}
+		}
+	}
+
+	@Test
+	public void testEntries_conflicts() throws Exception {
+		Path dir = temporaryFolder.newFolder().toPath();
+		List<Path> sources = Arrays.asList(
+			Files.write(dir.resolve("first.ksy"), "meta:\n  id: first\n  file-extension: [bin, DAT]\nseq:\n  - id: magic\n    contents: [0x01, '2']\n".getBytes(UTF_8))
+			, Files.write(dir.resolve("second.ksy"), "meta:\n  id: second\n  file-extension: dat\nseq:\n  - id: magic\n    contents: [1, 0x32]\n".getBytes(UTF_8))
+			, Files.write(dir.resolve("duplicate.ksy"), "meta:\n  id: first\n".getBytes(UTF_8))
+			, Files.write(dir.resolve("params.ksy"), "meta:\n  id: with_params\nparams:\n  - id: size\n    type: u4\n".getBytes(UTF_8))
+		);
+		List<KaitaiRegistry.Entry> entries = KaitaiRegistry.registry("test", "Formats").withSource(sources).entries(LOG);
+		assertThat(entries).hasSize(2);
+		assertThat(entries.get(0).getExtensions()).containsExactly("bin", "dat");
+		assertThat(entries.get(0).getMagic()).isEqualTo(bytes(1, '2'));
+		assertThat(entries.get(1).getExtensions()).isEmpty();
+		assertThat(entries.get(1).getMagic()).isNull();
+	}
+
+	@Test(expected = KaitaiException.class)
+	public void testRegistry_invalidClassName() throws Exception {
+		KaitaiRegistry.registry("test", "Invalid-Name");
+	}
+
+	private static void stub(Path root, String className, String content) throws Exception {
+		Path path = root.resolve(className.replace('.', '/') + ".java");
+		Files.createDirectories(path.getParent());
+		Files.write(path, content.getBytes(UTF_8));
+	}
+
+	@Test
+	public void testWrite_compiled() throws Exception {
+		List<Path> specs = formats();
+		Path sources = temporaryFolder.newFolder("sources").toPath();
+		Path classes = temporaryFolder.newFolder("classes").toPath();
+		stub(sources, "io.kaitai.struct.KaitaiStream", "package io.kaitai.struct;\npublic class KaitaiStream {\n}\n");
+		stub(sources, "io.kaitai.struct.KaitaiStruct", "package io.kaitai.struct;\npublic class KaitaiStruct {\n\tpublic boolean read;\n}\n");
+		for (Path spec : specs) {
+			String className = KaitaiRegistry.javaClassName(KaitaiSpec.parse(spec).getId());
+			stub(sources, "test." + className, "package test;\npublic class " + className + " extends io.kaitai.struct.KaitaiStruct {\n"
+				+ "\tpublic " + className + "(io.kaitai.struct.KaitaiStream io) {\n\t}\n"
+				+ "\tpublic void _read() {\n\t\tread = true;\n\t}\n"
+				+ "}\n");
+		}
+		Path registry = KaitaiRegistry
+			.registry("test", "Formats")
+			.noAutoRead(true)
+			.withSource(specs)
+			.write(sources, LOG);
+		assertThat(registry).isEqualTo(sources.resolve("test/Formats.java"));
+
+		KaitaiJavaCompiler
+			.compiler(classes)
+			.withSource(scanFiles(sources, new String[]{"*.java"}, new String[0]))
+			.compile(LOG);
+		try (URLClassLoader loader = new URLClassLoader(new URL[]{classes.toUri().toURL()}, null)) {
+			Class<?> formats = loader.loadClass("test.Formats");
+			Class<?> factory = loader.loadClass("test.Formats$Factory");
+			Method byMagic = formats.getMethod("byMagic", byte[].class);
+			Method byId = formats.getMethod("byId", String.class);
+			Method byExtension = formats.getMethod("byExtension", String.class);
+			Method id = factory.getMethod("id");
+
+			assertThat(id.invoke(byMagic.invoke(null, (Object) "GIF89a".getBytes(UTF_8)))).isEqualTo("gif");
+			assertThat(id.invoke(byMagic.invoke(null, (Object) bytes(0x1f, 0x8b, 8, 0)))).isEqualTo("gzip");
+			assertThat(id.invoke(byMagic.invoke(null, (Object) bytes(137, 80, 78, 71, 13, 10, 26, 10, 0, 0, 0, 13, 'I', 'H', 'D', 'R', 0)))).isEqualTo("png");
+			assertThat(byMagic.invoke(null, (Object) bytes(137, 80, 78, 71))).isNull();
+			assertThat(byMagic.invoke(null, (Object) "GI".getBytes(UTF_8))).isNull();
+			assertThat(byMagic.invoke(null, (Object) new byte[0])).isNull();
+			assertThat(formats.getMethod("maxMagicLength").invoke(null)).isEqualTo(16);
+
+			assertThat(id.invoke(byId.invoke(null, "ipv4_packet"))).isEqualTo("ipv4_packet");
+			assertThat(byId.invoke(null, "unknown")).isNull();
+			assertThat(id.invoke(byExtension.invoke(null, "GZ"))).isEqualTo("gzip");
+			assertThat(byExtension.invoke(null, "txt")).isNull();
+			assertThat(((Object[]) formats.getMethod("all").invoke(null))).hasSize(5);
+
+			Object stream = loader.loadClass("io.kaitai.struct.KaitaiStream").newInstance();
+			Object parsed = factory.getMethod("parse", stream.getClass()).invoke(byId.invoke(null, "bmp"), stream);
+			assertThat(parsed.getClass().getName()).isEqualTo("test.Bmp");
+			assertThat(parsed.getClass().getField("read").get(parsed)).isEqualTo(true);
+			assertThat(factory.getMethod("type").invoke(byId.invoke(null, "bmp"))).isSameAs(parsed.getClass());
+		}
+		assertThat(Files.readAllLines(registry, UTF_8).get(0)).startsWith("// This is a generated file!");
+	}
+}
@@ -0,0 +1,97 @@
+package name.valery1707.kaitai;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.helpers.NOPLogger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KaitaiReproducibleTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static Path write(Path root, String path, String content) throws Exception {
+		Path file = root.resolve(path);
+		Files.createDirectories(file.getParent());
+		return Files.write(file, content.getBytes(UTF_8));
+	}
+
+	@Test
+	public void testParseTimestamp() throws Exception {
+		assertThat(KaitaiReproducible.parseTimestamp(null)).isNull();
+		assertThat(KaitaiReproducible.parseTimestamp("")).isNull();
+		assertThat(KaitaiReproducible.parseTimestamp("a")).isNull();
+		assertThat(KaitaiReproducible.parseTimestamp("1577836800")).isEqualTo(1577836800000L);
+		assertThat(KaitaiReproducible.parseTimestamp("2020-01-01T00:00:00Z")).isEqualTo(1577836800000L);
+		assertThat(KaitaiReproducible.parseTimestamp("2020-01-01T03:00:00+03:00")).isEqualTo(1577836800000L);
+		assertThat(KaitaiReproducible.parseTimestamp("2020-01-01T00:00:00.500Z")).isEqualTo(1577836800500L);
+	}
+
+	@Test(expected = KaitaiException.class)
+	public void testParseTimestamp_invalid() throws Exception {
+		KaitaiReproducible.parseTimestamp("01.01.2020");
+	}
+
+	@Test
+	public void testNormalizeLineEndings() {
+		byte[] content = "a\nb".getBytes(UTF_8);
+		assertThat(KaitaiReproducible.normalizeLineEndings(content)).isSameAs(content);
+		assertThat(new String(KaitaiReproducible.normalizeLineEndings("a\r\nb\rc\r\n\r\n".getBytes(UTF_8)), UTF_8)).isEqualTo("a\nb\nc\n\n");
+	}
+
+	@Test
+	public void testNormalize() throws Exception {
+		Path first = temporaryFolder.newFolder("first", "kaitai").toPath();
+		Path file = write(first, "src/name/valery1707/First.java", "class First {\r\n}\r\n");
+		write(first, "src/name/valery1707/Second.java", "class Second {\n}\n");
+		write(first, ".kaitai-trash/garbage", "ignored");
+
+		Path second = temporaryFolder.newFolder("second", "kaitai").toPath();
+		write(second, "src/name/valery1707/Second.java", "class Second {\r\n}\r\n");
+		write(second, "src/name/valery1707/First.java", "class First {\n}\n");
+
+		KaitaiReproducible reproducible = KaitaiReproducible.reproducible(first).timestamp(1577836800000L);
+		String digest = reproducible.normalize(NOPLogger.NOP_LOGGER);
+		assertThat(digest).matches("[0-9a-f]{64}");
+		assertThat(file).hasContent("class First {\n}\n");
+		assertThat(Files.getLastModifiedTime(file).toMillis()).isEqualTo(1577836800000L);
+		assertThat(Files.getLastModifiedTime(first.resolve("src")).toMillis()).isEqualTo(1577836800000L);
+		assertThat(reproducible.getDigestFile()).isEqualTo(first.resolveSibling("kaitai.sha256")).hasContent(digest);
+
+		//Location, order of creation and line endings do not affect digest
+		assertThat(KaitaiReproducible.reproducible(second).normalize(NOPLogger.NOP_LOGGER)).isEqualTo(digest);
+
+		write(second, "src/name/valery1707/First.java", "class First {}\n");
+		assertThat(KaitaiReproducible.reproducible(second).normalize(NOPLogger.NOP_LOGGER)).isNotEqualTo(digest);
+	}
+
+	@Test
+	public void testNormalize_generated() throws Exception {
+		Path root = temporaryFolder.newFolder("src", "main", "java").toPath();
+		Path generated = write(root, "name/valery1707/Generated.java", "class Generated {\r\n}\r\n");
+		Path manual = write(root, "name/valery1707/manual/Manual.java", "class Manual {\r\n}\r\n");
+		long modified = Files.getLastModifiedTime(manual).toMillis();
+		Path digestFile = temporaryFolder.getRoot().toPath().resolve("target/kaitai/generated.sha256");
+
+		KaitaiReproducible reproducible = KaitaiReproducible.reproducible(root).digestFile(digestFile).timestamp(1577836800000L);
+		String digest = reproducible.normalize(Collections.singletonList(generated), NOPLogger.NOP_LOGGER);
+		assertThat(generated).hasContent("class Generated {\n}\n");
+		assertThat(Files.getLastModifiedTime(generated).toMillis()).isEqualTo(1577836800000L);
+		assertThat(Files.getLastModifiedTime(root.resolve("name")).toMillis()).isEqualTo(1577836800000L);
+		assertThat(reproducible.getDigestFile()).isEqualTo(digestFile).hasContent(digest);
+		assertThat(root.resolveSibling("java.sha256")).doesNotExist();
+
+		//Other files of shared directory are not touched and do not affect digest
+		assertThat(manual).hasContent("class Manual {\r\n}\r\n");
+		assertThat(Files.getLastModifiedTime(manual).toMillis()).isEqualTo(modified);
+		assertThat(Files.getLastModifiedTime(root).toMillis()).isNotEqualTo(1577836800000L);
+		Files.delete(manual);
+		assertThat(reproducible.normalize(Collections.singletonList(generated), NOPLogger.NOP_LOGGER)).isEqualTo(digest);
+	}
+}
@@ -0,0 +1,128 @@
+package name.valery1707.kaitai;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static name.valery1707.kaitai.KaitaiUtilsTest.copy;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class KaitaiRuntimeCompilerTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path executable;
+	private KaitaiRuntimeCompiler compiler;
+
+	@Before
+	public void setUp() throws IOException, KaitaiException {
+		assumeTrue(SystemUtils.IS_OS_UNIX);
+		executable = copy("/executable/_java.sh", temporaryFolder);
+		compiler = KaitaiRuntimeCompiler.compiler(executable, temporaryFolder.getRoot().toPath().resolve("work"));
+	}
+
+	private List<String> executions() throws IOException {
+		Path executions = executable.resolveSibling("executions.txt");
+		return Files.exists(executions) ? Files.readAllLines(executions, UTF_8) : new ArrayList<String>();
+	}
+
+	@Test
+	public void testCompileAndLoad() throws Exception {
+		KaitaiRuntimeCompiler.Compiled compiled = compiler.compileAndLoad("meta:\n  id: sample\n");
+		assertThat(compiled.getId()).isEqualTo("sample");
+		assertThat(compiled.getHash()).hasSize(64);
+		assertThat(compiled.getMainClass().getName()).isEqualTo("kaitai.runtime.Sample");
+		assertThat(compiled.getClasses()).containsOnlyKeys("kaitai.runtime.Sample", "kaitai.runtime.Sample$Nested");
+		Object instance = compiled.getMainClass().newInstance();
+		assertThat(compiled.getMainClass().getMethod("id").invoke(instance)).isEqualTo("sample");
+
+		assertThat(compiler.compileAndLoad("meta:\n  id: sample\n")).isSameAs(compiled);
+		assertThat(executions()).hasSize(1);
+		try (DirectoryStream<Path> work = Files.newDirectoryStream(compiler.getWorkDir())) {
+			assertThat(work.iterator().hasNext()).as("Temporary files must be removed").isFalse();
+		}
+	}
+
+	@Test
+	public void testCompileAndLoad_singleFlight() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<KaitaiRuntimeCompiler.Compiled>> futures = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				futures.add(executor.submit(new Callable<KaitaiRuntimeCompiler.Compiled>() {
+					@Override
+					public KaitaiRuntimeCompiler.Compiled call() throws KaitaiException {
+						return compiler.compileAndLoad("meta:\n  id: shared\n");
+					}
+				}));
+			}
+			KaitaiRuntimeCompiler.Compiled first = futures.get(0).get(30, TimeUnit.SECONDS);
+			for (Future<KaitaiRuntimeCompiler.Compiled> future : futures) {
+				assertThat(future.get(30, TimeUnit.SECONDS)).isSameAs(first);
+			}
+			assertThat(executions()).hasSize(1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testCompileAndLoad_evicted() throws Exception {
+		compiler.maxEntries(1);
+		KaitaiRuntimeCompiler.Compiled first = compiler.compileAndLoad("meta:\n  id: first\n");
+		compiler.compileAndLoad("meta:\n  id: second\n");
+		assertThat(compiler.size()).isEqualTo(1);
+		KaitaiRuntimeCompiler.Compiled again = compiler.compileAndLoad("meta:\n  id: first\n");
+		assertThat(again).isNotSameAs(first);
+		assertThat(again.getHash()).isEqualTo(first.getHash());
+		assertThat(executions()).hasSize(3);
+	}
+
+	@Test
+	public void testCompileAndLoad_failed() throws Exception {
+		try {
+			compiler.compileAndLoad("meta:\n  title: without id\n");
+			fail("Specification without id must be rejected");
+		} catch (KaitaiException e) {
+			assertThat(e.getMessage()).endsWith("/meta/id: required key is missing");
+		}
+		assertThat(compiler.size()).isZero();
+		assertThat(executions()).isEmpty();
+	}
+
+	@Test
+	public void testCompileAndLoad_invalidId() throws Exception {
+		Path escaped = compiler.getWorkDir().toAbsolutePath().resolveSibling("escaped.ksy");
+		for (String id : new String[]{"../../escaped", escaped.toFile().getAbsolutePath(), "Upper"}) {
+			try {
+				compiler.compileAndLoad("meta:\n  id: '" + id + "'\n");
+				fail("Specification with invalid id must be rejected: " + id);
+			} catch (KaitaiException e) {
+				assertThat(e.getMessage()).contains("/meta/id: invalid identifier: '" + id + "'");
+			}
+		}
+		assertThat(escaped).doesNotExist();
+		assertThat(compiler.size()).isZero();
+		assertThat(executions()).isEmpty();
+		try (DirectoryStream<Path> work = Files.newDirectoryStream(compiler.getWorkDir())) {
+			assertThat(work.iterator().hasNext()).as("Temporary files must be removed").isFalse();
+		}
+	}
+}
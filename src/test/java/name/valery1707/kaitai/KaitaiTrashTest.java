@@ -0,0 +1,55 @@
+package name.valery1707.kaitai;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KaitaiTrashTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static boolean isEmpty(Path dir) throws Exception {
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+			return !children.iterator().hasNext();
+		}
+	}
+
+	@Test
+	public void testDeleteLater() throws Exception {
+		Path root = temporaryFolder.newFolder().toPath();
+		Path dir = Files.createDirectories(root.resolve("staging/a/b"));
+		Files.write(dir.resolve("file.txt"), "content".getBytes(UTF_8));
+		Path file = Files.write(root.resolve("file.tmp"), "content".getBytes(UTF_8));
+
+		KaitaiTrash.deleteLater(root.resolve("staging"));
+		KaitaiTrash.deleteLater(file);
+		KaitaiTrash.deleteLater(root.resolve("absent"));
+		assertThat(root.resolve("staging")).doesNotExist();
+		assertThat(file).doesNotExist();
+		//Path is free for reuse right after scheduling
+		Files.createDirectories(root.resolve("staging"));
+
+		assertThat(KaitaiTrash.await(10_000)).isTrue();
+		assertThat(KaitaiTrash.pending()).isZero();
+		assertThat(isEmpty(root.resolve(KaitaiTrash.TRASH_DIR))).isTrue();
+		assertThat(root.resolve("staging")).isDirectory();
+	}
+
+	@Test
+	public void testDeleteLater_sweepLeftovers() throws Exception {
+		Path root = temporaryFolder.newFolder().toPath();
+		Path leftover = Files.createDirectories(root.resolve(KaitaiTrash.TRASH_DIR).resolve("crashed-build/nested"));
+		Files.write(leftover.resolve("file.txt"), "content".getBytes(UTF_8));
+
+		KaitaiTrash.deleteLater(Files.createDirectory(root.resolve("staging")));
+		assertThat(KaitaiTrash.await(10_000)).isTrue();
+		assertThat(isEmpty(root.resolve(KaitaiTrash.TRASH_DIR))).isTrue();
+	}
+}
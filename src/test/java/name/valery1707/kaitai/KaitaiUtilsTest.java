@@ -18,6 +18,7 @@ import java.io.OutputStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermission;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
@@ -77,7 +78,7 @@ public class KaitaiUtilsTest {
 
 	@Test
 	public void testScanFiles() throws KaitaiException {
-		List<Path> files = scanFiles(new File(".").toPath(), new String[]{"*.java"}, new String[]{"Log*.java", "*Test.java"});
+		List<Path> files = scanFiles(new File(".").toPath(), new String[]{"*.java"}, new String[]{"*Process.java", "*Test.java"});
 		assertThat(files)
 			.isNotEmpty()
 			.contains(
@@ -87,7 +88,7 @@ public class KaitaiUtilsTest {
 				new File(".").toPath().resolve("src/main/java/name/valery1707/kaitai/KaitaiMojo.java"),
 				new File(".").toPath().resolve("src/main/java/name/valery1707/kaitai/KaitaiMojo.java").toAbsolutePath(),
 				new File(".").toPath().resolve("src/main/java/name/valery1707/kaitai/KaitaiMojo.java").normalize(),
-				new File(".").toPath().resolve("src/main/java/name/valery1707/kaitai/LogWriter.java"),
+				new File(".").toPath().resolve("src/main/java/name/valery1707/kaitai/KaitaiProcess.java"),
 				new File(".").toPath().resolve("src/test/java/name/valery1707/kaitai/KaitaiUtilsTest.java")
 			)
 		;
@@ -505,8 +506,84 @@ public class KaitaiUtilsTest {
 		;
 	}
 
+	private Path createCacheEntry(Path cache, String name, int size, long accessedDaysAgo) throws IOException {
+		long modified = System.currentTimeMillis() - accessedDaysAgo * 24 * 60 * 60 * 1000;
+		Path zip = Files.write(cache.resolve(name + ".zip"), new byte[size]);
+		Path dir = Files.createDirectories(cache.resolve(name).resolve("bin"));
+		Files.write(dir.resolve("kaitai-struct-compiler.bat"), new byte[size]);
+		Path tmp = Files.write(cache.resolve(name + ".zip.tmp"), new byte[size]);
+		for (Path path : Arrays.asList(zip, dir.getParent(), tmp)) {
+			Files.setLastModifiedTime(path, FileTime.fromMillis(modified));
+		}
+		return cache.resolve(name);
+	}
+
+	@Test
+	public void testPrepareCache_unlimited() throws IOException, KaitaiException {
+		Path cache = temporaryFolder.newFolder().toPath();
+		Path old = createCacheEntry(cache, "kaitai-struct-compiler-0.7", 1024, 365);
+		assertThat(prepareCache(cache, -1, -1, LOG)).isEqualTo(cache);
+		assertThat(old).isDirectory();
+		assertThat(old.resolveSibling("kaitai-struct-compiler-0.7.zip")).isRegularFile();
+	}
+
+	@Test
+	public void testPrepareCache_evictByAge() throws IOException, KaitaiException {
+		Path cache = temporaryFolder.newFolder().toPath();
+		Path old = createCacheEntry(cache, "kaitai-struct-compiler-0.7", 1024, 10);
+		Path fresh = createCacheEntry(cache, "kaitai-struct-compiler-0.8", 1024, 1);
+		prepareCache(cache, -1, 5L * 24 * 60 * 60 * 1000, LOG);
+		assertThat(old).doesNotExist();
+		assertThat(old.resolveSibling("kaitai-struct-compiler-0.7.zip")).doesNotExist();
+		assertThat(old.resolveSibling("kaitai-struct-compiler-0.7.zip.tmp")).doesNotExist();
+		assertThat(old.resolveSibling("kaitai-struct-compiler-0.7.lock")).doesNotExist();
+		assertThat(fresh).isDirectory();
+		assertThat(fresh.resolveSibling("kaitai-struct-compiler-0.8.zip")).isRegularFile();
+	}
+
+	@Test
+	public void testPrepareCache_evictBySize() throws IOException, KaitaiException {
+		Path cache = temporaryFolder.newFolder().toPath();
+		Path oldest = createCacheEntry(cache, "kaitai-struct-compiler-0.6", 1024, 3);
+		Path old = createCacheEntry(cache, "kaitai-struct-compiler-0.7", 1024, 2);
+		Path fresh = createCacheEntry(cache, "kaitai-struct-compiler-0.8", 1024, 1);
+		prepareCache(cache, 3 * 1024, -1, LOG);
+		assertThat(oldest).doesNotExist();
+		assertThat(old).doesNotExist();
+		assertThat(fresh).isDirectory();
+	}
+
+	@Test
+	public void testPrepareCache_keepLeased() throws IOException, KaitaiException {
+		Path cache = temporaryFolder.newFolder().toPath();
+		Path old = createCacheEntry(cache, "kaitai-struct-compiler-0.7", 1024, 10);
+		Path used = createCacheEntry(cache, "kaitai-struct-compiler-0.8", 1024, 10);
+		try (KaitaiCache.Lease ignored = KaitaiCache.cache(cache).lease(new URL("file:///dist/kaitai-struct-compiler-0.8.zip"))) {
+			prepareCache(cache, 0, 0, LOG);
+			assertThat(old).doesNotExist();
+			assertThat(used).isDirectory();
+			assertThat(used.resolveSibling("kaitai-struct-compiler-0.8.zip")).isRegularFile();
+		}
+		prepareCache(cache, 0, 0, LOG);
+		assertThat(used).doesNotExist();
+		//Lock file of evicted entry is removed together with entry and is created again by next lease
+		assertThat(cache.resolve("kaitai-struct-compiler-0.8.lock")).doesNotExist();
+		try (KaitaiCache.Lease ignored = KaitaiCache.cache(cache).lease(new URL("file:///dist/kaitai-struct-compiler-0.8.zip"))) {
+			assertThat(cache.resolve("kaitai-struct-compiler-0.8.lock")).isRegularFile();
+		}
+	}
+
+	@Test
+	public void testCacheEntryName() {
+		assertThat(KaitaiCache.entryName("kaitai-struct-compiler-0.8.zip")).isEqualTo("kaitai-struct-compiler-0.8");
+		assertThat(KaitaiCache.entryName("kaitai-struct-compiler-0.8.zip.tmp")).isEqualTo("kaitai-struct-compiler-0.8");
+		assertThat(KaitaiCache.entryName("kaitai-struct-compiler-0.8")).isEqualTo("kaitai-struct-compiler-0.8");
+		assertThat(KaitaiCache.entryName("kaitai-struct-compiler-0.8-tmp")).isEqualTo("kaitai-struct-compiler-0.8");
+		assertThat(KaitaiCache.entryName("kaitai-struct-compiler-0.8.lock")).isEqualTo("kaitai-struct-compiler-0.8");
+	}
+
 	@Test
-	public void testDownloadKaitai_invalidZipContent() throws IOException, KaitaiException {
+	public void testDownloadKaitai_invalidZipContent()throws IOException, KaitaiException {
 		exception.expect(KaitaiException.class);
 		exception.expectMessage(containsString("Fail to find start script"));
 		Path cache = temporaryFolder.newFolder().toPath();
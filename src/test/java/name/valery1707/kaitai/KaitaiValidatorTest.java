@@ -0,0 +1,169 @@
+package name.valery1707.kaitai;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.slf4j.helpers.NOPLogger.NOP_LOGGER;
+
+public class KaitaiValidatorTest {
+	private static final Logger LOG = NOP_LOGGER;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path findIt() throws URISyntaxException {
+		return Paths.get(getClass().getResource("/demo-vertx.zip").toURI())
+			.getParent().getParent().getParent()
+			.resolve("src/it");
+	}
+
+	private List<String> validate(String content) throws KaitaiException {
+		return KaitaiValidator.validator().validate(KaitaiSpec.parse(Paths.get("test.ksy"), content));
+	}
+
+	@Test
+	public void testValidate_success() throws URISyntaxException, KaitaiException {
+		Path source = findIt().resolve("it-source-exist/src/main/resources/kaitai/ico.ksy");
+		assertThat(KaitaiValidator.validator().validate(KaitaiSpec.parse(source))).isEmpty();
+	}
+
+	@Test
+	public void testValidate_invalidAttributeId() throws URISyntaxException, KaitaiException {
+		Path source = findIt().resolve("it-source-failed/src/main/resources/kaitai/demo.ksy");
+		assertThat(KaitaiValidator.validator().validate(KaitaiSpec.parse(source)))
+			.containsExactly(
+				source.toFile().getAbsolutePath() + ":11:13: "
+					+ "/types/header/seq/0/id: invalid attribute ID: 'Magic', expected /^[a-z][a-z0-9_]*$/"
+			);
+	}
+
+	@Test
+	public void testValidate_invalidYaml() {
+		try {
+			validate("meta:\n  id: test\nseq:\n  - id: a\n   type: u1\n");
+			fail("Must generate exception because of broken YAML");
+		} catch (KaitaiException e) {
+			assertThat(e).hasMessageContaining("test.ksy:5:").hasMessageContaining("invalid YAML");
+		}
+	}
+
+	@Test
+	public void testValidate_missingMetaId() throws KaitaiException {
+		List<String> errors = validate("meta:\n  endian: le\nseq:\n  - id: a\n    type: u1\n");
+		assertThat(errors).hasSize(1);
+		assertThat(errors.get(0)).endsWith("test.ksy:2:3: /meta/id: required key is missing");
+	}
+
+	@Test
+	public void testValidate_typeReferences() throws KaitaiException {
+		String spec = ""
+			+ "meta:\n"
+			+ "  id: root_type\n"
+			+ "seq:\n"
+			+ "  - id: header\n"
+			+ "    type: header\n"
+			+ "  - id: body\n"
+			+ "    type:\n"
+			+ "      switch-on: header.kind\n"
+			+ "      cases:\n"
+			+ "        1: header::nested\n"
+			+ "        2: root_type\n"
+			+ "        3: absent_type\n"
+			+ "  - id: params\n"
+			+ "    type: header(1, 2)\n"
+			+ "  - id: builtin\n"
+			+ "    type: u4be\n"
+			+ "types:\n"
+			+ "  header:\n"
+			+ "    seq:\n"
+			+ "      - id: nested\n"
+			+ "        type: nested\n"
+			+ "      - id: unknown\n"
+			+ "        type: header::absent\n"
+			+ "    types:\n"
+			+ "      nested:\n"
+			+ "        seq:\n"
+			+ "          - id: value\n"
+			+ "            type: b12\n";
+		List<String> errors = validate(spec);
+		assertThat(errors).hasSize(2);
+		assertThat(errors.get(0)).endsWith("/seq/1/type/cases/3: unable to find type 'absent_type'");
+		assertThat(errors.get(1)).endsWith("/types/header/seq/1/type: unable to find type 'header::absent'");
+
+		assertThat(KaitaiValidator.validator().opaqueTypes(true).validate(KaitaiSpec.parse(Paths.get("test.ksy"), spec)))
+			.isEmpty();
+	}
+
+	@Test
+	public void testValidate_opaqueTypes() throws URISyntaxException, KaitaiException {
+		Path source = findIt().resolve("it-withOption-opaqueTypes/src/main/resources/kaitai/doc_container.ksy");
+		assertThat(KaitaiValidator.validator().opaqueTypes(false).validate(KaitaiSpec.parse(source)))
+			.hasSize(1);
+		assertThat(KaitaiValidator.validator().opaqueTypes(true).validate(KaitaiSpec.parse(source)))
+			.isEmpty();
+	}
+
+	@Test
+	public void testValidate_opaqueTypes_meta() throws KaitaiException {
+		String spec = "meta:\n"
+			+ "  id: container\n"
+			+ "  ks-opaque-types: %s\n"
+			+ "seq:\n"
+			+ "  - id: body\n"
+			+ "    type: external_type\n";
+		assertThat(KaitaiValidator.validator().opaqueTypes(false).validate(KaitaiSpec.parse(Paths.get("test.ksy"), String.format(spec, "true"))))
+			.isEmpty();
+		assertThat(KaitaiValidator.validator().opaqueTypes(false).validate(KaitaiSpec.parse(Paths.get("test.ksy"), String.format(spec, "false"))))
+			.hasSize(1);
+	}
+
+	@Test
+	public void testValidate_collectAllErrors() throws IOException {
+		Path invalid1 = Files.write(temporaryFolder.newFile("invalid1.ksy").toPath(), "meta:\n  id: Invalid\n".getBytes(UTF_8));
+		Path invalid2 = Files.write(temporaryFolder.newFile("invalid2.ksy").toPath(), "seq: {}\n".getBytes(UTF_8));
+		try {
+			KaitaiValidator.validator().validate(Arrays.asList(invalid1, invalid2), LOG);
+			fail("Must generate exception because of invalid specifications");
+		} catch (KaitaiException e) {
+			assertThat(e)
+				.hasMessageStartingWith("Fail to validate kaitai specifications:")
+				.hasMessageContaining("invalid1.ksy:2:7: /meta/id: invalid meta ID: 'Invalid'")
+				.hasMessageContaining("invalid2.ksy:1:1: /meta: required key is missing")
+				.hasMessageContaining("invalid2.ksy:1:6: /seq: expected array");
+		}
+	}
+
+	@Test
+	public void testValidate_cache() throws IOException, KaitaiException {
+		Path source = Files.write(temporaryFolder.newFile("valid.ksy").toPath(), "meta:\n  id: valid\n".getBytes(UTF_8));
+		Path cache = temporaryFolder.getRoot().toPath().resolve("cache/validation.cache");
+		KaitaiValidator.validator().cacheFile(cache).validate(Collections.singletonList(source), LOG);
+		assertThat(cache).isRegularFile();
+		assertThat(Files.readAllLines(cache, UTF_8))
+			.containsExactly(KaitaiValidator.sha256(Files.readAllBytes(source)));
+
+		Files.write(source, "meta:\n  id: changed\n".getBytes(UTF_8));
+		KaitaiValidator.validator().cacheFile(cache).validate(Collections.singletonList(source), LOG);
+		assertThat(Files.readAllLines(cache, UTF_8))
+			.containsExactly(KaitaiValidator.sha256(Files.readAllBytes(source)));
+
+		Path other = Files.write(temporaryFolder.newFile("other.ksy").toPath(), "meta:\n  id: other\n".getBytes(UTF_8));
+		KaitaiValidator.validator().cacheFile(cache).validate(Collections.singletonList(other), LOG);
+		assertThat(Files.readAllLines(cache, UTF_8))
+			.containsExactly(KaitaiValidator.sha256(Files.readAllBytes(other)));
+	}
+}
@@ -0,0 +1,82 @@
+package name.valery1707.kaitai;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KaitaiWatcherTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static Path spec(Path dir, String id, String... imports) throws Exception {
+		StringBuilder content = new StringBuilder("meta:\n  id: ").append(id).append('\n');
+		if (imports.length > 0) {
+			content.append("  imports:\n");
+			for (String imported : imports) {
+				content.append("    - ").append(imported).append('\n');
+			}
+		}
+		Files.createDirectories(dir);
+		return Files.write(dir.resolve(id + ".ksy"), content.toString().getBytes(UTF_8)).normalize().toAbsolutePath();
+	}
+
+	@Test
+	public void testAffected() throws Exception {
+		Path root = temporaryFolder.getRoot().toPath();
+		Path common = spec(root.resolve("common"), "common");
+		Path header = spec(root, "header", "common/common");
+		Path packet = spec(root, "packet", "header");
+		Path other = spec(root, "other");
+		Path broken = Files.write(root.resolve("broken.ksy"), "meta: [".getBytes(UTF_8)).toAbsolutePath();
+		List<Path> sources = Arrays.asList(common, header, packet, other, broken);
+
+		assertThat(KaitaiWatcher.affected(Collections.singleton(common), sources)).containsExactly(common, header, packet);
+		assertThat(KaitaiWatcher.affected(Collections.singleton(packet), sources)).containsExactly(packet);
+		assertThat(KaitaiWatcher.affected(Collections.singleton(broken), sources)).containsExactly(broken);
+		assertThat(KaitaiWatcher.affected(Collections.singleton(root.resolve("deleted.ksy")), sources)).isEmpty();
+	}
+
+	@Test
+	public void testAwait() throws Exception {
+		final Path root = temporaryFolder.newFolder().toPath();
+		final Path first = spec(root, "first");
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try (final KaitaiWatcher watcher = KaitaiWatcher.watcher(root, new String[]{"*.ksy"}, new String[]{"skip*"}).debounce(100)) {
+			final Path nested = root.resolve("nested").resolve("nested.ksy");
+			Future<Set<Path>> changed = executor.submit(new Callable<Set<Path>>() {
+				@Override
+				public Set<Path> call() throws KaitaiException {
+					//Slow machine can split changes into several change sets
+					Set<Path> changed = new HashSet<>();
+					while (!changed.contains(nested)) {
+						changed.addAll(watcher.await());
+					}
+					return changed;
+				}
+			});
+			Files.write(root.resolve("notes.txt"), "ignored".getBytes(UTF_8));
+			spec(root, "skipped");
+			Files.write(first, "meta:\n  id: first\n".getBytes(UTF_8));
+			spec(nested.getParent(), "nested");
+			assertThat(changed.get(10, TimeUnit.SECONDS)).containsOnly(first, nested);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,17 @@
+#!/usr/bin/env bash
+
+# Fake compiler: store sources of every execution as separate line of `src/batches.txt` inside output directory
+while [ $# -gt 0 ]; do
+	case "$1" in
+		--outdir) outdir="$2"; shift 2;;
+		--target|--import-path|--java-package|--java-from-file-class|--opaque-types) shift 2;;
+		-*) shift;;
+		*) break;;
+	esac
+done
+if [ -z "$outdir" ]; then
+	echo "0.8"
+	exit 0
+fi
+mkdir -p "$outdir/src"
+echo "$*" >> "$outdir/src/batches.txt"
@@ -0,0 +1,27 @@
+#!/usr/bin/env bash
+
+# Fake compiler: generate simple Java class for every source and store arguments of every execution as separate line of `executions.txt` near script
+while [ $# -gt 0 ]; do
+	case "$1" in
+		--outdir) outdir="$2"; shift 2;;
+		--java-package) package="$2"; shift 2;;
+		--target|--import-path|--java-from-file-class|--opaque-types) shift 2;;
+		-*) shift;;
+		*) break;;
+	esac
+done
+if [ -z "$outdir" ]; then
+	echo "0.8"
+	exit 0
+fi
+echo "$*" >> "$(dirname "$0")/executions.txt"
+# Slow compiler: concurrent requests of the same source overlap
+sleep 0.3
+dir="$outdir/src/${package//.//}"
+mkdir -p "$dir"
+for source in "$@"; do
+	id=$(sed -n 's/^  id: *//p' "$source" | head -n 1)
+	class="${id^}"
+	printf 'package %s;\n\npublic class %s {\n\tpublic static class Nested {\n\t}\n\n\tpublic String id() {\n\t\treturn "%s";\n\t}\n}\n' "$package" "$class" "$id" > "$dir/$class.java"
+	echo "$(basename "$source"): generated $class"
+done